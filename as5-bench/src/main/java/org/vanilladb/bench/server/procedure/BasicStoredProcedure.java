@@ -36,6 +36,7 @@ public abstract class BasicStoredProcedure<H extends StoredProcedureParamHelper>
 		boolean isReadOnly = paramHelper.isReadOnly();
 		tx = VanillaDb.txMgr().newTransaction(
 			Connection.TRANSACTION_SERIALIZABLE, isReadOnly);
+		tx.setAsyncCommit(paramHelper.isAsyncCommit());
 	}
 
 	@Override
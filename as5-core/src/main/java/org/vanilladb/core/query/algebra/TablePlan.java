@@ -17,6 +17,7 @@ package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.TableNotFoundException;
 import org.vanilladb.core.storage.metadata.statistics.Histogram;
@@ -50,12 +51,15 @@ public class TablePlan implements Plan {
 	}
 
 	/**
-	 * Creates a table scan for this query.
+	 * Creates a table scan for this query. A scan over a table larger than a
+	 * fraction of the buffer pool reads the table through a buffer ring.
 	 * 
 	 * @see Plan#open()
 	 */
 	@Override
 	public Scan open() {
+		if (BufferRing.isBulkScan(si.blocksAccessed()))
+			return new TableScan(ti, tx, new BufferRing());
 		return new TableScan(ti, tx);
 	}
 
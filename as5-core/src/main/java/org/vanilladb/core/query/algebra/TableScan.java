@@ -17,6 +17,7 @@ package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
@@ -40,7 +41,23 @@ public class TableScan implements UpdateScan {
 	 *            the calling transaction
 	 */
 	public TableScan(TableInfo ti, Transaction tx) {
+		this(ti, tx, null);
+	}
+
+	/**
+	 * Creates a new table scan for a bulk sequential access, whose blocks are
+	 * read and appended through the specified buffer ring.
+	 * 
+	 * @param ti
+	 *            the table's metadata
+	 * @param tx
+	 *            the calling transaction
+	 * @param ring
+	 *            the buffer ring, or null to use the buffer pool as usual
+	 */
+	public TableScan(TableInfo ti, Transaction tx, BufferRing ring) {
 		rf = ti.open(tx, true);
+		rf.setBufferRing(ring);
 		schema = ti.schema();
 	}
 
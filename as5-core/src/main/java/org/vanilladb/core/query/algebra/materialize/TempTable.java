@@ -19,6 +19,7 @@ import org.vanilladb.core.query.algebra.TableScan;
 import org.vanilladb.core.query.algebra.UpdateScan;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.FileHeaderFormatter;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -57,7 +58,8 @@ public class TempTable {
 	 * @return the scan for the temporary table
 	 */
 	public UpdateScan open() {
-		return new TableScan(ti, tx);
+		// A temporary table is written and read sequentially
+		return new TableScan(ti, tx, new BufferRing());
 	}
 
 	/**
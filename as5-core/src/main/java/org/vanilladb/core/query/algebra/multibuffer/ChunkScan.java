@@ -21,6 +21,7 @@ import java.util.List;
 import org.vanilladb.core.query.algebra.Scan;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.RecordPage;
@@ -50,6 +51,26 @@ public class ChunkScan implements Scan {
 	 */
 	public ChunkScan(TableInfo ti, long startBlkNum, long endBlkNum,
 			Transaction tx) {
+		this(ti, startBlkNum, endBlkNum, tx, null);
+	}
+
+	/**
+	 * Creates a chunk consisting of the specified pages, whose buffers are
+	 * taken from the specified ring.
+	 * 
+	 * @param ti
+	 *            the metadata for the chunked table
+	 * @param startBlkNum
+	 *            the starting block number
+	 * @param endBlkNum
+	 *            the ending block number
+	 * @param tx
+	 *            the current transaction
+	 * @param ring
+	 *            the buffer ring shared by the chunks of a table, or null
+	 */
+	public ChunkScan(TableInfo ti, long startBlkNum, long endBlkNum,
+			Transaction tx, BufferRing ring) {
 		pages = new ArrayList<RecordPage>();
 		this.startBlkNum = startBlkNum;
 		this.endBlkNum = endBlkNum;
@@ -57,7 +78,7 @@ public class ChunkScan implements Scan {
 		this.fileName = ti.fileName();
 		for (long i = startBlkNum; i <= endBlkNum; i++) {
 			BlockId blk = new BlockId(fileName, i);
-			pages.add(new RecordPage(blk, ti, tx, true));
+			pages.add(new RecordPage(blk, ti, tx, true, ring));
 		}
 		beforeFirst();
 	}
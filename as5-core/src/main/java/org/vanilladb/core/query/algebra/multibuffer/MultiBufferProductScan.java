@@ -18,6 +18,7 @@ package org.vanilladb.core.query.algebra.multibuffer;
 import org.vanilladb.core.query.algebra.ProductScan;
 import org.vanilladb.core.query.algebra.Scan;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -30,6 +31,7 @@ public class MultiBufferProductScan implements Scan {
 	private Transaction tx;
 	private int chunkSize;
 	private long nextBlkNum, fileSize;
+	private BufferRing ring;
 
 	/**
 	 * Creates the scan class for the product of the LHS scan and a table.
@@ -48,6 +50,9 @@ public class MultiBufferProductScan implements Scan {
 
 		fileSize = ti.open(tx, true).fileSize();
 		chunkSize = BufferNeeds.bestFactor(fileSize, tx);
+		// The chunks of a large table reuse the buffers of the previous one
+		if (BufferRing.isBulkScan(fileSize))
+			ring = new BufferRing(chunkSize);
 		beforeFirst();
 	}
 
@@ -122,7 +127,7 @@ public class MultiBufferProductScan implements Scan {
 		long end = nextBlkNum + chunkSize - 1;
 		if (end >= fileSize)
 			end = fileSize - 1;
-		rhsScan = new ChunkScan(ti, nextBlkNum, end, tx);
+		rhsScan = new ChunkScan(ti, nextBlkNum, end, tx, ring);
 		lhsScan.beforeFirst();
 		prodScan = new ProductScan(lhsScan, rhsScan);
 		nextBlkNum = end + 1;
@@ -103,6 +103,30 @@ public class JdbcConnection extends ConnectionAdapter {
 		}
 	}
 
+	/**
+	 * Sets whether the transactions of this connection commit asynchronously,
+	 * i.e., without waiting for their commit records to be written to disk.
+	 * 
+	 * @param asyncCommit
+	 *            true to commit asynchronously
+	 * @throws SQLException
+	 */
+	public void setAsyncCommit(boolean asyncCommit) throws SQLException {
+		try {
+			rconn.setAsyncCommit(asyncCommit);
+		} catch (Exception e) {
+			throw new SQLException(e);
+		}
+	}
+
+	public boolean isAsyncCommit() throws SQLException {
+		try {
+			return rconn.isAsyncCommit();
+		} catch (Exception e) {
+			throw new SQLException(e);
+		}
+	}
+
 	@Override
 	public void commit() throws SQLException {
 		try {
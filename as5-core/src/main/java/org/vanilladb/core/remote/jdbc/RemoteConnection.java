@@ -41,6 +41,10 @@ public interface RemoteConnection extends Remote {
 
 	int getTransactionIsolation() throws RemoteException;
 
+	void setAsyncCommit(boolean asyncCommit) throws RemoteException;
+
+	boolean isAsyncCommit() throws RemoteException;
+
 	void commit() throws RemoteException;
 
 	void rollback() throws RemoteException;
@@ -33,6 +33,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 	private Transaction tx;
 	private boolean autoCommit = true;
 	private boolean readOnly = false;
+	private boolean asyncCommit = false;
 	private int isolationLevel = DEFAULT_ISOLATION_LEVEL;
 
 	static {
@@ -48,7 +49,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 	 */
 	RemoteConnectionImpl() throws RemoteException {
 		try {
-			tx = VanillaDb.txMgr().newTransaction(isolationLevel, readOnly);
+			tx = newTransaction();
 		} catch (Exception e) {
 			throw new RemoteException("error creating transaction ", e);
 		}
@@ -94,7 +95,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 			tx.commit();
 			this.readOnly = readOnly;
 			try {
-				tx = VanillaDb.txMgr().newTransaction(isolationLevel, readOnly);
+				tx = newTransaction();
 			} catch (Exception e) {
 				throw new RemoteException("error creating transaction ", e);
 			}
@@ -119,12 +120,33 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 		tx.commit();
 		this.isolationLevel = level;
 		try {
-			tx = VanillaDb.txMgr().newTransaction(isolationLevel, readOnly);
+			tx = newTransaction();
 		} catch (Exception e) {
 			throw new RemoteException("error creating transaction ", e);
 		}
 	}
 
+	/**
+	 * Sets whether the transactions of this connection commit asynchronously.
+	 * The setting also applies to the current transaction.
+	 * 
+	 * @see Transaction#setAsyncCommit(boolean)
+	 */
+	@Override
+	public void setAsyncCommit(boolean asyncCommit) throws RemoteException {
+		this.asyncCommit = asyncCommit;
+		tx.setAsyncCommit(asyncCommit);
+	}
+
+	/**
+	 * Retrieves whether the transactions of this connection commit
+	 * asynchronously.
+	 */
+	@Override
+	public boolean isAsyncCommit() throws RemoteException {
+		return this.asyncCommit;
+	}
+
 	/**
 	 * Retrieves the current auto-commit mode for this Connection object. *
 	 */
@@ -159,7 +181,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 	public void commit() throws RemoteException {
 		tx.commit();
 		try {
-			tx = VanillaDb.txMgr().newTransaction(isolationLevel, readOnly);
+			tx = newTransaction();
 		} catch (Exception e) {
 			throw new RemoteException("error creating transaction ", e);
 		}
@@ -174,12 +196,18 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 	public void rollback() throws RemoteException {
 		tx.rollback();
 		try {
-			tx = VanillaDb.txMgr().newTransaction(isolationLevel, readOnly);
+			tx = newTransaction();
 		} catch (Exception e) {
 			throw new RemoteException("error creating transaction ", e);
 		}
 	}
 
+	private Transaction newTransaction() {
+		Transaction newTx = VanillaDb.txMgr().newTransaction(isolationLevel, readOnly);
+		newTx.setAsyncCommit(asyncCommit);
+		return newTx;
+	}
+
 	// The following methods are used by the server-side classes.
 
 	/**
@@ -19,7 +19,9 @@ import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.storedprocedure.BuiltInStoredProcedureFactory;
 import org.vanilladb.core.sql.storedprocedure.StoredProcedure;
+import org.vanilladb.core.sql.storedprocedure.StoredProcedureFactory;
 
 /**
  * The RMI server-side implementation of RemoteConnection for stored procedure
@@ -29,6 +31,8 @@ import org.vanilladb.core.sql.storedprocedure.StoredProcedure;
 class RemoteConnectionImpl extends UnicastRemoteObject implements
 		RemoteConnection {
 
+	private static final StoredProcedureFactory BUILT_INS = new BuiltInStoredProcedureFactory();
+
 	/**
 	 * Creates a remote connection and begins a new transaction for it.
 	 * 
@@ -42,7 +46,9 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 	public SpResultSet callStoredProc(int pid, Object... pars)
 			throws RemoteException {
 		try {
-			StoredProcedure sp = VanillaDb.spFactory().getStroredProcedure(pid);
+			StoredProcedureFactory factory = BuiltInStoredProcedureFactory.isBuiltIn(pid) ? BUILT_INS
+					: VanillaDb.spFactory();
+			StoredProcedure sp = factory.getStroredProcedure(pid);
 			sp.prepare(pars);
 			return sp.execute();
 		} catch (Exception e) {
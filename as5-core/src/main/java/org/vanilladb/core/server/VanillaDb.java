@@ -31,6 +31,7 @@ import org.vanilladb.core.query.planner.opt.HeuristicQueryPlanner;
 import org.vanilladb.core.server.task.TaskMgr;
 import org.vanilladb.core.sql.storedprocedure.SampleStoredProcedureFactory;
 import org.vanilladb.core.sql.storedprocedure.StoredProcedureFactory;
+import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.log.LogMgr;
 import org.vanilladb.core.storage.metadata.CatalogMgr;
@@ -148,6 +149,10 @@ public class VanillaDb {
 
 		// initialize the statistics manager to build the histogram
 		initStatMgr(initTx);
+
+		// reload the blocks cached before the shutdown in the background
+		if (!isDbNew)
+			BufferMgr.startWarmUp();
 		
 		// create a checkpoint
 		txMgr.createCheckpoint(initTx);
@@ -155,6 +160,10 @@ public class VanillaDb {
 		// commit the initializing transaction
 		initTx.commit();
 
+		// roll back the unfinished transactions in the background
+		if (!isDbNew)
+			RecoveryMgr.startBackgroundUndo();
+
 		// initializing checkpointing task
 		boolean doCheckpointing = CoreProperties.getLoader().getPropertyAsBoolean(
 				VanillaDb.class.getName() + ".DO_CHECKPOINT", true);
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.sql.storedprocedure;
+
+/**
+ * The factory of the stored procedures built into VanillaDb, which take the
+ * negative procedure ids so as not to clash with those of the applications.
+ */
+public class BuiltInStoredProcedureFactory implements StoredProcedureFactory {
+
+	/**
+	 * The id of {@link ResizeBufferPoolProc}.
+	 */
+	public static final int RESIZE_BUFFER_POOL = -1;
+
+	/**
+	 * Returns true if the specified procedure id is taken by a built-in
+	 * stored procedure.
+	 * 
+	 * @param pid
+	 *            the procedure id
+	 * @return true if the procedure is built in
+	 */
+	public static boolean isBuiltIn(int pid) {
+		return pid < 0;
+	}
+
+	@Override
+	public StoredProcedure getStroredProcedure(int pid) {
+		switch (pid) {
+		case RESIZE_BUFFER_POOL:
+			return new ResizeBufferPoolProc();
+		default:
+			throw new UnsupportedOperationException("no built-in stored procedure " + pid);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.sql.storedprocedure;
+
+import org.vanilladb.core.remote.storedprocedure.SpResultSet;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+
+/**
+ * A built-in stored procedure that resizes the buffer pool online. It takes
+ * the requested number of buffers as its only parameter, and returns the
+ * resulting size of the pool in the field {@code pool_size}. The procedure
+ * runs no transaction.
+ * 
+ * @see BufferMgr#resizeBufferPool(int)
+ */
+public class ResizeBufferPoolProc implements StoredProcedure {
+
+	private int numBuffs;
+
+	@Override
+	public void prepare(Object... pars) {
+		if (pars.length != 1 || !(pars[0] instanceof Number))
+			throw new IllegalArgumentException("the number of buffers is expected");
+		numBuffs = ((Number) pars[0]).intValue();
+	}
+
+	@Override
+	public SpResultSet execute() {
+		int size = BufferMgr.resizeBufferPool(numBuffs);
+
+		Schema sch = new Schema();
+		sch.addField("pool_size", Type.INTEGER);
+		SpResultRecord rec = new SpResultRecord();
+		rec.setVal("pool_size", new IntegerConstant(size));
+		return new SpResultSet(sch, rec);
+	}
+}
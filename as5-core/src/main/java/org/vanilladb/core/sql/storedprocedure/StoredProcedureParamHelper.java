@@ -24,6 +24,7 @@ public abstract class StoredProcedureParamHelper {
 
 	protected boolean isCommitted = true;
 	private boolean isReadOnly = false;
+	private boolean isAsyncCommit = false;
 
 	/**
 	 * Prepare parameters for this stored procedure.
@@ -66,6 +67,21 @@ public abstract class StoredProcedureParamHelper {
 		return isReadOnly;
 	}
 
+	/**
+	 * Sets whether the transaction of this stored procedure commits
+	 * asynchronously.
+	 * 
+	 * @param isAsyncCommit
+	 *            true to commit asynchronously
+	 */
+	protected void setAsyncCommit(boolean isAsyncCommit) {
+		this.isAsyncCommit = isAsyncCommit;
+	}
+
+	public boolean isAsyncCommit() {
+		return isAsyncCommit;
+	}
+
 	public void setCommitted(boolean b) {
 		isCommitted = b;
 	}
@@ -16,17 +16,19 @@
 package org.vanilladb.core.storage.buffer;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.BlockWindow;
 import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.file.io.IoBuffer;
 import org.vanilladb.core.storage.log.LogSeqNum;
 
 /**
@@ -35,6 +37,15 @@ import org.vanilladb.core.storage.log.LogSeqNum;
  * the block has been pinned, whether the contents of the page have been
  * modified, and if so, the id of the modifying transaction and the LSN of the
  * corresponding log record.
+ * 
+ * <p>
+ * The status and the contents are guarded by a {@link StampedLock}. Readers
+ * read optimistically and validate the stamp afterward, so a read takes no
+ * lock unless a writer is active at the same time, in which case it is
+ * retried under the read lock. Every modification takes the write lock,
+ * which invalidates the concurrent optimistic reads. The lock is not
+ * reentrant, so the methods holding it never call each other.
+ * </p>
  */
 public class Buffer {
 	
@@ -48,16 +59,19 @@ public class Buffer {
 	private static final int LAST_LSN_OFFSET = 0;
 	private static final int DATA_START_OFFSET = LogSeqNum.SIZE;
 	
-	private Page contents = new Page();
+	private Page contents;
 	private BlockId blk = null;
 	private int pins = 0;
 	private boolean isNew = false;
 	private Set<Long> modifiedBy = new HashSet<Long>();
 	// TODO: We use (-1, -1) for the default value. Will this be a problem ?
 	private LogSeqNum lastLsn = LogSeqNum.DEFAULT_VALUE;
+	// The LSN of the earliest log record whose change is not written yet, or
+	// null if the page has no such change
+	private LogSeqNum recLsn;
 	
 	// Locks
-	private final ReadWriteLock internalLock = new ReentrantReadWriteLock();
+	private final StampedLock internalLock = new StampedLock();
 	private final Lock externalLock = new ReentrantLock();
 	private final Lock flushLock = new ReentrantLock();
 	
@@ -70,6 +84,20 @@ public class Buffer {
 	 * {@link VanillaDb#initFileAndLogMgr(String)} or is called first.
 	 */
 	Buffer() {
+		contents = new Page();
+	}
+
+	/**
+	 * Creates a new buffer over the specified frame, e.g. a slice of an
+	 * off-heap arena of the buffer pool.
+	 * 
+	 * @param frame
+	 *            the I/O buffer of a block size holding the page, or null
+	 *            for a buffer of the pool that is not in use yet
+	 */
+	Buffer(IoBuffer frame) {
+		if (frame != null)
+			contents = new Page(frame);
 	}
 
 	/**
@@ -85,20 +113,81 @@ public class Buffer {
 	 * @return the constant value at that offset
 	 */
 	public Constant getVal(int offset, Type type) {
-		internalLock.readLock().lock();
+		long stamp = internalLock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				Constant val = contents.getVal(DATA_START_OFFSET + offset, type);
+				if (internalLock.validate(stamp))
+					return val;
+			} catch (RuntimeException e) {
+				// The page was being modified, read it again under the lock
+			}
+		}
+
+		stamp = internalLock.readLock();
 		try {
 			return contents.getVal(DATA_START_OFFSET + offset, type);
 		} finally {
-			internalLock.readLock().unlock();
+			internalLock.unlockRead(stamp);
 		}
 	}
-	
+
+	/**
+	 * Returns the integer at the specified offset of this buffer's page
+	 * without creating a {@link Constant}.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * 
+	 * @return the integer at that offset
+	 */
+	public int getInt(int offset) {
+		long stamp = internalLock.tryOptimisticRead();
+		if (stamp != 0) {
+			int val = contents.getInt(DATA_START_OFFSET + offset);
+			if (internalLock.validate(stamp))
+				return val;
+		}
+
+		stamp = internalLock.readLock();
+		try {
+			return contents.getInt(DATA_START_OFFSET + offset);
+		} finally {
+			internalLock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the long integer at the specified offset of this buffer's page
+	 * without creating a {@link Constant}.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * 
+	 * @return the long integer at that offset
+	 */
+	public long getLong(int offset) {
+		long stamp = internalLock.tryOptimisticRead();
+		if (stamp != 0) {
+			long val = contents.getLong(DATA_START_OFFSET + offset);
+			if (internalLock.validate(stamp))
+				return val;
+		}
+
+		stamp = internalLock.readLock();
+		try {
+			return contents.getLong(DATA_START_OFFSET + offset);
+		} finally {
+			internalLock.unlockRead(stamp);
+		}
+	}
+
 	void setVal(int offset, Constant val) {
-		internalLock.writeLock().lock();
+		long stamp = internalLock.writeLock();
 		try {
 			contents.setVal(DATA_START_OFFSET + offset, val);
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockWrite(stamp);
 		}
 	}
 
@@ -119,17 +208,25 @@ public class Buffer {
 	 *            the LSN of the corresponding log record
 	 */
 	public void setVal(int offset, Constant val, long txNum, LogSeqNum lsn) {
-		internalLock.writeLock().lock();
+		long stamp = internalLock.writeLock();
 		try {
 			modifiedBy.add(txNum);
 			if (lsn != null && lsn.compareTo(lastLsn) > 0)
 				lastLsn = lsn;
+			// A change may be applied long after it is logged, so keep the
+			// smallest LSN. A change logged without an LSN comes after the
+			// ones already applied.
+			if (lsn != null) {
+				if (recLsn == null || lsn.compareTo(recLsn) < 0)
+					recLsn = lsn;
+			} else if (recLsn == null)
+				recLsn = lastLsn;
 			
 			// Put the last LSN in front of the data
 			lastLsn.writeToPage(contents, LAST_LSN_OFFSET);
 			contents.setVal(DATA_START_OFFSET + offset, val);
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockWrite(stamp);
 		}
 	}
 	
@@ -141,11 +238,33 @@ public class Buffer {
 	 * @return the LSN of the latest affected log record
 	 */
 	public LogSeqNum lastLsn(){
-		internalLock.readLock().lock();
+		long stamp = internalLock.tryOptimisticRead();
+		LogSeqNum lsn = lastLsn;
+		if (internalLock.validate(stamp))
+			return lsn;
+
+		stamp = internalLock.readLock();
 		try {
 			return lastLsn;
 		} finally {
-			internalLock.readLock().unlock();
+			internalLock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the LSN of the earliest log record whose change to the page has
+	 * not been written to disk yet. A redo starting from this LSN restores the
+	 * page.
+	 * 
+	 * @return the recovery LSN of the page, or null if the page holds no such
+	 *         change
+	 */
+	public LogSeqNum recoveryLsn() {
+		long stamp = internalLock.readLock();
+		try {
+			return recLsn;
+		} finally {
+			internalLock.unlockRead(stamp);
 		}
 	}
 
@@ -155,11 +274,16 @@ public class Buffer {
 	 * @return a block ID
 	 */
 	public BlockId block() {
-		internalLock.readLock().lock();
+		long stamp = internalLock.tryOptimisticRead();
+		BlockId b = blk;
+		if (internalLock.validate(stamp))
+			return b;
+
+		stamp = internalLock.readLock();
 		try {
 			return blk;
 		} finally {
-			internalLock.readLock().unlock();
+			internalLock.unlockRead(stamp);
 		}
 	}
 	
@@ -190,11 +314,42 @@ public class Buffer {
 	}
 
 	protected void close() {
-		internalLock.writeLock().lock();
+		long stamp = internalLock.writeLock();
+		try {
+			if (contents != null)
+				contents.close();
+		} finally {
+			internalLock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Gives the buffer the specified frame to hold its page in. This is
+	 * called when the buffer pool grows.
+	 * 
+	 * @param frame
+	 *            the I/O buffer of a block size
+	 */
+	void attach(IoBuffer frame) {
+		long stamp = internalLock.writeLock();
+		try {
+			contents = new Page(frame);
+		} finally {
+			internalLock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Releases the frame of the buffer, which must hold no block. This is
+	 * called when the buffer pool shrinks.
+	 */
+	void detach() {
+		long stamp = internalLock.writeLock();
 		try {
 			contents.close();
+			contents = null;
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockWrite(stamp);
 		}
 	}
 
@@ -204,18 +359,72 @@ public class Buffer {
 	 * to writing the page to disk.
 	 */
 	void flush() {
-		internalLock.writeLock().lock();
+		// The flushing lock must be taken first, since a thread doing a
+		// physiological operation holds it while accessing the buffer
 		flushLock.lock();
+		long stamp = internalLock.writeLock();
 		try {
-			if (isNew || modifiedBy.size() > 0) {
-				VanillaDb.logMgr().flush(lastLsn);
-				contents.write(blk);
-				modifiedBy.clear();
-				isNew = false;
-			}
+			writeIfDirty();
 		} finally {
+			internalLock.unlockWrite(stamp);
 			flushLock.unlock();
-			internalLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the pages of the specified buffers, which must hold consecutive
+	 * blocks of a file in order, by one I/O. The log is flushed only once, up
+	 * to the largest LSN of the buffers. The caller must hold the external
+	 * locks of the buffers, so that their blocks do not change.
+	 * 
+	 * <p>
+	 * Only the flushing lock of the first buffer is waited for. The run ends
+	 * before the first of the rest whose flushing lock is held by another
+	 * thread, since that thread may be waiting for a buffer of the run.
+	 * </p>
+	 * 
+	 * @param run
+	 *            the buffers, in the order of their blocks
+	 * @return the number of buffers written, which are the first ones of the
+	 *         run
+	 */
+	static int flushRun(List<Buffer> run) {
+		int count = 0;
+		long[] stamps = new long[run.size()];
+		try {
+			for (Buffer buff : run) {
+				if (count == 0)
+					buff.flushLock.lock();
+				else if (!buff.flushLock.tryLock())
+					break;
+				stamps[count++] = buff.internalLock.writeLock();
+			}
+
+			// Follow the WAL once for the whole run
+			LogSeqNum maxLsn = LogSeqNum.DEFAULT_VALUE;
+			Page[] pages = new Page[count];
+			for (int i = 0; i < count; i++) {
+				Buffer buff = run.get(i);
+				if (buff.lastLsn.compareTo(maxLsn) > 0)
+					maxLsn = buff.lastLsn;
+				pages[i] = buff.contents;
+			}
+			VanillaDb.logMgr().flush(maxLsn);
+			Page.write(run.get(0).blk, pages);
+
+			for (int i = 0; i < count; i++) {
+				Buffer buff = run.get(i);
+				buff.modifiedBy.clear();
+				buff.isNew = false;
+				buff.recLsn = null;
+			}
+			return count;
+		} finally {
+			for (int i = count - 1; i >= 0; i--) {
+				Buffer buff = run.get(i);
+				buff.internalLock.unlockWrite(stamps[i]);
+				buff.flushLock.unlock();
+			}
 		}
 	}
 
@@ -223,11 +432,11 @@ public class Buffer {
 	 * Increases the buffer's pin count.
 	 */
 	void pin() {
-		internalLock.writeLock().lock();
+		long stamp = internalLock.writeLock();
 		try {
 			pins++;
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockWrite(stamp);
 		}
 	}
 
@@ -235,11 +444,11 @@ public class Buffer {
 	 * Decreases the buffer's pin count.
 	 */
 	void unpin() {
-		internalLock.writeLock().lock();
+		long stamp = internalLock.writeLock();
 		try {
 			pins--;
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockWrite(stamp);
 		}
 	}
 
@@ -250,11 +459,36 @@ public class Buffer {
 	 * @return true if the buffer is pinned
 	 */
 	boolean isPinned() {
-		internalLock.readLock().lock();
+		long stamp = internalLock.tryOptimisticRead();
+		int p = pins;
+		if (internalLock.validate(stamp))
+			return p > 0;
+
+		stamp = internalLock.readLock();
 		try {
 			return pins > 0;
 		} finally {
-			internalLock.readLock().unlock();
+			internalLock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns true if the page has been modified or newly appended since it
+	 * was last written to disk.
+	 * 
+	 * @return true if the buffer is dirty
+	 */
+	boolean isDirty() {
+		long stamp = internalLock.tryOptimisticRead();
+		boolean dirty = isNew || modifiedBy.size() > 0;
+		if (internalLock.validate(stamp))
+			return dirty;
+
+		stamp = internalLock.readLock();
+		try {
+			return isNew || modifiedBy.size() > 0;
+		} finally {
+			internalLock.unlockRead(stamp);
 		}
 	}
 
@@ -267,11 +501,11 @@ public class Buffer {
 	 * @return true if the transaction modified the buffer
 	 */
 	boolean isModifiedBy(long txNum) {
-		internalLock.writeLock().lock();
+		long stamp = internalLock.readLock();
 		try {
 			return modifiedBy.contains(txNum);
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockRead(stamp);
 		}
 	}
 
@@ -284,15 +518,61 @@ public class Buffer {
 	 *            a block ID
 	 */
 	void assignToBlock(BlockId blk) {
-		internalLock.writeLock().lock();
+		flushLock.lock();
+		long stamp = internalLock.writeLock();
 		try {
-			flush();
+			writeIfDirty();
 			this.blk = blk;
 			contents.read(blk);
 			pins = 0;
 			lastLsn = LogSeqNum.readFromPage(contents, LAST_LSN_OFFSET);
 		} finally {
-			internalLock.writeLock().unlock();
+			internalLock.unlockWrite(stamp);
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Copies the contents of the specified block from a window that has read
+	 * it ahead into the buffer's page. If the buffer was dirty, then the
+	 * contents of the previous page are first written to disk.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param window
+	 *            the window holding the block
+	 */
+	void assignToBlock(BlockId blk, BlockWindow window) {
+		flushLock.lock();
+		long stamp = internalLock.writeLock();
+		try {
+			writeIfDirty();
+			this.blk = blk;
+			window.copyTo(blk, contents);
+			pins = 0;
+			lastLsn = LogSeqNum.readFromPage(contents, LAST_LSN_OFFSET);
+		} finally {
+			internalLock.unlockWrite(stamp);
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Detaches the buffer from its block, so that the buffer can be assigned
+	 * to another block later. If the buffer was dirty, then the contents of
+	 * the page are first written to disk.
+	 */
+	void reset() {
+		flushLock.lock();
+		long stamp = internalLock.writeLock();
+		try {
+			writeIfDirty();
+			blk = null;
+			pins = 0;
+			lastLsn = LogSeqNum.DEFAULT_VALUE;
+		} finally {
+			internalLock.unlockWrite(stamp);
+			flushLock.unlock();
 		}
 	}
 
@@ -307,16 +587,38 @@ public class Buffer {
 	 *            a page formatter, used to initialize the page
 	 */
 	void assignToNew(String fileName, PageFormatter fmtr) {
-		internalLock.writeLock().lock();
+		flushLock.lock();
 		try {
 			flush();
+
+			// The formatter writes through the buffer, which takes the lock
 			fmtr.format(this);
-			blk = contents.append(fileName);
-			pins = 0;
-			isNew = true;
-			lastLsn = LogSeqNum.DEFAULT_VALUE;
+
+			long stamp = internalLock.writeLock();
+			try {
+				blk = contents.append(fileName);
+				pins = 0;
+				isNew = true;
+				lastLsn = LogSeqNum.DEFAULT_VALUE;
+			} finally {
+				internalLock.unlockWrite(stamp);
+			}
 		} finally {
-			internalLock.writeLock().unlock();
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the page to its disk block if the page is dirty. The caller must
+	 * hold the write lock.
+	 */
+	private void writeIfDirty() {
+		if (isNew || modifiedBy.size() > 0) {
+			VanillaDb.logMgr().flush(lastLsn);
+			contents.write(blk);
+			modifiedBy.clear();
+			isNew = false;
+			recLsn = null;
 		}
 	}
 	
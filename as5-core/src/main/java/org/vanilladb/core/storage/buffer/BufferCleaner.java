@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A background thread that writes the dirty, unpinned buffers of a
+ * {@link BufferPoolMgr} ahead of its replacement hand, so that a pinning
+ * thread usually finds a clean victim and does not have to wait for a write.
+ * 
+ * <p>
+ * Each round, the cleaner scans the pool from the replacement hand of a
+ * partition, taking the partitions in turn. It always cleans the next
+ * {@link #LOOKAHEAD} buffers, and also the rest of the pool when the ratio of
+ * dirty buffers exceeds {@link #DIRTY_RATIO_TARGET}. At most
+ * {@link #MAX_WRITES_PER_ROUND} buffers are written per round, in the order
+ * of their blocks. The cleaner sleeps for {@link #INTERVAL} between two
+ * rounds, unless the dirty ratio exceeds {@link #DIRTY_RATIO_MAX} or a
+ * pinning thread had to write a dirty victim by itself.
+ * </p>
+ * 
+ * <p>
+ * After writing, the cleaner also evicts clean, unpinned blocks chosen by the
+ * replacement strategy until the free list of the pool holds
+ * {@link #FREE_LIST_TARGET} frames (at most 1/16 of the pool, shared by its
+ * partitions), so that a miss usually needs no victim search at all.
+ * </p>
+ */
+class BufferCleaner implements Runnable {
+	private static Logger logger = Logger.getLogger(BufferCleaner.class.getName());
+
+	static final boolean ENABLED;
+	private static final long INTERVAL;
+	private static final int LOOKAHEAD;
+	private static final int MAX_WRITES_PER_ROUND;
+	private static final double DIRTY_RATIO_TARGET;
+	private static final double DIRTY_RATIO_MAX;
+	private static final int FREE_LIST_TARGET;
+
+	static {
+		ENABLED = CoreProperties.getLoader().getPropertyAsBoolean(BufferCleaner.class.getName() + ".ENABLED", true);
+		INTERVAL = CoreProperties.getLoader().getPropertyAsLong(BufferCleaner.class.getName() + ".INTERVAL", 100);
+		LOOKAHEAD = CoreProperties.getLoader().getPropertyAsInteger(BufferCleaner.class.getName() + ".LOOKAHEAD",
+				64);
+		MAX_WRITES_PER_ROUND = Math.max(1, CoreProperties.getLoader()
+				.getPropertyAsInteger(BufferCleaner.class.getName() + ".MAX_WRITES_PER_ROUND", 64));
+		DIRTY_RATIO_TARGET = CoreProperties.getLoader()
+				.getPropertyAsDouble(BufferCleaner.class.getName() + ".DIRTY_RATIO_TARGET", 0.25);
+		DIRTY_RATIO_MAX = CoreProperties.getLoader()
+				.getPropertyAsDouble(BufferCleaner.class.getName() + ".DIRTY_RATIO_MAX", 0.5);
+		FREE_LIST_TARGET = CoreProperties.getLoader()
+				.getPropertyAsInteger(BufferCleaner.class.getName() + ".FREE_LIST_TARGET", 16);
+	}
+
+	private static class Candidate {
+		Buffer buff;
+		BlockId blk;
+
+		Candidate(Buffer buff, BlockId blk) {
+			this.buff = buff;
+			this.blk = blk;
+		}
+	}
+
+	private static final Comparator<Candidate> BLOCK_ORDER = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate c1, Candidate c2) {
+			return c1.blk.compareTo(c2.blk);
+		}
+	};
+
+	private final Buffer[] bufferPool;
+	private final BufferPoolMgr poolMgr;
+	private final BufferStatistics stats;
+	private boolean wakeUpRequested;
+	private volatile boolean stopped;
+	private int rounds;
+
+	BufferCleaner(Buffer[] bufferPool, BufferPoolMgr poolMgr, BufferStatistics stats) {
+		this.bufferPool = bufferPool;
+		this.poolMgr = poolMgr;
+		this.stats = stats;
+	}
+
+	/**
+	 * Asks the cleaner to start the next round immediately.
+	 */
+	void wakeUp() {
+		synchronized (this) {
+			if (!wakeUpRequested) {
+				wakeUpRequested = true;
+				notify();
+			}
+		}
+	}
+
+	/**
+	 * Asks the cleaner to stop after the current round.
+	 */
+	void stop() {
+		synchronized (this) {
+			stopped = true;
+			notify();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (!stopped) {
+			try {
+				int written = cleanRound();
+				stats.cleanerWrites.record(written);
+
+				// Keep going without a break only if there is progress
+				if (written == 0 || stats.dirtyBuffers <= DIRTY_RATIO_MAX * poolMgr.size()) {
+					synchronized (this) {
+						if (!wakeUpRequested && !stopped)
+							wait(INTERVAL);
+						wakeUpRequested = false;
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.warning("buffer cleaner round failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Writes a batch of dirty, unpinned buffers.
+	 * 
+	 * @return the number of buffers written
+	 */
+	int cleanRound() {
+		int numBuffs = bufferPool.length;
+		int lookahead = Math.min(LOOKAHEAD, numBuffs);
+		// Follow the hand of each partition in turn
+		int numPartitions = poolMgr.numPartitions();
+		int hand = poolMgr.replacementHand(rounds++ % numPartitions);
+
+		// Collect the dirty buffers in the order the hand will reach them
+		List<Candidate> near = new ArrayList<Candidate>();
+		List<Candidate> far = new ArrayList<Candidate>();
+		int dirty = 0;
+		for (int i = 1; i <= numBuffs; i++) {
+			Buffer buff = bufferPool[(hand + i) % numBuffs];
+			if (!buff.isDirty())
+				continue;
+			dirty++;
+			if (buff.isPinned())
+				continue;
+			if (i <= lookahead)
+				near.add(new Candidate(buff, buff.block()));
+			else
+				far.add(new Candidate(buff, buff.block()));
+		}
+		stats.dirtyBuffers = dirty;
+		// The pool may be in use only in part
+		int poolSize = poolMgr.size();
+		if (dirty > DIRTY_RATIO_TARGET * poolSize)
+			near.addAll(far);
+		if (near.size() > MAX_WRITES_PER_ROUND)
+			near = near.subList(0, MAX_WRITES_PER_ROUND);
+
+		// Write them in the order of blocks to make the I/Os sequential
+		Collections.sort(near, BLOCK_ORDER);
+		int written = 0;
+		for (Candidate c : near) {
+			Buffer buff = c.buff;
+			// Skip the buffers being pinned or replaced
+			if (!buff.getExternalLock().tryLock())
+				continue;
+			try {
+				if (!buff.isPinned() && buff.isDirty()) {
+					buff.flush();
+					written++;
+				}
+			} finally {
+				buff.getExternalLock().unlock();
+			}
+		}
+
+		// Refill the free list with the clean victims
+		int freeTarget = Math.min(FREE_LIST_TARGET, poolSize / 16);
+		freeTarget = (freeTarget + numPartitions - 1) / numPartitions;
+		int freed = 0;
+		for (int i = 0; i < numPartitions; i++)
+			while (poolMgr.freeFrameCount(i) < freeTarget && poolMgr.reclaimFrame(i))
+				freed++;
+
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("buffer cleaner wrote " + written + " of " + dirty + " dirty buffers, and freed " + freed
+					+ " frames");
+		return written;
+	}
+}
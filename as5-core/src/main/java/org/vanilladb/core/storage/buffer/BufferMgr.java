@@ -22,10 +22,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.vanilladb.core.storage.buffer.BufferWaitQueue.Waiter;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
 import org.vanilladb.core.util.CoreProperties;
@@ -36,10 +39,11 @@ import org.vanilladb.core.util.CoreProperties;
  * difference is that the methods {@link #pin(BlockId)} and
  * {@link #pinNew(String, PageFormatter)} will never return false and null
  * respectively. If no buffers are currently available, then the calling thread
- * will be placed on a waiting list. The waiting threads are removed from the
- * list when a buffer becomes available. If a thread has been waiting for a
- * buffer for an excessive amount of time (currently, 10 seconds) then repins
- * all currently holding blocks by the calling transaction. Buffer manager
+ * will be placed on a waiting queue. The waiting threads are woken one at a
+ * time, in the order of arrival, as buffers become available. If a thread has
+ * been waiting for a buffer for an excessive amount of time (currently, 10
+ * seconds) then repins all currently holding blocks by the calling
+ * transaction. Buffer manager
  * implements {@link TransactionLifecycleListener} for the purpose of unpinning buffers
  * when transaction commit/rollback/recovery.
  * 
@@ -52,14 +56,17 @@ public class BufferMgr implements TransactionLifecycleListener {
 	private static Logger logger = Logger.getLogger(BufferMgr.class.getName());
 	
 	protected static final int BUFFER_POOL_SIZE;
-	private static final long MAX_TIME;
-	private static final long EPSILON;
+	private static final int MAX_BUFFER_POOL_SIZE;
+	static final long MAX_TIME;
+	static final long EPSILON;
 
 	static {
 		MAX_TIME = CoreProperties.getLoader().getPropertyAsLong(BufferMgr.class.getName() + ".MAX_TIME", 10000);
 		EPSILON = CoreProperties.getLoader().getPropertyAsLong(BufferMgr.class.getName() + ".EPSILON", 50);
 		BUFFER_POOL_SIZE = CoreProperties.getLoader()
 				.getPropertyAsInteger(BufferMgr.class.getName() + ".BUFFER_POOL_SIZE", 1024);
+		MAX_BUFFER_POOL_SIZE = CoreProperties.getLoader()
+				.getPropertyAsInteger(BufferMgr.class.getName() + ".MAX_BUFFER_POOL_SIZE", 0);
 	}
 
 	class PinnedBuffer {
@@ -71,8 +78,9 @@ public class BufferMgr implements TransactionLifecycleListener {
 		}
 	}
 
-	protected static BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_POOL_SIZE);
-	protected static List<Thread> waitingThreads = new LinkedList<Thread>();
+	protected static BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_POOL_SIZE,
+			Math.max(BUFFER_POOL_SIZE, MAX_BUFFER_POOL_SIZE), BufferPoolMgr.NUM_PARTITIONS);
+	private static BufferWarmer warmer = new BufferWarmer(bufferPool, BufferWarmer.LIST_FILE);
 
 	private Map<BlockId, PinnedBuffer> pinnedBuffers = new HashMap<BlockId, PinnedBuffer>();
 	private long txNum;
@@ -106,6 +114,23 @@ public class BufferMgr implements TransactionLifecycleListener {
 	 * @return the buffer pinned to that block
 	 */
 	public Buffer pin(BlockId blk) {
+		return pin(blk, null);
+	}
+
+	/**
+	 * Pins a buffer to the specified block for a bulk sequential access. If
+	 * the block is not in the pool, it is read into a buffer of the specified
+	 * ring when possible, so that the access does not evict the blocks used by
+	 * the other transactions.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param ring
+	 *            the ring of the bulk access, or null to pin the block as
+	 *            {@link #pin(BlockId)} does
+	 * @return the buffer pinned to that block
+	 */
+	public Buffer pin(BlockId blk, BufferRing ring) {
 		// Try to find out if this block has been pinned by this transaction
 		PinnedBuffer pinnedBuff = pinnedBuffers.get(blk);
 		if (pinnedBuff != null) {
@@ -114,51 +139,27 @@ public class BufferMgr implements TransactionLifecycleListener {
 		}
 		
 		// This transaction has pinned too many buffers
-		if (pinnedBuffers.size() == BUFFER_POOL_SIZE)
+		if (pinnedBuffers.size() >= bufferPool.size())
 			throw new BufferAbortException();
 		
 		// Pinning process
 		try {
-			Buffer buff;
-			long timestamp = System.currentTimeMillis();
-			boolean waitedBeforeGotBuffer = false;
-
 			// Try to pin a buffer or the pinned buffer for the given BlockId
-			buff = bufferPool.pin(blk);
+			Buffer buff = bufferPool.pin(blk, ring);
 
-			// If there is no such buffer or no available buffer,
-			// wait for it
-			if (buff == null) {
-				waitedBeforeGotBuffer = true;
-				synchronized (bufferPool) {
-					waitingThreads.add(Thread.currentThread());
-
-					while (buff == null && !waitingTooLong(timestamp)) {
-						bufferPool.wait(MAX_TIME);
-						if (waitingThreads.get(0).equals(Thread.currentThread()))
-							buff = bufferPool.pin(blk);
-					}
-
-					waitingThreads.remove(Thread.currentThread());
-				}
-			}
+			// If there is no available buffer, wait for it
+			if (buff == null)
+				buff = waitAndPin(blk, null, null, ring);
 
 			// If it still has no buffer after a long wait,
 			// release and re-pin all buffers it has
 			if (buff == null) {
 				repin();
-				buff = pin(blk);
+				buff = pin(blk, ring);
 			} else {
 				pinnedBuffers.put(buff.block(), new PinnedBuffer(buff));
 			}
 
-			// TODO: Add some comment here
-			if (waitedBeforeGotBuffer) {
-				synchronized (bufferPool) {
-					bufferPool.notifyAll();
-				}
-			}
-
 			return buff;
 		} catch (InterruptedException e) {
 			throw new BufferAbortException();
@@ -177,59 +178,51 @@ public class BufferMgr implements TransactionLifecycleListener {
 	 * @return the buffer pinned to that block
 	 */
 	public Buffer pinNew(String fileName, PageFormatter fmtr) {
-		if (pinnedBuffers.size() == BUFFER_POOL_SIZE)
+		return pinNew(fileName, fmtr, null);
+	}
+
+	/**
+	 * Pins a buffer to a new block in the specified file for a bulk append.
+	 * The buffer is taken from the specified ring when possible.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @param fmtr
+	 *            the formatter used to initialize the page
+	 * @param ring
+	 *            the ring of the bulk access, or null to pin the block as
+	 *            {@link #pinNew(String, PageFormatter)} does
+	 * @return the buffer pinned to that block
+	 */
+	public Buffer pinNew(String fileName, PageFormatter fmtr, BufferRing ring) {
+		if (pinnedBuffers.size() >= bufferPool.size())
 			throw new BufferAbortException();
 		try {
-			Buffer buff;
-			long timestamp = System.currentTimeMillis();
-			boolean waitedBeforeGotBuffer = false;
-
-			// Try to pin a buffer or the pinned buffer for the given BlockId
-			buff = bufferPool.pinNew(fileName, fmtr);
+			// Try to pin a buffer for a new block
+			Buffer buff = bufferPool.pinNew(fileName, fmtr, ring);
 
-			// If there is no such buffer or no available buffer,
-			// wait for it
-			if (buff == null) {
-				waitedBeforeGotBuffer = true;
-				synchronized (bufferPool) {
-					waitingThreads.add(Thread.currentThread());
-
-					while (buff == null && !waitingTooLong(timestamp)) {
-						bufferPool.wait(MAX_TIME);
-						if (waitingThreads.get(0).equals(Thread.currentThread()))
-							buff = bufferPool.pinNew(fileName, fmtr);
-					}
-
-					waitingThreads.remove(Thread.currentThread());
-				}
-			}
+			// If there is no available buffer, wait for it
+			if (buff == null)
+				buff = waitAndPin(null, fileName, fmtr, ring);
 
 			// If it still has no buffer after a long wait,
 			// release and re-pin all buffers it has
 			if (buff == null) {
 				repin();
-				buff = pinNew(fileName, fmtr);
+				buff = pinNew(fileName, fmtr, ring);
 			} else {
 				pinnedBuffers.put(buff.block(), new PinnedBuffer(buff));
 			}
 
-			// TODO: Add some comment here
-			if (waitedBeforeGotBuffer) {
-				synchronized (bufferPool) {
-					bufferPool.notifyAll();
-				}
-			}
-
 			return buff;
 		} catch (InterruptedException e) {
 			throw new BufferAbortException();
 		}
-
 	}
 
 	/**
 	 * Unpins the specified buffer. If the buffer's pin count becomes 0, then
-	 * the threads on the wait list are notified.
+	 * a thread waiting for a buffer is woken.
 	 * 
 	 * @param buff
 	 *            the buffer to be unpinned
@@ -244,16 +237,12 @@ public class BufferMgr implements TransactionLifecycleListener {
 			if (pinnedBuff.pinnedCount == 0) {
 				bufferPool.unpin(buff);
 				pinnedBuffers.remove(blk);
-				
-				synchronized (bufferPool) {
-					bufferPool.notifyAll();
-				}
 			}
 		}
 	}
 
 	/**
-	 * Flushes all dirty buffers.
+	 * Flushes all dirty buffers, and forces the data files to disk.
 	 */
 	public void flushAll() {
 		bufferPool.flushAll();
@@ -269,6 +258,38 @@ public class BufferMgr implements TransactionLifecycleListener {
 		bufferPool.flushAll(txNum);
 	}
 
+	/**
+	 * Returns the dirty page table of the buffer pool, which maps each block
+	 * holding logged changes not written yet to the LSN of the earliest of
+	 * those changes. This is taken at each checkpoint without writing any
+	 * page.
+	 * 
+	 * @return the dirty page table
+	 */
+	public Map<BlockId, LogSeqNum> dirtyPageTable() {
+		return bufferPool.dirtyPageTable();
+	}
+
+	/**
+	 * Saves the list of the blocks in the buffer pool, which is loaded back
+	 * by {@link #startWarmUp()} after a restart. This is called at each
+	 * checkpoint.
+	 */
+	public void saveResidentBlocks() {
+		if (BufferWarmer.ENABLED)
+			warmer.save();
+	}
+
+	/**
+	 * Starts loading the blocks listed at the latest checkpoint into the
+	 * buffer pool in the background. This is called after the recovery at
+	 * startup.
+	 */
+	public static void startWarmUp() {
+		if (BufferWarmer.ENABLED)
+			warmer.start();
+	}
+
 	/**
 	 * Returns the number of available (ie unpinned) buffers.
 	 * 
@@ -278,6 +299,38 @@ public class BufferMgr implements TransactionLifecycleListener {
 		return bufferPool.available();
 	}
 
+	/**
+	 * Returns the number of buffers in the pool currently.
+	 * 
+	 * @return the size of the buffer pool
+	 */
+	public static int bufferPoolSize() {
+		return bufferPool.size();
+	}
+
+	/**
+	 * Resizes the buffer pool online to the specified number of buffers, at
+	 * most {@code MAX_BUFFER_POOL_SIZE}. Shrinking the pool writes and evicts
+	 * the blocks of the frames taken away, waiting for them to be unpinned
+	 * for a while.
+	 * 
+	 * @param numBuffs
+	 *            the requested number of buffers
+	 * @return the resulting size of the buffer pool
+	 */
+	public static int resizeBufferPool(int numBuffs) {
+		return bufferPool.resize(numBuffs);
+	}
+
+	/**
+	 * Returns the runtime statistics of the buffer pool.
+	 * 
+	 * @return the statistics of the buffer pool
+	 */
+	public static BufferStatistics statistics() {
+		return bufferPool.statistics();
+	}
+
 	private void unpinAll(Transaction tx) {
 		// Copy the set of pinned buffers to avoid ConcurrentModificationException
 		Set<PinnedBuffer> pinnedBuffs = new HashSet<PinnedBuffer>(pinnedBuffers.values());
@@ -285,10 +338,6 @@ public class BufferMgr implements TransactionLifecycleListener {
 			for (PinnedBuffer pinnedBuff : pinnedBuffs)
 				bufferPool.unpin(pinnedBuff.buffer);
 		}
-
-		synchronized (bufferPool) {
-			bufferPool.notifyAll();
-		}
 	}
 
 	/**
@@ -298,6 +347,7 @@ public class BufferMgr implements TransactionLifecycleListener {
 	private void repin() {
 		if (logger.isLoggable(Level.WARNING))
 			logger.warning("Tx." + txNum + " is re-pinning all buffers");
+		bufferPool.statistics().repins.incrementAndGet();
 		
 		try {
 			// Copy the set of pinned buffers to avoid ConcurrentModificationException
@@ -317,8 +367,12 @@ public class BufferMgr implements TransactionLifecycleListener {
 				unpin(buf);
 
 			// Wait other threads pinning blocks
-			synchronized (bufferPool) {
-				bufferPool.wait(MAX_TIME);
+			BufferWaitQueue queue = bufferPool.waitQueue();
+			Waiter waiter = queue.enqueue();
+			try {
+				queue.await(waiter, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_TIME));
+			} finally {
+				queue.remove(waiter);
 			}
 
 			// Re-pin all blocks
@@ -329,7 +383,37 @@ public class BufferMgr implements TransactionLifecycleListener {
 		}
 	}
 
-	private boolean waitingTooLong(long startTime) {
-		return System.currentTimeMillis() - startTime + EPSILON > MAX_TIME;
+	/**
+	 * Waits in the queue of the buffer pool until a buffer can be pinned, or
+	 * until the waiting time is too long.
+	 * 
+	 * @return the pinned buffer, or null if the waiting time is too long
+	 */
+	private Buffer waitAndPin(BlockId blk, String fileName, PageFormatter fmtr, BufferRing ring)
+			throws InterruptedException {
+		BufferWaitQueue queue = bufferPool.waitQueue();
+		long startTime = System.nanoTime();
+		long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(MAX_TIME - EPSILON);
+		Buffer buff = null;
+
+		Waiter waiter = queue.enqueue();
+		try {
+			// Retry after being enqueued, so an unpin in between is not missed
+			do {
+				if (blk != null)
+					buff = bufferPool.pin(blk, ring);
+				else
+					buff = bufferPool.pinNew(fileName, fmtr, ring);
+			} while (buff == null && queue.await(waiter, deadline));
+		} finally {
+			queue.remove(waiter);
+			bufferPool.statistics().pinWaitTimes
+					.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+		}
+
+		// Pass the chance to the next waiter if there are more buffers
+		if (buff != null && bufferPool.available() > 0)
+			queue.signalOne();
+		return buff;
 	}
 }
@@ -15,26 +15,194 @@
  ******************************************************************************/
 package org.vanilladb.core.storage.buffer;
 
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.buffer.replacement.ClockStrategy;
+import org.vanilladb.core.storage.buffer.replacement.ReplacementStrategy;
+import org.vanilladb.core.storage.buffer.replacement.ReplacementStrategy.FrameFilter;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.BlockWindow;
 import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.file.io.IoAllocator;
+import org.vanilladb.core.storage.file.io.IoBuffer;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.util.CoreProperties;
 
 /**
- * Manages the pinning and unpinning of buffers to blocks.
+ * Manages the pinning and unpinning of buffers to blocks. A miss takes a frame
+ * from the free list if there is one. Otherwise, the buffer to be replaced is
+ * chosen by a {@link ReplacementStrategy}, which is set by the property
+ * {@code REPLACEMENT_STRATEGY}. A {@link BufferCleaner} thread writes the
+ * dirty buffers in the background, so that most victims are already clean
+ * when they are replaced, and refills the free list.
+ * 
+ * <p>
+ * The pool can be split into {@link #NUM_PARTITIONS} partitions, so that the
+ * threads pinning different blocks do not share the replacement state. Each
+ * partition owns a slice of the frames with its own replacement strategy,
+ * free list and count of available buffers, and a {@link PageTable} of the
+ * blocks hashed to it. A miss takes a frame of the partition of its block,
+ * and steals a frame from the other partitions only if that partition has no
+ * free frame while the others have, or if all its frames are pinned.
+ * </p>
+ * 
+ * <p>
+ * A {@link ReadAheadService} thread watches the pins for sequential runs and
+ * loads the blocks ahead of them into the free frames.
+ * </p>
+ * 
+ * <p>
+ * The pool can be resized online by {@link #resize(int)}, up to the capacity
+ * given when it is created. The frames beyond the current size are offline:
+ * they hold no memory and are never reserved. A partition takes its frames
+ * online and offline from its end, and a frame is drained before it goes
+ * offline.
+ * </p>
  */
 class BufferPoolMgr {
+	private static Logger logger = Logger.getLogger(BufferPoolMgr.class.getName());
+
+	private static final Class<?> REPLACEMENT_STRATEGY;
+	static final int NUM_PARTITIONS;
+	private static final int MAX_WRITE_RUN;
+
 	private Buffer[] bufferPool;
-	private Map<BlockId, Buffer> blockMap;
-	private volatile int lastReplacedBuff;
-	private AtomicInteger numAvailable;
+	private Partition[] partitions;
+	// The partition owning each frame
+	private int[] frameOwners;
+	private BufferStatistics stats = new BufferStatistics();
+	private BufferCleaner cleaner;
+	private Thread cleanerThread;
+	private BufferWaitQueue waitQueue = new BufferWaitQueue();
+	private ReadAheadService readAhead;
+	private Thread readAheadThread;
+	// Whether each frame holds a block read ahead and not pinned yet
+	private boolean[] prefetched;
+	// The number of pins of each frame since its block was loaded, guarded by
+	// the external lock of its buffer
+	private int[] pinCounts;
+	// Whether each frame is in use, guarded by the external lock of its buffer
+	private boolean[] online;
+	private volatile int poolSize;
+	private final Object resizeLock = new Object();
+	// Bumped when a block hashed to the slot leaves the pool, so that a
+	// read-ahead can tell that its copy of the block might be stale
+	private AtomicLongArray removalStamps = new AtomicLongArray(1024);
 
 	// Optimization: Lock striping
 	private Object[] anchors = new Object[1009];
 
+	static {
+		REPLACEMENT_STRATEGY = CoreProperties.getLoader().getPropertyAsClass(
+				BufferPoolMgr.class.getName() + ".REPLACEMENT_STRATEGY", ClockStrategy.class,
+				ReplacementStrategy.class);
+		NUM_PARTITIONS = CoreProperties.getLoader()
+				.getPropertyAsInteger(BufferPoolMgr.class.getName() + ".NUM_PARTITIONS", 1);
+		MAX_WRITE_RUN = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(BufferPoolMgr.class.getName() + ".MAX_WRITE_RUN", 64));
+	}
+
+	private static class DirtyBlock {
+		Buffer buff;
+		BlockId blk;
+
+		DirtyBlock(Buffer buff, BlockId blk) {
+			this.buff = buff;
+			this.blk = blk;
+		}
+	}
+
+	private static final Comparator<DirtyBlock> BLOCK_ORDER = new Comparator<DirtyBlock>() {
+		@Override
+		public int compare(DirtyBlock d1, DirtyBlock d2) {
+			return d1.blk.compareTo(d2.blk);
+		}
+	};
+
+	/**
+	 * A slice of the buffer pool. The frames of a partition are numbered
+	 * from 0 for its replacement strategy.
+	 */
+	private class Partition {
+		int index;
+		int base;
+		int size;
+		// The number of online frames, which are the first ones
+		int active;
+		// The blocks hashed to this partition, which may live in the frames
+		// stolen from the other partitions
+		PageTable pageTable = new PageTable(bufferPool.length);
+		ReplacementStrategy strategy;
+		volatile int lastReplacedBuff;
+		AtomicInteger numAvailable;
+		// The frames holding no block, which are used before any victim
+		Queue<Integer> freeFrames = new LinkedBlockingQueue<Integer>();
+
+		Partition(int index, int base, int size, int active) {
+			this.index = index;
+			this.base = base;
+			this.size = size;
+			this.active = active;
+			this.lastReplacedBuff = base;
+			numAvailable = new AtomicInteger(active);
+			for (int i = 0; i < active; i++)
+				freeFrames.add(base + i);
+			strategy = newStrategy(REPLACEMENT_STRATEGY, size);
+		}
+
+		/**
+		 * Reserves a frame in the free list. A frame in the list might have
+		 * been taken as a victim in the meantime, so it is checked again after
+		 * being reserved.
+		 * 
+		 * @return the index of the reserved frame, or -1 if the list is empty
+		 */
+		int reserveFreeFrame() {
+			Integer frame;
+			while ((frame = freeFrames.poll()) != null) {
+				Buffer buff = bufferPool[frame];
+				if (!buff.getExternalLock().tryLock())
+					continue;
+				if (buff.block() == null && online[frame])
+					return frame;
+				buff.getExternalLock().unlock();
+			}
+			return -1;
+		}
+
+		/**
+		 * Reserves a victim frame chosen by the replacement strategy. The
+		 * external lock of the reserved buffer is held by the caller.
+		 * 
+		 * @return the index of the reserved frame, or -1 if all buffers are
+		 *         pinned
+		 */
+		int reserveVictim() {
+			VictimFilter filter = new VictimFilter(base);
+			int local = strategy.chooseVictim(filter);
+			stats.victimSearchLengths.record(filter.tries);
+			if (local < 0)
+				return -1;
+			lastReplacedBuff = base + local;
+			return base + local;
+		}
+	}
+
 	/**
 	 * Creates a buffer manager having the specified number of buffer slots.
 	 * This constructor depends on both the {@link FileMgr} and
@@ -47,16 +215,118 @@ class BufferPoolMgr {
 	 *            the number of buffer slots to allocate
 	 */
 	BufferPoolMgr(int numBuffs) {
-		bufferPool = new Buffer[numBuffs];
-		blockMap = new ConcurrentHashMap<BlockId, Buffer>();
-		numAvailable = new AtomicInteger(numBuffs);
-		lastReplacedBuff = 0;
-		for (int i = 0; i < numBuffs; i++)
-			bufferPool[i] = new Buffer();
+		this(numBuffs, NUM_PARTITIONS);
+	}
+
+	/**
+	 * Creates a buffer manager having the specified number of buffer slots,
+	 * which are split into the specified number of partitions.
+	 * 
+	 * @param numBuffs
+	 *            the number of buffer slots to allocate
+	 * @param numPartitions
+	 *            the number of partitions
+	 */
+	BufferPoolMgr(int numBuffs, int numPartitions) {
+		this(numBuffs, numBuffs, numPartitions);
+	}
+
+	/**
+	 * Creates a buffer manager having the specified number of buffer slots,
+	 * which can be resized up to the specified capacity later.
+	 * 
+	 * @param numBuffs
+	 *            the number of buffer slots to allocate
+	 * @param capacity
+	 *            the maximal number of buffer slots
+	 * @param numPartitions
+	 *            the number of partitions
+	 */
+	BufferPoolMgr(int numBuffs, int capacity, int numPartitions) {
+		capacity = Math.max(numBuffs, capacity);
+		numPartitions = Math.max(1, Math.min(numPartitions, numBuffs));
+		bufferPool = new Buffer[capacity];
+		partitions = new Partition[numPartitions];
+		frameOwners = new int[capacity];
+		prefetched = new boolean[capacity];
+		pinCounts = new int[capacity];
+		online = new boolean[capacity];
+
+		// Carve the frames in use out of a few large arenas
+		IoBuffer[] frames = IoAllocator.newIoBuffers(numBuffs, Page.BLOCK_SIZE);
+		int next = 0;
+		for (int i = 0; i < numPartitions; i++) {
+			int base = share(capacity, numPartitions, 0, i);
+			int size = share(capacity, numPartitions, i, i + 1);
+			int active = Math.min(size, share(numBuffs, numPartitions, i, i + 1));
+			partitions[i] = new Partition(i, base, size, active);
+			for (int frame = base; frame < base + size; frame++) {
+				frameOwners[frame] = i;
+				online[frame] = frame < base + active;
+				bufferPool[frame] = new Buffer(online[frame] ? frames[next++] : null);
+			}
+			poolSize += active;
+		}
 
 		for (int i = 0; i < anchors.length; ++i) {
 			anchors[i] = new Object();
 		}
+
+		stats.strategyName = partitions[0].strategy.getClass().getSimpleName();
+
+		cleaner = new BufferCleaner(bufferPool, this, stats);
+		if (BufferCleaner.ENABLED) {
+			cleanerThread = new Thread(cleaner, "Buffer Cleaner");
+			cleanerThread.setDaemon(true);
+			cleanerThread.start();
+		}
+
+		if (ReadAheadService.ENABLED) {
+			readAhead = new ReadAheadService(this);
+			readAheadThread = new Thread(readAhead, "Buffer Read-Ahead");
+			readAheadThread.setDaemon(true);
+			readAheadThread.start();
+		}
+	}
+
+	/**
+	 * Stops the background threads of this buffer pool, and waits for them to
+	 * end. The buffers can still be pinned afterward, but the dirty ones are
+	 * no longer written ahead of eviction, and no blocks are read ahead.
+	 */
+	void shutdown() {
+		cleaner.stop();
+		if (readAhead != null)
+			readAhead.stop();
+		try {
+			if (cleanerThread != null)
+				cleanerThread.join();
+			if (readAheadThread != null)
+				readAheadThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of the frames, out of the specified ones split evenly
+	 * into the specified number of partitions, in the partitions from the
+	 * start one (inclusive) to the end one (exclusive).
+	 */
+	private static int share(int numBuffs, int numPartitions, int start, int end) {
+		return (int) ((long) numBuffs * end / numPartitions - (long) numBuffs * start / numPartitions);
+	}
+
+	private static ReplacementStrategy newStrategy(Class<?> strategyCls, int numBuffs) {
+		try {
+			Constructor<?> ct = strategyCls.getConstructor(int.class);
+			return (ReplacementStrategy) ct.newInstance(numBuffs);
+		} catch (Exception e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("can't create the replacement strategy " + strategyCls.getName()
+						+ ", using CLOCK instead: " + e);
+			return new ClockStrategy(numBuffs);
+		}
 	}
 
 	// Optimization: Lock striping
@@ -67,18 +337,27 @@ class BufferPoolMgr {
 		return anchors[code];
 	}
 
+	private Partition partitionOf(Object o) {
+		if (partitions.length == 1)
+			return partitions[0];
+		// Spread the hash code, since the anchors use its low bits as well
+		int h = o.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		int code = h % partitions.length;
+		if (code < 0)
+			code += partitions.length;
+		return partitions[code];
+	}
+
+
 	/**
-	 * Flushes all dirty buffers.
+	 * Flushes all dirty buffers, and forces the data files to disk.
 	 */
 	void flushAll() {
-		for (Buffer buff : bufferPool) {
-			try {
-				buff.getExternalLock().lock();
-				buff.flush();
-			} finally {
-				buff.getExternalLock().unlock();
-			}
-		}
+		flushInBlockOrder(true, 0);
+		VanillaDb.fileMgr().forceAll();
 	}
 
 	/**
@@ -88,16 +367,70 @@ class BufferPoolMgr {
 	 *            the transaction's id number
 	 */
 	void flushAll(long txNum) {
+		flushInBlockOrder(false, txNum);
+	}
+
+	/**
+	 * Writes the dirty buffers in the order of their blocks. Each run of
+	 * buffers holding consecutive blocks of a file, up to
+	 * {@link #MAX_WRITE_RUN} of them, is written by one I/O after the log is
+	 * flushed once for the run.
+	 * 
+	 * @param allTxs
+	 *            whether to write the buffers modified by any transaction
+	 * @param txNum
+	 *            the transaction whose buffers are written otherwise
+	 */
+	private void flushInBlockOrder(boolean allTxs, long txNum) {
+		List<DirtyBlock> dirty = new ArrayList<DirtyBlock>();
 		for (Buffer buff : bufferPool) {
+			BlockId blk = buff.block();
+			if (blk != null && buff.isDirty() && (allTxs || buff.isModifiedBy(txNum)))
+				dirty.add(new DirtyBlock(buff, blk));
+		}
+		Collections.sort(dirty, BLOCK_ORDER);
+
+		List<Buffer> run = new ArrayList<Buffer>();
+		int runs = 0;
+		int i = 0;
+		while (i < dirty.size()) {
+			BlockId first = dirty.get(i).blk;
+			int written = 0;
 			try {
-				buff.getExternalLock().lock();
-				if (buff.isModifiedBy(txNum)) {
-					buff.flush();
+				// Only the lock of the first buffer is waited for, so that no
+				// two buffers are waited for at once
+				while (i + run.size() < dirty.size() && run.size() < MAX_WRITE_RUN) {
+					DirtyBlock d = dirty.get(i + run.size());
+					if (!run.isEmpty() && (!d.blk.fileName().equals(first.fileName())
+							|| d.blk.number() != first.number() + run.size()))
+						break;
+					Lock lock = d.buff.getExternalLock();
+					if (run.isEmpty())
+						lock.lock();
+					else if (!lock.tryLock())
+						break;
+					// The block may have been replaced, and so written
+					if (!d.blk.equals(d.buff.block())) {
+						lock.unlock();
+						break;
+					}
+					run.add(d.buff);
+				}
+				if (!run.isEmpty()) {
+					written = Buffer.flushRun(run);
+					runs++;
 				}
 			} finally {
-				buff.getExternalLock().unlock();
+				for (Buffer buff : run)
+					buff.getExternalLock().unlock();
+				run.clear();
 			}
+			// The rest of the run starts a new one
+			i += Math.max(written, 1);
 		}
+
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("flushed " + dirty.size() + " dirty buffers by " + runs + " writes");
 	}
 
 	/**
@@ -111,64 +444,85 @@ class BufferPoolMgr {
 	 * @return the pinned buffer
 	 */
 	Buffer pin(BlockId blk) {
+		return pin(blk, null);
+	}
+
+	/**
+	 * Pins a buffer to the specified block. If the block is not in the pool,
+	 * the buffer is taken from the specified ring if possible.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param ring
+	 *            the ring of the calling scan, or null if it has no ring
+	 * @return the pinned buffer
+	 */
+	Buffer pin(BlockId blk, BufferRing ring) {
 		// Only the txs acquiring the same block will be blocked
 		synchronized (prepareAnchor(blk)) {
+			Partition home = partitionOf(blk);
+
 			// Find existing buffer
-			Buffer buff = findExistingBuffer(blk);
+			int frame = findExistingFrame(home, blk);
 
 			// If there is no such buffer
-			if (buff == null) {
-
-				// Choose Unpinned Buffer
-				int lastReplacedBuff = this.lastReplacedBuff;
-				int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-				while (currBlk != lastReplacedBuff) {
-					buff = bufferPool[currBlk];
-					
-					// Get the lock of buffer if it is free
-					if (buff.getExternalLock().tryLock()) {
-						try {
-							// Check if there is no one use it
-							if (!buff.isPinned()) {
-								this.lastReplacedBuff = currBlk;
-								
-								// Swap
-								BlockId oldBlk = buff.block();
-								if (oldBlk != null)
-									blockMap.remove(oldBlk);
-								buff.assignToBlock(blk);
-								blockMap.put(blk, buff);
-								if (!buff.isPinned())
-									numAvailable.decrementAndGet();
-								
-								// Pin this buffer
-								buff.pin();
-								return buff;
-							}
-						} finally {
-							// Release the lock of buffer
-							buff.getExternalLock().unlock();
-						}
-					}
-					currBlk = (currBlk + 1) % bufferPool.length;
+			if (frame < 0) {
+
+				// Choose Unpinned Buffer, whose lock is held after reserved
+				frame = reserveFrame(home, ring);
+				if (frame < 0)
+					return null;
+				Buffer buff = bufferPool[frame];
+				try {
+					stats.misses.incrementAndGet();
+					// Only the reads matter to the read-ahead
+					if (readAhead != null)
+						readAhead.onPin(blk);
+
+					// Swap
+					evict(frame);
+					buff.assignToBlock(blk);
+					loaded(home, frame, ring);
+
+					// Pin this buffer
+					buff.pin();
+					return buff;
+				} finally {
+					// Release the lock of buffer
+					buff.getExternalLock().unlock();
 				}
-				return null;
-				
+
 			// If it exists
 			} else {
+				Buffer buff = bufferPool[frame];
+
 				// Get the lock of buffer
 				buff.getExternalLock().lock();
-				
+
 				try {
 					// Check its block id before pinning since it might be swapped
-					if (buff.block().equals(blk)) {
+					if (blk.equals(buff.block())) {
+						stats.hits.incrementAndGet();
+						if (prefetched[frame]) {
+							prefetched[frame] = false;
+							stats.readAheadHits.incrementAndGet();
+							// The block might be loaded by the warm-up
+							if (readAhead != null)
+								readAhead.onPin(blk);
+						}
+						if (pinCounts[frame] < Integer.MAX_VALUE)
+							pinCounts[frame]++;
+						Partition owner = partitions[frameOwners[frame]];
+						// A bulk access does not make the block hotter
+						if (ring == null)
+							owner.strategy.onAccess(frame - owner.base);
 						if (!buff.isPinned())
-							numAvailable.decrementAndGet();
+							owner.numAvailable.decrementAndGet();
 						buff.pin();
 						return buff;
 					}
-					return pin(blk);
-					
+					return pin(blk, ring);
+
 				} finally {
 					// Release the lock of buffer
 					buff.getExternalLock().unlock();
@@ -189,42 +543,45 @@ class BufferPoolMgr {
 	 * @return the pinned buffer
 	 */
 	Buffer pinNew(String fileName, PageFormatter fmtr) {
+		return pinNew(fileName, fmtr, null);
+	}
+
+	/**
+	 * Allocates a new block in the specified file, and pins a buffer to it.
+	 * The buffer is taken from the specified ring if possible.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @param fmtr
+	 *            a pageformatter object, used to format the new block
+	 * @param ring
+	 *            the ring of the calling scan, or null if it has no ring
+	 * @return the pinned buffer
+	 */
+	Buffer pinNew(String fileName, PageFormatter fmtr, BufferRing ring) {
 		// Only the txs acquiring to append the block on the same file will be blocked
 		synchronized (prepareAnchor(fileName)) {
-			
-			// Choose Unpinned Buffer
-			int lastReplacedBuff = this.lastReplacedBuff;
-			int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-			while (currBlk != lastReplacedBuff) {
-				Buffer buff = bufferPool[currBlk];
-				
-				// Get the lock of buffer if it is free
-				if (buff.getExternalLock().tryLock()) {
-					try {
-						if (!buff.isPinned()) {
-							this.lastReplacedBuff = currBlk;
-							
-							// Swap
-							BlockId oldBlk = buff.block();
-							if (oldBlk != null)
-								blockMap.remove(oldBlk);
-							buff.assignToNew(fileName, fmtr);
-							blockMap.put(buff.block(), buff);
-							if (!buff.isPinned())
-								numAvailable.decrementAndGet();
-							
-							// Pin this buffer
-							buff.pin();
-							return buff;
-						}
-					} finally {
-						// Release the lock of buffer
-						buff.getExternalLock().unlock();
-					}
-				}
-				currBlk = (currBlk + 1) % bufferPool.length;
+
+			// Choose Unpinned Buffer, whose lock is held after reserved. The
+			// new block is not known yet, so the frame is taken from the
+			// partition of the file.
+			int frame = reserveFrame(partitionOf(fileName), ring);
+			if (frame < 0)
+				return null;
+			Buffer buff = bufferPool[frame];
+			try {
+				// Swap
+				evict(frame);
+				buff.assignToNew(fileName, fmtr);
+				loaded(partitionOf(buff.block()), frame, ring);
+
+				// Pin this buffer
+				buff.pin();
+				return buff;
+			} finally {
+				// Release the lock of buffer
+				buff.getExternalLock().unlock();
 			}
-			return null;
 		}
 	}
 
@@ -240,8 +597,15 @@ class BufferPoolMgr {
 				// Get the lock of buffer
 				buff.getExternalLock().lock();
 				buff.unpin();
-				if (!buff.isPinned())
-					numAvailable.incrementAndGet();
+				if (!buff.isPinned()) {
+					// The block of a pinned buffer cannot be swapped
+					BlockId blk = buff.block();
+					int frame = findExistingFrame(partitionOf(blk), blk);
+					partitions[frameOwners[frame]].numAvailable.incrementAndGet();
+					// Hand the buffer to a waiting thread
+					if (!waitQueue.isEmpty())
+						waitQueue.signalOne();
+				}
 			} finally {
 				// Release the lock of buffer
 				buff.getExternalLock().unlock();
@@ -255,13 +619,483 @@ class BufferPoolMgr {
 	 * @return the number of available buffers
 	 */
 	int available() {
-		return numAvailable.get();
+		int available = 0;
+		for (Partition p : partitions)
+			available += p.numAvailable.get();
+		return available;
+	}
+
+	/**
+	 * Returns the number of buffers in use.
+	 * 
+	 * @return the size of the pool
+	 */
+	int size() {
+		return poolSize;
+	}
+
+	/**
+	 * Returns the maximal number of buffers that the pool can be resized to.
+	 * 
+	 * @return the capacity of the pool
+	 */
+	int capacity() {
+		return bufferPool.length;
+	}
+
+	/**
+	 * Resizes the pool to the specified number of buffers, between the number
+	 * of partitions and the capacity of the pool. When the pool grows, the new
+	 * frames are allocated at once and put into the free lists. When it
+	 * shrinks, each frame to be taken offline is no longer reserved, and is
+	 * then waited for to be unpinned, written if dirty, and evicted. A frame
+	 * still pinned after {@link BufferMgr#MAX_TIME} stays online, so the
+	 * resulting size may be larger than requested.
+	 * 
+	 * @param numBuffs
+	 *            the requested number of buffers
+	 * @return the resulting size of the pool
+	 */
+	int resize(int numBuffs) {
+		synchronized (resizeLock) {
+			numBuffs = Math.max(partitions.length, Math.min(numBuffs, bufferPool.length));
+			int[] targets = new int[partitions.length];
+			int growth = 0;
+			for (Partition p : partitions) {
+				targets[p.index] = Math.min(p.size, share(numBuffs, partitions.length, p.index, p.index + 1));
+				growth += Math.max(0, targets[p.index] - p.active);
+			}
+
+			IoBuffer[] frames = IoAllocator.newIoBuffers(growth, Page.BLOCK_SIZE);
+			int next = 0;
+			long deadline = System.currentTimeMillis() + BufferMgr.MAX_TIME;
+			int size = 0;
+			for (Partition p : partitions) {
+				while (p.active < targets[p.index])
+					bringOnline(p, p.base + p.active++, frames[next++]);
+				while (p.active > targets[p.index] && takeOffline(p, p.base + p.active - 1, deadline))
+					p.active--;
+				size += p.active;
+			}
+			poolSize = size;
+
+			if (logger.isLoggable(Level.INFO))
+				logger.info("resized the buffer pool to " + size + " buffers");
+			return size;
+		}
+	}
+
+	private void bringOnline(Partition p, int frame, IoBuffer memory) {
+		Buffer buff = bufferPool[frame];
+		buff.getExternalLock().lock();
+		try {
+			buff.attach(memory);
+			online[frame] = true;
+		} finally {
+			buff.getExternalLock().unlock();
+		}
+		p.numAvailable.incrementAndGet();
+		p.freeFrames.add(frame);
+		// Hand the buffer to a waiting thread
+		if (!waitQueue.isEmpty())
+			waitQueue.signalOne();
+	}
+
+	/**
+	 * Drains the specified frame and releases its memory.
+	 * 
+	 * @return false if the frame is still pinned at the deadline
+	 */
+	private boolean takeOffline(Partition p, int frame, long deadline) {
+		Buffer buff = bufferPool[frame];
+		while (true) {
+			buff.getExternalLock().lock();
+			try {
+				// Let no one reserve the frame from now on
+				online[frame] = false;
+				if (!buff.isPinned()) {
+					BlockId oldBlk = buff.block();
+					// Write the block before it leaves the pool
+					buff.reset();
+					if (oldBlk != null)
+						removed(frame, oldBlk);
+					buff.detach();
+					p.numAvailable.decrementAndGet();
+					return true;
+				}
+				if (System.currentTimeMillis() >= deadline) {
+					online[frame] = true;
+					return false;
+				}
+			} finally {
+				buff.getExternalLock().unlock();
+			}
+
+			try {
+				Thread.sleep(BufferMgr.EPSILON);
+			} catch (InterruptedException e) {
+				// Give up the frames still pinned
+				Thread.currentThread().interrupt();
+				deadline = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the runtime statistics of this buffer pool.
+	 * 
+	 * @return the statistics
+	 */
+	BufferStatistics statistics() {
+		return stats;
+	}
+
+	/**
+	 * Returns the number of partitions of this buffer pool.
+	 * 
+	 * @return the number of partitions
+	 */
+	int numPartitions() {
+		return partitions.length;
+	}
+
+	/**
+	 * Returns the index of the buffer replaced most recently in the specified
+	 * partition. The cleaner expects the next victims of the partition to be
+	 * found after it.
+	 * 
+	 * @param partition
+	 *            the index of the partition
+	 * @return the index of the buffer
+	 */
+	int replacementHand(int partition) {
+		return partitions[partition].lastReplacedBuff;
+	}
+
+	/**
+	 * Returns the background cleaner of this buffer pool.
+	 * 
+	 * @return the cleaner
+	 */
+	BufferCleaner cleaner() {
+		return cleaner;
+	}
+
+	/**
+	 * Removes the block of the specified reserved frame from the pool.
+	 */
+	private void evict(int frame) {
+		Buffer buff = bufferPool[frame];
+		BlockId oldBlk = buff.block();
+		if (oldBlk == null)
+			return;
+		removed(frame, oldBlk);
+		if (buff.isDirty()) {
+			// The cleaner falls behind, let it catch up
+			stats.dirtyEvictions.incrementAndGet();
+			cleaner.wakeUp();
+		} else
+			stats.cleanEvictions.incrementAndGet();
+	}
+
+	/**
+	 * Registers the block just loaded into the specified reserved frame.
+	 */
+	private void loaded(Partition home, int frame, BufferRing ring) {
+		Buffer buff = bufferPool[frame];
+		Partition owner = partitions[frameOwners[frame]];
+		home.pageTable.put(buff.block(), frame);
+		owner.strategy.onLoad(frame - owner.base, buff.block());
+		pinCounts[frame] = 1;
+		if (ring != null)
+			ring.loaded(frame, buff.block());
+		if (!buff.isPinned())
+			owner.numAvailable.decrementAndGet();
+	}
+
+	/**
+	 * Reserves the frame to be replaced. A ring reuses the frame it loaded a
+	 * round ago if the frame still holds the same block and is not pinned.
+	 * Otherwise, a frame is taken from the free list of the specified
+	 * partition, or from the free lists of the other partitions, or chosen by
+	 * the replacement strategy of the partition. If all the frames of the
+	 * partition are pinned, a victim is stolen from the other partitions. The
+	 * external lock of the reserved buffer is held by the caller.
+	 * 
+	 * @param home
+	 *            the partition to take the frame from
+	 * @param ring
+	 *            the ring of the calling scan, or null if it has no ring
+	 * @return the index of the reserved frame, or -1 if all buffers are pinned
+	 */
+	private int reserveFrame(Partition home, BufferRing ring) {
+		if (ring != null) {
+			int frame = ring.advance();
+			if (frame >= 0 && new VictimFilter(0).tryReserve(frame)) {
+				Buffer buff = bufferPool[frame];
+				if (ring.currentBlock().equals(buff.block())) {
+					stats.ringReuses.incrementAndGet();
+					return frame;
+				}
+				buff.getExternalLock().unlock();
+			}
+		}
+
+		int frame = home.reserveFreeFrame();
+		if (frame >= 0)
+			return frame;
+
+		// Prefer a free frame of the other partitions to a victim
+		frame = stealFrame(home, true);
+		if (frame >= 0)
+			return frame;
+
+		frame = home.reserveVictim();
+		if (frame >= 0)
+			return frame;
+		return stealFrame(home, false);
+	}
+
+	/**
+	 * Reserves a free frame, or a victim frame, of the partitions other than
+	 * the specified one.
+	 * 
+	 * @return the index of the reserved frame, or -1 if there is no such frame
+	 */
+	private int stealFrame(Partition home, boolean freeOnly) {
+		for (int i = 1; i < partitions.length; i++) {
+			Partition p = partitions[(home.index + i) % partitions.length];
+			int frame = freeOnly ? p.reserveFreeFrame() : p.reserveVictim();
+			if (frame >= 0) {
+				stats.steals.incrementAndGet();
+				return frame;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Evicts a clean, unpinned block chosen by the replacement strategy of the
+	 * specified partition, and puts its frame into the free list of the
+	 * partition. This is called by the cleaner to keep a few frames ready for
+	 * the misses.
+	 * 
+	 * @param partition
+	 *            the index of the partition
+	 * @return true if a frame is freed
+	 */
+	boolean reclaimFrame(int partition) {
+		Partition p = partitions[partition];
+		VictimFilter filter = new VictimFilter(p.base);
+		filter.cleanOnly = true;
+		int local = p.strategy.chooseVictim(filter);
+		if (local < 0)
+			return false;
+
+		int frame = p.base + local;
+		Buffer buff = bufferPool[frame];
+		try {
+			BlockId oldBlk = buff.block();
+			if (oldBlk != null) {
+				removed(frame, oldBlk);
+				stats.reclaims.incrementAndGet();
+			}
+			buff.reset();
+		} finally {
+			buff.getExternalLock().unlock();
+		}
+		p.freeFrames.add(frame);
+		return true;
+	}
+
+	/**
+	 * Returns the number of frames in the free list of the specified
+	 * partition.
+	 * 
+	 * @param partition
+	 *            the index of the partition
+	 * @return the number of free frames
+	 */
+	int freeFrameCount(int partition) {
+		return partitions[partition].freeFrames.size();
+	}
+
+	/**
+	 * Returns the dirty page table of the pool, which maps each block holding
+	 * logged changes not written yet to its recovery LSN. The blocks of the
+	 * temporary files are left out.
+	 * 
+	 * @return the dirty page table
+	 */
+	Map<BlockId, LogSeqNum> dirtyPageTable() {
+		Map<BlockId, LogSeqNum> table = new HashMap<BlockId, LogSeqNum>();
+		for (Buffer buff : bufferPool) {
+			BlockId blk = buff.block();
+			LogSeqNum recLsn = buff.recoveryLsn();
+			if (blk != null && recLsn != null && !blk.fileName().startsWith(FileMgr.TMP_FILE_NAME_PREFIX))
+				table.put(blk, recLsn);
+		}
+		return table;
+	}
+
+	/**
+	 * Tells whether any partition has a frame in its free list.
+	 * 
+	 * @return true if there is a free frame
+	 */
+	boolean hasFreeFrame() {
+		for (Partition p : partitions)
+			if (!p.freeFrames.isEmpty())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the blocks in the pool, with the number of pins of each block
+	 * since it was loaded. The blocks may leave the pool at any time.
+	 * 
+	 * @return the blocks in the pool
+	 */
+	List<BufferWarmer.Resident> residentBlocks() {
+		List<BufferWarmer.Resident> residents = new ArrayList<BufferWarmer.Resident>();
+		for (int frame = 0; frame < bufferPool.length; frame++) {
+			Buffer buff = bufferPool[frame];
+			buff.getExternalLock().lock();
+			try {
+				BlockId blk = buff.block();
+				if (online[frame] && blk != null)
+					residents.add(new BufferWarmer.Resident(blk, pinCounts[frame]));
+			} finally {
+				buff.getExternalLock().unlock();
+			}
+		}
+		return residents;
+	}
+
+	/**
+	 * Unregisters the block of the specified reserved frame.
+	 */
+	private void removed(int frame, BlockId blk) {
+		// Bump the stamp first, so that a read-ahead seeing the block absent
+		// also sees the new stamp
+		removalStamps.incrementAndGet(removalSlot(blk));
+		partitionOf(blk).pageTable.remove(blk);
+		if (prefetched[frame]) {
+			prefetched[frame] = false;
+			stats.readAheadWastes.incrementAndGet();
+		}
+	}
+
+	private int removalSlot(BlockId blk) {
+		return (blk.hashCode() & 0x7fffffff) % removalStamps.length();
+	}
+
+	/**
+	 * Loads the blocks of the specified range that are not in the pool into
+	 * free frames. The blocks are read by a single I/O through the specified
+	 * window. A block that enters and leaves the pool during the I/O is
+	 * skipped, since it might have been modified after being read. This is
+	 * called by the {@link ReadAheadService}.
+	 * 
+	 * @param first
+	 *            the first block of the range
+	 * @param count
+	 *            the number of blocks, at most the size of the window
+	 * @param window
+	 *            the window to read the blocks through
+	 * @return the number of blocks loaded
+	 */
+	int readAhead(BlockId first, int count, BlockWindow window) {
+		BlockId[] blks = new BlockId[count];
+		long[] stamps = new long[count];
+		boolean missing = false;
+		for (int i = 0; i < count; i++) {
+			BlockId blk = new BlockId(first.fileName(), first.number() + i);
+			stamps[i] = removalStamps.get(removalSlot(blk));
+			if (findExistingFrame(partitionOf(blk), blk) < 0) {
+				blks[i] = blk;
+				missing = true;
+			}
+		}
+		if (!missing)
+			return 0;
+
+		window.read(first);
+		int loaded = 0;
+		for (int i = 0; i < count; i++) {
+			BlockId blk = blks[i];
+			if (blk == null || !window.contains(blk))
+				continue;
+			synchronized (prepareAnchor(blk)) {
+				Partition home = partitionOf(blk);
+				if (findExistingFrame(home, blk) >= 0 || removalStamps.get(removalSlot(blk)) != stamps[i])
+					continue;
+
+				// Never evict a block for a read-ahead
+				int frame = home.reserveFreeFrame();
+				if (frame < 0)
+					frame = stealFrame(home, true);
+				if (frame < 0)
+					break;
+				Buffer buff = bufferPool[frame];
+				try {
+					buff.assignToBlock(blk, window);
+					Partition owner = partitions[frameOwners[frame]];
+					home.pageTable.put(blk, frame);
+					owner.strategy.onLoad(frame - owner.base, blk);
+					prefetched[frame] = true;
+					pinCounts[frame] = 0;
+					loaded++;
+				} finally {
+					buff.getExternalLock().unlock();
+				}
+			}
+		}
+		stats.readAheads.addAndGet(loaded);
+		return loaded;
+	}
+
+	/**
+	 * Returns the queue of the threads waiting for a buffer.
+	 * 
+	 * @return the wait queue
+	 */
+	BufferWaitQueue waitQueue() {
+		return waitQueue;
+	}
+
+	/**
+	 * Reserves the unpinned frames of a partition, whose frames are numbered
+	 * from the specified base.
+	 */
+	private class VictimFilter implements FrameFilter {
+		int base;
+		int tries;
+		boolean cleanOnly;
+
+		VictimFilter(int base) {
+			this.base = base;
+		}
+
+		@Override
+		public boolean tryReserve(int frame) {
+			tries++;
+			Buffer buff = bufferPool[base + frame];
+
+			// Get the lock of buffer if it is free
+			if (!buff.getExternalLock().tryLock())
+				return false;
+
+			// Check if there is no one use it
+			if (online[base + frame] && !buff.isPinned()
+					&& !(cleanOnly && (buff.isDirty() || buff.block() == null)))
+				return true;
+			buff.getExternalLock().unlock();
+			return false;
+		}
 	}
 
-	private Buffer findExistingBuffer(BlockId blk) {
-		Buffer buff = blockMap.get(blk);
-		if (buff != null && buff.block().equals(blk))
-			return buff;
-		return null;
+	private int findExistingFrame(Partition home, BlockId blk) {
+		return home.pageTable.get(blk);
 	}
 }
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A small private set of buffers for a bulk sequential access, such as a full
+ * scan of a large table or the writing of a temporary table. A block read or
+ * appended through a ring replaces the block that the ring loaded a few steps
+ * before, instead of a victim chosen by the replacement strategy, as long as
+ * that buffer is not pinned or reused by others in the meantime. A bulk
+ * access therefore occupies only the buffers of its ring, and does not evict
+ * the working set of the other transactions.
+ * 
+ * <p>
+ * A ring is used by a single scan, and is not thread-safe.
+ * </p>
+ */
+public class BufferRing {
+	/**
+	 * The default number of buffers in a ring.
+	 */
+	public static final int RING_SIZE;
+	private static final double BULK_SCAN_RATIO;
+
+	static {
+		RING_SIZE = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(BufferRing.class.getName() + ".RING_SIZE", 16));
+		BULK_SCAN_RATIO = CoreProperties.getLoader()
+				.getPropertyAsDouble(BufferRing.class.getName() + ".BULK_SCAN_RATIO", 0.25);
+	}
+
+	/**
+	 * Returns true if a sequential scan over the specified number of blocks
+	 * is large enough to be done through a ring, i.e., it would replace more
+	 * than {@code BULK_SCAN_RATIO} of the buffer pool.
+	 * 
+	 * @param numBlocks
+	 *            the number of blocks to be scanned
+	 * @return true if the scan should use a ring
+	 */
+	public static boolean isBulkScan(long numBlocks) {
+		return numBlocks > BufferMgr.bufferPoolSize() * BULK_SCAN_RATIO;
+	}
+
+	private int[] frames;
+	private BlockId[] blocks;
+	private int current = -1;
+
+	/**
+	 * Creates a ring having the default number of buffers.
+	 */
+	public BufferRing() {
+		this(RING_SIZE);
+	}
+
+	/**
+	 * Creates a ring having the specified number of buffers.
+	 * 
+	 * @param size
+	 *            the number of buffers
+	 */
+	public BufferRing(int size) {
+		size = Math.max(1, size);
+		frames = new int[size];
+		blocks = new BlockId[size];
+		for (int i = 0; i < size; i++)
+			frames[i] = -1;
+	}
+
+	/**
+	 * Returns the number of buffers in this ring.
+	 * 
+	 * @return the size of the ring
+	 */
+	public int size() {
+		return frames.length;
+	}
+
+	/**
+	 * Moves to the next slot of the ring, and returns the frame whose block
+	 * was loaded through that slot.
+	 * 
+	 * @return the index of the frame, or -1 if the slot is not used yet
+	 */
+	int advance() {
+		current = (current + 1) % frames.length;
+		return frames[current];
+	}
+
+	/**
+	 * Returns the block loaded through the current slot.
+	 * 
+	 * @return the block loaded through the slot
+	 */
+	BlockId currentBlock() {
+		return blocks[current];
+	}
+
+	/**
+	 * Records that the specified block has been loaded into the specified
+	 * frame through the current slot.
+	 * 
+	 * @param frame
+	 *            the index of the frame
+	 * @param blk
+	 *            the loaded block
+	 */
+	void loaded(int frame, BlockId blk) {
+		frames[current] = frame;
+		blocks[current] = blk;
+	}
+}
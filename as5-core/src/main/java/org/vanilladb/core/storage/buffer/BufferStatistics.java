@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.vanilladb.core.util.LongHistogram;
+
+/**
+ * The runtime statistics of a buffer pool. The counters are updated by the
+ * pool and its background cleaner, and can be read at any time through
+ * {@link BufferMgr#statistics()}.
+ */
+public class BufferStatistics {
+	final AtomicLong hits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+	final AtomicLong cleanEvictions = new AtomicLong();
+	final AtomicLong dirtyEvictions = new AtomicLong();
+	final AtomicLong ringReuses = new AtomicLong();
+	final AtomicLong reclaims = new AtomicLong();
+	final AtomicLong steals = new AtomicLong();
+	final AtomicLong repins = new AtomicLong();
+	final AtomicLong readAheads = new AtomicLong();
+	final AtomicLong readAheadHits = new AtomicLong();
+	final AtomicLong readAheadWastes = new AtomicLong();
+	final AtomicLong readAheadDrops = new AtomicLong();
+	final LongHistogram pinWaitTimes = new LongHistogram("buffer wait time (us)");
+	final LongHistogram cleanerWrites = new LongHistogram("pages written per cleaner round");
+	final LongHistogram victimSearchLengths = new LongHistogram("victim search length");
+	volatile int dirtyBuffers;
+	String strategyName;
+
+	/**
+	 * Returns the name of the replacement strategy in use.
+	 * 
+	 * @return the name of the strategy
+	 */
+	public String strategyName() {
+		return strategyName;
+	}
+
+	/**
+	 * Returns the number of pins that found the block in the pool.
+	 * 
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of pins that had to read the block into the pool.
+	 * 
+	 * @return the number of misses
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the ratio of the pins that found the block in the pool.
+	 * 
+	 * @return the hit ratio, or 0 if no block has been pinned
+	 */
+	public double hitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0.0 : ((double) h) / total;
+	}
+
+	/**
+	 * Returns the number of evictions that found the victim buffer clean.
+	 * 
+	 * @return the number of clean evictions
+	 */
+	public long cleanEvictions() {
+		return cleanEvictions.get();
+	}
+
+	/**
+	 * Returns the number of evictions that had to write the victim buffer
+	 * before reusing it.
+	 * 
+	 * @return the number of dirty evictions
+	 */
+	public long dirtyEvictions() {
+		return dirtyEvictions.get();
+	}
+
+	/**
+	 * Returns the number of misses served by reusing a buffer of the
+	 * {@link BufferRing} of a bulk access.
+	 * 
+	 * @return the number of buffers reused by rings
+	 */
+	public long ringReuses() {
+		return ringReuses.get();
+	}
+
+	/**
+	 * Returns the number of clean blocks evicted by the cleaner to refill the
+	 * free list.
+	 * 
+	 * @return the number of blocks evicted by the cleaner
+	 */
+	public long reclaims() {
+		return reclaims.get();
+	}
+
+	/**
+	 * Returns the number of misses served by a frame of another partition,
+	 * because all the frames of the partition of the block were pinned.
+	 * 
+	 * @return the number of frames stolen across partitions
+	 */
+	public long steals() {
+		return steals.get();
+	}
+
+	/**
+	 * Returns the number of blocks loaded into the pool by the read-ahead.
+	 * 
+	 * @return the number of blocks read ahead
+	 */
+	public long readAheads() {
+		return readAheads.get();
+	}
+
+	/**
+	 * Returns the number of pins that found a block loaded by the read-ahead.
+	 * 
+	 * @return the number of read-ahead hits
+	 */
+	public long readAheadHits() {
+		return readAheadHits.get();
+	}
+
+	/**
+	 * Returns the number of blocks loaded by the read-ahead but evicted
+	 * without being pinned.
+	 * 
+	 * @return the number of wasted read-aheads
+	 */
+	public long readAheadWastes() {
+		return readAheadWastes.get();
+	}
+
+	/**
+	 * Returns the number of read-ahead requests dropped because the read-ahead
+	 * thread fell behind.
+	 * 
+	 * @return the number of dropped requests
+	 */
+	public long readAheadDrops() {
+		return readAheadDrops.get();
+	}
+
+	/**
+	 * Returns the distribution of the time (in microseconds) that a pinning
+	 * thread waited for a buffer to be unpinned.
+	 * 
+	 * @return the histogram of waiting times
+	 */
+	public LongHistogram pinWaitTimes() {
+		return pinWaitTimes;
+	}
+
+	/**
+	 * Returns the number of times that a transaction waited too long for a
+	 * buffer and had to re-pin all its buffers.
+	 * 
+	 * @return the number of re-pins
+	 */
+	public long repins() {
+		return repins.get();
+	}
+
+	/**
+	 * Returns the distribution of the number of frames tried by the
+	 * replacement strategy before a victim is found.
+	 * 
+	 * @return the histogram of victim search lengths
+	 */
+	public LongHistogram victimSearchLengths() {
+		return victimSearchLengths;
+	}
+
+	/**
+	 * Returns the distribution of the number of pages written by each round
+	 * of the background cleaner.
+	 * 
+	 * @return the histogram of pages written per round
+	 */
+	public LongHistogram cleanerWrites() {
+		return cleanerWrites;
+	}
+
+	/**
+	 * Returns the number of dirty buffers seen by the latest round of the
+	 * background cleaner.
+	 * 
+	 * @return the number of dirty buffers
+	 */
+	public int dirtyBuffers() {
+		return dirtyBuffers;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(strategyName);
+		sb.append(String.format(": hit ratio %.4f", hitRatio()));
+		sb.append(" (").append(hits()).append(" hits, ").append(misses()).append(" misses)");
+		sb.append("; evictions: clean ").append(cleanEvictions());
+		sb.append(", dirty ").append(dirtyEvictions());
+		sb.append(", ring reuses ").append(ringReuses());
+		sb.append(", reclaimed ").append(reclaims());
+		sb.append(", stolen ").append(steals());
+		sb.append("; read-ahead ").append(readAheads());
+		sb.append(" (").append(readAheadHits()).append(" hits, ").append(readAheadWastes()).append(" wasted, ")
+				.append(readAheadDrops()).append(" dropped)");
+		sb.append("; re-pins ").append(repins());
+		sb.append("; ").append(pinWaitTimes);
+		sb.append("; dirty buffers ").append(dirtyBuffers());
+		sb.append("; ").append(victimSearchLengths);
+		sb.append("; ").append(cleanerWrites);
+		return sb.toString();
+	}
+}
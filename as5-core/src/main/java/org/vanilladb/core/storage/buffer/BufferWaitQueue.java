@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The queue of the threads waiting for a buffer to be unpinned. Each waiter
+ * parks on its own, and a buffer becoming available wakes only the first
+ * waiter that has not been woken yet. A woken waiter that still finds no
+ * buffer keeps its place in the queue and waits again.
+ */
+class BufferWaitQueue {
+
+	static class Waiter {
+		private final Thread thread = Thread.currentThread();
+		private final AtomicBoolean signalled = new AtomicBoolean();
+	}
+
+	private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+
+	/**
+	 * Adds the calling thread to the end of the queue. The thread should try
+	 * to pin a buffer again after this call, so that a buffer unpinned in the
+	 * meantime is not missed.
+	 * 
+	 * @return the waiter of the calling thread
+	 */
+	Waiter enqueue() {
+		Waiter waiter = new Waiter();
+		waiters.add(waiter);
+		return waiter;
+	}
+
+	/**
+	 * Parks the calling thread until it is woken or the deadline passes.
+	 * 
+	 * @param waiter
+	 *            the waiter of the calling thread
+	 * @param deadline
+	 *            the deadline in terms of {@link System#nanoTime()}
+	 * @return false if the deadline passed before the waiter was woken
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted
+	 */
+	boolean await(Waiter waiter, long deadline) throws InterruptedException {
+		while (!waiter.signalled.getAndSet(false)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return false;
+			LockSupport.parkNanos(this, remaining);
+			if (Thread.interrupted())
+				throw new InterruptedException();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the waiter from the queue. A wake-up it has not consumed is
+	 * passed to the next waiter.
+	 * 
+	 * @param waiter
+	 *            the waiter to be removed
+	 */
+	void remove(Waiter waiter) {
+		if (waiters.remove(waiter) && waiter.signalled.get())
+			signalOne();
+	}
+
+	/**
+	 * Wakes the first waiter that has not been woken yet.
+	 */
+	void signalOne() {
+		for (Waiter waiter : waiters) {
+			if (waiter.signalled.compareAndSet(false, true)) {
+				LockSupport.unpark(waiter.thread);
+				return;
+			}
+		}
+	}
+
+	boolean isEmpty() {
+		return waiters.isEmpty();
+	}
+}
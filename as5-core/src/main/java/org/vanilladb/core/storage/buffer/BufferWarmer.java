@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.BlockWindow;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.util.ByteHelper;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Saves the list of the blocks resident in a {@link BufferPoolMgr}, and loads
+ * them back after a restart, so that the pool is not refilled one random read
+ * at a time.
+ * 
+ * <p>
+ * The list is saved into a file of the database at each checkpoint, with the
+ * number of pins of each block since it was loaded. After the recovery, a
+ * background thread reads the blocks back into the free frames of the pool
+ * while the server accepts transactions. The hottest blocks are chosen if the
+ * pool cannot hold them all, and they are read in the order of blocks, up to
+ * {@link #BATCH_SIZE} consecutive blocks by one I/O through
+ * {@link BufferPoolMgr#readAhead}. The list is not saved again until the
+ * loading completes.
+ * </p>
+ * 
+ * <p>
+ * The first block of the file holds the number of the blocks of the list.
+ * Each of the following blocks holds the number of its entries, and then the
+ * entries, each of which is the file name, the block number and the number
+ * of pins.
+ * </p>
+ */
+class BufferWarmer implements Runnable {
+	private static Logger logger = Logger.getLogger(BufferWarmer.class.getName());
+
+	static final boolean ENABLED;
+	private static final int BATCH_SIZE;
+
+	/**
+	 * The name of the file holding the list of the blocks of the buffer pool.
+	 */
+	static final String LIST_FILE = "resident_blocks.lst";
+
+	static {
+		ENABLED = CoreProperties.getLoader().getPropertyAsBoolean(BufferWarmer.class.getName() + ".ENABLED", true);
+		BATCH_SIZE = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(BufferWarmer.class.getName() + ".BATCH_SIZE", 32));
+	}
+
+	/**
+	 * A block resident in the pool, with the number of its pins.
+	 */
+	static class Resident {
+		BlockId blk;
+		int pins;
+
+		Resident(BlockId blk, int pins) {
+			this.blk = blk;
+			this.pins = pins;
+		}
+	}
+
+	private static final Comparator<Resident> HOTTEST_FIRST = new Comparator<Resident>() {
+		@Override
+		public int compare(Resident r1, Resident r2) {
+			return Integer.compare(r2.pins, r1.pins);
+		}
+	};
+
+	private static final Comparator<Resident> BLOCK_ORDER = new Comparator<Resident>() {
+		@Override
+		public int compare(Resident r1, Resident r2) {
+			return r1.blk.compareTo(r2.blk);
+		}
+	};
+
+	private final BufferPoolMgr poolMgr;
+	private final String listFile;
+	private List<Resident> residents;
+	private volatile boolean warming;
+
+	BufferWarmer(BufferPoolMgr poolMgr, String listFile) {
+		this.poolMgr = poolMgr;
+		this.listFile = listFile;
+	}
+
+	/**
+	 * Starts loading the blocks of the saved list in a background thread, if
+	 * there is a list.
+	 */
+	synchronized void start() {
+		if (warming)
+			return;
+		residents = load();
+		if (residents.isEmpty())
+			return;
+		warming = true;
+		Thread t = new Thread(this, "Buffer Warm-Up");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			int loaded = warmUp(residents);
+			if (logger.isLoggable(Level.INFO))
+				logger.info("warmed up the buffer pool with " + loaded + " of " + residents.size() + " blocks");
+		} catch (Exception e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("buffer warm-up failed: " + e);
+		} finally {
+			residents = null;
+			warming = false;
+		}
+	}
+
+	/**
+	 * Saves the list of the blocks resident in the pool, except for those of
+	 * the temporary files. Nothing is done while the saved list is still
+	 * being loaded.
+	 */
+	synchronized void save() {
+		if (warming)
+			return;
+		List<Resident> list = poolMgr.residentBlocks();
+		Page page = new Page();
+		try {
+			long blkNum = 1;
+			int pos = ByteHelper.INT_SIZE;
+			int count = 0;
+			for (Resident r : list) {
+				if (r.blk.fileName().startsWith(FileMgr.TMP_FILE_NAME_PREFIX))
+					continue;
+				Constant name = new VarcharConstant(r.blk.fileName());
+				if (pos + Page.size(name) + ByteHelper.LONG_SIZE + ByteHelper.INT_SIZE > BLOCK_SIZE) {
+					page.setInt(0, count);
+					page.write(new BlockId(listFile, blkNum++));
+					pos = ByteHelper.INT_SIZE;
+					count = 0;
+				}
+				page.setVal(pos, name);
+				pos += Page.size(name);
+				page.setLong(pos, r.blk.number());
+				pos += ByteHelper.LONG_SIZE;
+				page.setInt(pos, r.pins);
+				pos += ByteHelper.INT_SIZE;
+				count++;
+			}
+			if (count > 0) {
+				page.setInt(0, count);
+				page.write(new BlockId(listFile, blkNum++));
+			}
+
+			// Write the header last, so that a partial list is never read
+			page.setInt(0, (int) blkNum - 1);
+			page.write(new BlockId(listFile, 0));
+			VanillaDb.fileMgr().force(listFile);
+		} finally {
+			page.close();
+		}
+	}
+
+	/**
+	 * Reads the saved list.
+	 * 
+	 * @return the blocks in the list, or an empty list if there is none
+	 */
+	List<Resident> load() {
+		List<Resident> list = new ArrayList<Resident>();
+		FileMgr fileMgr = VanillaDb.fileMgr();
+		if (!fileMgr.exists(listFile))
+			return list;
+
+		Page page = new Page();
+		try {
+			page.read(new BlockId(listFile, 0));
+			long numBlocks = Math.min(page.getInt(0), fileMgr.size(listFile) - 1);
+			for (long blkNum = 1; blkNum <= numBlocks; blkNum++) {
+				page.read(new BlockId(listFile, blkNum));
+				int count = page.getInt(0);
+				int pos = ByteHelper.INT_SIZE;
+				for (int i = 0; i < count; i++) {
+					Constant name = page.getVal(pos, Type.VARCHAR);
+					pos += Page.size(name);
+					long number = page.getLong(pos);
+					pos += ByteHelper.LONG_SIZE;
+					int pins = page.getInt(pos);
+					pos += ByteHelper.INT_SIZE;
+					list.add(new Resident(new BlockId((String) name.asJavaVal(), number), pins));
+				}
+			}
+		} finally {
+			page.close();
+		}
+		return list;
+	}
+
+	/**
+	 * Loads the hottest of the specified blocks that still exist into the
+	 * free frames of the pool.
+	 * 
+	 * @param list
+	 *            the blocks to be loaded
+	 * @return the number of blocks loaded
+	 */
+	int warmUp(List<Resident> list) {
+		// Keep the hottest blocks that fit in the pool
+		list = new ArrayList<Resident>(list);
+		Collections.sort(list, HOTTEST_FIRST);
+		if (list.size() > poolMgr.size())
+			list = list.subList(0, poolMgr.size());
+
+		// Skip the blocks of the files dropped or shrunk since the list was
+		// saved, without creating the files again
+		FileMgr fileMgr = VanillaDb.fileMgr();
+		Map<String, Long> fileSizes = new HashMap<String, Long>();
+		List<Resident> blocks = new ArrayList<Resident>(list.size());
+		for (Resident r : list) {
+			String fileName = r.blk.fileName();
+			Long size = fileSizes.get(fileName);
+			if (size == null) {
+				size = fileMgr.exists(fileName) ? fileMgr.size(fileName) : 0;
+				fileSizes.put(fileName, size);
+			}
+			if (r.blk.number() < size)
+				blocks.add(r);
+		}
+		Collections.sort(blocks, BLOCK_ORDER);
+
+		int loaded = 0;
+		BlockWindow window = new BlockWindow(BATCH_SIZE);
+		try {
+			int i = 0;
+			while (i < blocks.size() && poolMgr.hasFreeFrame()) {
+				BlockId first = blocks.get(i).blk;
+				int count = 1;
+				while (i + count < blocks.size() && count < BATCH_SIZE) {
+					BlockId next = blocks.get(i + count).blk;
+					if (!next.fileName().equals(first.fileName()) || next.number() != first.number() + count)
+						break;
+					count++;
+				}
+				loaded += poolMgr.readAhead(first, count, window);
+				i += count;
+			}
+		} finally {
+			window.close();
+		}
+		return loaded;
+	}
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * The page table of a buffer pool, which maps the blocks in the pool to the
+ * frames holding them. The table is an open-addressing hash table of the
+ * {@link BlockId#key() packed keys} of the blocks with linear probing, so a
+ * lookup neither allocates nor touches the file names, unless the key is
+ * shared by the blocks of the files registered after the ids ran out. The
+ * capacity is fixed, since the number of entries never exceeds the number of
+ * frames.
+ * 
+ * <p>
+ * Lookups are optimistic and retried under the read lock only if an update
+ * happens in the meantime. Updates are serialized by the write lock.
+ * </p>
+ */
+class PageTable {
+	private static final int EMPTY = -1;
+
+	private final long[] keys;
+	private final BlockId[] blocks;
+	private final int[] frames;
+	private final int mask;
+	private final StampedLock lock = new StampedLock();
+	private int size;
+
+	/**
+	 * Creates a page table holding at most the specified number of blocks.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of blocks
+	 */
+	PageTable(int maxEntries) {
+		// Keep the load factor at most 0.5
+		int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+		keys = new long[capacity];
+		blocks = new BlockId[capacity];
+		frames = new int[capacity];
+		Arrays.fill(frames, EMPTY);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Returns the frame holding the specified block.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @return the index of the frame, or -1 if the block is not in the table
+	 */
+	int get(BlockId blk) {
+		long stamp = lock.tryOptimisticRead();
+		int frame = find(blk);
+		if (lock.validate(stamp))
+			return frame;
+
+		stamp = lock.readLock();
+		try {
+			return find(blk);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Maps the specified block to the specified frame.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param frame
+	 *            the index of the frame
+	 */
+	void put(BlockId blk, int frame) {
+		long key = blk.key();
+		long stamp = lock.writeLock();
+		try {
+			int slot = slotOf(key);
+			while (frames[slot] != EMPTY && !matches(slot, blk))
+				slot = (slot + 1) & mask;
+			if (frames[slot] == EMPTY) {
+				if (size == mask)
+					throw new IllegalStateException("the page table is full");
+				size++;
+			}
+			keys[slot] = key;
+			blocks[slot] = blk;
+			frames[slot] = frame;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes the specified block from the table.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 */
+	void remove(BlockId blk) {
+		long key = blk.key();
+		long stamp = lock.writeLock();
+		try {
+			int slot = slotOf(key);
+			while (frames[slot] != EMPTY && !matches(slot, blk))
+				slot = (slot + 1) & mask;
+			if (frames[slot] == EMPTY)
+				return;
+			size--;
+
+			// Shift the following entries back, so no lookup stops at the hole
+			int hole = slot;
+			frames[hole] = EMPTY;
+			blocks[hole] = null;
+			for (int next = (hole + 1) & mask; frames[next] != EMPTY; next = (next + 1) & mask) {
+				int home = slotOf(keys[next]);
+				// Move the entry only if its home is not in (hole, next]
+				boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+				if (stays)
+					continue;
+				keys[hole] = keys[next];
+				blocks[hole] = blocks[next];
+				frames[hole] = frames[next];
+				frames[next] = EMPTY;
+				blocks[next] = null;
+				hole = next;
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of blocks in the table.
+	 * 
+	 * @return the number of blocks
+	 */
+	int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private int find(BlockId blk) {
+		int slot = slotOf(blk.key());
+		// Bound the probes, since an optimistic lookup may see a torn table
+		for (int i = 0; i <= mask; i++) {
+			int frame = frames[slot];
+			if (frame == EMPTY)
+				return EMPTY;
+			if (matches(slot, blk))
+				return frame;
+			slot = (slot + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	private boolean matches(int slot, BlockId blk) {
+		long key = blk.key();
+		if (keys[slot] != key)
+			return false;
+		// Only a negative key may be shared by different blocks
+		return key >= 0 || blk.equals(blocks[slot]);
+	}
+
+	private int slotOf(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+}
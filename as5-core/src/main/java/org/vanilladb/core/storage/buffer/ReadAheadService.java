@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.BlockWindow;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A background thread that reads ahead of the sequential scans of a
+ * {@link BufferPoolMgr}. The misses of each file, and the pins of the blocks
+ * read ahead, are tracked to detect a run of consecutive blocks in either
+ * direction. After {@link #TRIGGER} consecutive blocks, the next
+ * {@link #WINDOW_SIZE} blocks in the direction of the run are read by a single
+ * I/O and loaded into the free frames of the pool, so that
+ * the scan finds them there. A new window is requested when the scan has
+ * consumed half of the previous one.
+ * 
+ * <p>
+ * The read-ahead never evicts a block: it stops when the free lists are
+ * empty. The blocks read ahead and pinned later, and those evicted without
+ * being pinned, are counted in the {@link BufferStatistics}.
+ * </p>
+ */
+class ReadAheadService implements Runnable {
+	private static Logger logger = Logger.getLogger(ReadAheadService.class.getName());
+
+	static final boolean ENABLED;
+	private static final int WINDOW_SIZE;
+	private static final int TRIGGER;
+	private static final int MAX_PENDING_REQUESTS = 64;
+	private static final int MAX_TRACKED_FILES = 1024;
+
+	static {
+		ENABLED = CoreProperties.getLoader().getPropertyAsBoolean(ReadAheadService.class.getName() + ".ENABLED",
+				true);
+		WINDOW_SIZE = Math.max(2, CoreProperties.getLoader()
+				.getPropertyAsInteger(ReadAheadService.class.getName() + ".WINDOW_SIZE", 8));
+		TRIGGER = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(ReadAheadService.class.getName() + ".TRIGGER", 2));
+	}
+
+	/**
+	 * The recent pins of a file.
+	 */
+	private static class Stream {
+		long lastBlkNum = -1;
+		int direction;
+		int runLength;
+		// The farthest block requested in the direction of the run
+		long requestedTo;
+	}
+
+	/**
+	 * The consecutive blocks to be read ahead, in ascending order.
+	 */
+	private static class Request {
+		BlockId first;
+		int count;
+
+		Request(BlockId first, int count) {
+			this.first = first;
+			this.count = count;
+		}
+	}
+
+	// Tells the thread to stop
+	private static final Request STOP = new Request(null, 0);
+
+	private final BufferPoolMgr poolMgr;
+	private final ConcurrentHashMap<String, Stream> streams = new ConcurrentHashMap<String, Stream>();
+	private final BlockingQueue<Request> requests = new ArrayBlockingQueue<Request>(MAX_PENDING_REQUESTS);
+	private BlockWindow window;
+
+	ReadAheadService(BufferPoolMgr poolMgr) {
+		this.poolMgr = poolMgr;
+	}
+
+	/**
+	 * Records a read of the specified block, and requests the next window if
+	 * the block continues a sequential run.
+	 * 
+	 * @param blk
+	 *            the pinned block
+	 */
+	void onPin(BlockId blk) {
+		// A temporary file may be deleted before the request is served
+		if (blk.fileName().startsWith(FileMgr.TMP_FILE_NAME_PREFIX))
+			return;
+
+		Stream s = streams.get(blk.fileName());
+		if (s == null) {
+			if (streams.size() >= MAX_TRACKED_FILES)
+				streams.clear();
+			s = new Stream();
+			Stream prev = streams.putIfAbsent(blk.fileName(), s);
+			if (prev != null)
+				s = prev;
+		}
+
+		Request req = null;
+		synchronized (s) {
+			long n = blk.number();
+			if (n == s.lastBlkNum)
+				return;
+			int dir = n == s.lastBlkNum + 1 ? 1 : (n == s.lastBlkNum - 1 ? -1 : 0);
+			if (dir != 0 && dir == s.direction) {
+				s.runLength++;
+			} else {
+				s.direction = dir;
+				s.runLength = dir == 0 ? 0 : 1;
+				s.requestedTo = n;
+			}
+			s.lastBlkNum = n;
+			if (s.runLength < TRIGGER)
+				return;
+
+			// Keep at least half a window ahead of the scan
+			if (dir > 0 && s.requestedTo - n < WINDOW_SIZE / 2) {
+				long first = Math.max(n, s.requestedTo) + 1;
+				long last = n + WINDOW_SIZE;
+				req = new Request(new BlockId(blk.fileName(), first), (int) (last - first + 1));
+				s.requestedTo = last;
+			} else if (dir < 0 && n - s.requestedTo < WINDOW_SIZE / 2) {
+				long last = Math.min(n, s.requestedTo) - 1;
+				long first = Math.max(0, n - WINDOW_SIZE);
+				if (last >= first)
+					req = new Request(new BlockId(blk.fileName(), first), (int) (last - first + 1));
+				s.requestedTo = first;
+			}
+		}
+
+		// Drop the request if the thread falls behind
+		if (req != null && !requests.offer(req))
+			poolMgr.statistics().readAheadDrops.incrementAndGet();
+	}
+
+	/**
+	 * Drops the pending requests, and asks the thread to stop.
+	 */
+	void stop() {
+		requests.clear();
+		while (!requests.offer(STOP))
+			requests.poll();
+	}
+
+	@Override
+	public void run() {
+		window = new BlockWindow(WINDOW_SIZE);
+		while (true) {
+			try {
+				Request req = requests.take();
+				if (req == STOP)
+					return;
+				long size = VanillaDb.fileMgr().size(req.first.fileName());
+				int count = (int) Math.min(req.count, size - req.first.number());
+				if (count > 0)
+					poolMgr.readAhead(req.first, count, window);
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.warning("read-ahead failed: " + e);
+			}
+		}
+	}
+}
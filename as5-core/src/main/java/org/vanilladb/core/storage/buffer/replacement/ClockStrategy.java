@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer.replacement;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The CLOCK-sweep policy with usage counts. Every frame has a usage count,
+ * which is increased when its block is pinned again, up to
+ * {@link #MAX_USAGE_COUNT}. The clock hand sweeps around the frames and
+ * decreases the count of each frame it passes. The first frame found with a
+ * zero count is replaced, so a block referenced often survives several
+ * sweeps while a block read only once by a scan is replaced in the next one.
+ */
+public class ClockStrategy implements ReplacementStrategy {
+	private static final int MAX_USAGE_COUNT;
+
+	static {
+		MAX_USAGE_COUNT = Math.max(1, CoreProperties.getLoader()
+				.getPropertyAsInteger(ClockStrategy.class.getName() + ".MAX_USAGE_COUNT", 5));
+	}
+
+	private final int numFrames;
+	private final AtomicIntegerArray usageCounts;
+	private final AtomicInteger hand = new AtomicInteger();
+
+	public ClockStrategy(int numFrames) {
+		this.numFrames = numFrames;
+		this.usageCounts = new AtomicIntegerArray(numFrames);
+	}
+
+	@Override
+	public void onAccess(int frame) {
+		int count = usageCounts.get(frame);
+		while (count < MAX_USAGE_COUNT && !usageCounts.compareAndSet(frame, count, count + 1))
+			count = usageCounts.get(frame);
+	}
+
+	@Override
+	public void onLoad(int frame, BlockId blk) {
+		usageCounts.set(frame, 1);
+	}
+
+	@Override
+	public int chooseVictim(FrameFilter filter) {
+		// Every count drops to zero after this number of steps, unless the
+		// frames are accessed again or kept pinned
+		int maxSteps = numFrames * (MAX_USAGE_COUNT + 1);
+		for (int step = 0; step < maxSteps; step++) {
+			int frame = nextFrame();
+			int count = usageCounts.get(frame);
+			if (count > 0) {
+				usageCounts.compareAndSet(frame, count, count - 1);
+				continue;
+			}
+			if (filter.tryReserve(frame))
+				return frame;
+		}
+		return -1;
+	}
+
+	private int nextFrame() {
+		int current, next;
+		do {
+			current = hand.get();
+			next = (current + 1) % numFrames;
+		} while (!hand.compareAndSet(current, next));
+		return current;
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer.replacement;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The LRU-K policy. The strategy remembers the times of the last K references
+ * to the block of each frame, and replaces the block whose K-th most recent
+ * reference is the oldest. A block referenced fewer than K times is replaced
+ * before the others, in the LRU order of its last reference. Time is a
+ * logical clock advanced by every reference.
+ */
+public class LruKStrategy implements ReplacementStrategy {
+	private static final int K;
+
+	static {
+		K = Math.max(1, CoreProperties.getLoader().getPropertyAsInteger(LruKStrategy.class.getName() + ".K", 2));
+	}
+
+	// The reference times of each frame, from the most recent one
+	private final long[][] history;
+	private long clock;
+	// The frames in the replacement order
+	private final TreeSet<Integer> queue = new TreeSet<Integer>(new Comparator<Integer>() {
+		@Override
+		public int compare(Integer f1, Integer f2) {
+			int c = Long.compare(kthTime(f1), kthTime(f2));
+			if (c == 0)
+				c = Long.compare(lastTime(f1), lastTime(f2));
+			return c != 0 ? c : Integer.compare(f1, f2);
+		}
+	});
+
+	public LruKStrategy(int numFrames) {
+		history = new long[numFrames][K];
+		for (int i = 0; i < numFrames; i++)
+			queue.add(i);
+	}
+
+	@Override
+	public synchronized void onAccess(int frame) {
+		queue.remove(frame);
+		long[] times = history[frame];
+		System.arraycopy(times, 0, times, 1, K - 1);
+		times[0] = ++clock;
+		queue.add(frame);
+	}
+
+	@Override
+	public synchronized void onLoad(int frame, BlockId blk) {
+		queue.remove(frame);
+		long[] times = history[frame];
+		for (int i = 1; i < K; i++)
+			times[i] = 0;
+		times[0] = ++clock;
+		queue.add(frame);
+	}
+
+	@Override
+	public synchronized int chooseVictim(FrameFilter filter) {
+		for (int frame : queue)
+			if (filter.tryReserve(frame))
+				return frame;
+		return -1;
+	}
+
+	private long kthTime(int frame) {
+		return history[frame][K - 1];
+	}
+
+	private long lastTime(int frame) {
+		return history[frame][0];
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer.replacement;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * A policy that decides which buffer of a buffer pool is replaced when a
+ * block not in the pool is pinned. The buffers are identified by their
+ * indexes (frames) in the pool, from 0 to the pool size - 1.
+ * 
+ * <p>
+ * An implementation must be thread-safe, since the pool calls it from the
+ * pinning threads without a global lock. An implementation must also provide
+ * a public constructor taking the number of frames as its only argument, so
+ * that it can be selected by the property
+ * {@code org.vanilladb.core.storage.buffer.BufferPoolMgr.REPLACEMENT_STRATEGY}.
+ * </p>
+ */
+public interface ReplacementStrategy {
+
+	/**
+	 * The callback used by a strategy to try a victim candidate.
+	 */
+	interface FrameFilter {
+
+		/**
+		 * Tries to reserve the specified frame for replacement. It fails if
+		 * the frame is pinned or is being used by another thread. A frame that
+		 * has been reserved stays reserved until the pool has replaced its
+		 * block.
+		 * 
+		 * @param frame
+		 *            the index of the frame
+		 * @return true if the frame is reserved for the caller
+		 */
+		boolean tryReserve(int frame);
+	}
+
+	/**
+	 * Records that the block held by the specified frame is pinned again.
+	 * 
+	 * @param frame
+	 *            the index of the frame
+	 */
+	void onAccess(int frame);
+
+	/**
+	 * Records that the specified frame has been filled with a new block.
+	 * 
+	 * @param frame
+	 *            the index of the frame
+	 * @param blk
+	 *            the block now held by the frame
+	 */
+	void onLoad(int frame, BlockId blk);
+
+	/**
+	 * Chooses a victim frame. The candidates are passed to the filter in the
+	 * order of preference, until one of them is reserved.
+	 * 
+	 * @param filter
+	 *            the filter reserving a candidate
+	 * @return the index of the reserved frame, or -1 if no frame can be
+	 *         reserved
+	 */
+	int chooseVictim(FrameFilter filter);
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer.replacement;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The 2Q policy. A newly loaded block enters the FIFO queue A1in. If it is
+ * replaced from A1in, its id is remembered in the ghost queue A1out. A block
+ * loaded again while remembered in A1out has been referenced twice within a
+ * short time, so it enters the LRU queue Am. The victim is taken from A1in
+ * while A1in is larger than its share of the pool, and from the least
+ * recently used end of Am otherwise. Blocks read only once, e.g., by a scan,
+ * thus never push the frequently used blocks in Am out of the pool.
+ */
+public class TwoQueueStrategy implements ReplacementStrategy {
+	private static final double A1IN_RATIO;
+	private static final double A1OUT_RATIO;
+
+	static {
+		A1IN_RATIO = CoreProperties.getLoader().getPropertyAsDouble(TwoQueueStrategy.class.getName() + ".A1IN_RATIO",
+				0.25);
+		A1OUT_RATIO = CoreProperties.getLoader()
+				.getPropertyAsDouble(TwoQueueStrategy.class.getName() + ".A1OUT_RATIO", 0.5);
+	}
+
+	private final int maxA1in, maxA1out;
+	private final BlockId[] blocks;
+	private final boolean[] inAm;
+	// The iteration orders of the sets are the replacement orders
+	private final LinkedHashSet<Integer> a1in = new LinkedHashSet<Integer>();
+	private final LinkedHashSet<Integer> am = new LinkedHashSet<Integer>();
+	private final LinkedHashSet<BlockId> a1out = new LinkedHashSet<BlockId>();
+
+	public TwoQueueStrategy(int numFrames) {
+		this.maxA1in = Math.max(1, (int) (numFrames * A1IN_RATIO));
+		this.maxA1out = Math.max(1, (int) (numFrames * A1OUT_RATIO));
+		this.blocks = new BlockId[numFrames];
+		this.inAm = new boolean[numFrames];
+
+		// The empty frames are replaced first
+		for (int i = 0; i < numFrames; i++)
+			a1in.add(i);
+	}
+
+	@Override
+	public synchronized void onAccess(int frame) {
+		// A block in A1in stays there, since the accesses soon after the
+		// first one are usually correlated
+		if (inAm[frame]) {
+			am.remove(frame);
+			am.add(frame);
+		}
+	}
+
+	@Override
+	public synchronized void onLoad(int frame, BlockId blk) {
+		if (inAm[frame])
+			am.remove(frame);
+		else
+			a1in.remove(frame);
+
+		blocks[frame] = blk;
+		if (a1out.remove(blk)) {
+			inAm[frame] = true;
+			am.add(frame);
+		} else {
+			inAm[frame] = false;
+			a1in.add(frame);
+		}
+	}
+
+	@Override
+	public synchronized int chooseVictim(FrameFilter filter) {
+		boolean fromA1in = a1in.size() > maxA1in || am.isEmpty();
+		int frame = chooseFrom(fromA1in ? a1in : am, filter);
+		if (frame < 0)
+			frame = chooseFrom(fromA1in ? am : a1in, filter);
+
+		if (frame >= 0 && !inAm[frame] && blocks[frame] != null) {
+			// Remember the block replaced from A1in
+			a1out.add(blocks[frame]);
+			if (a1out.size() > maxA1out) {
+				Iterator<BlockId> iter = a1out.iterator();
+				iter.next();
+				iter.remove();
+			}
+		}
+		return frame;
+	}
+
+	private int chooseFrom(LinkedHashSet<Integer> queue, FrameFilter filter) {
+		for (int frame : queue)
+			if (filter.tryReserve(frame))
+				return frame;
+		return -1;
+	}
+}
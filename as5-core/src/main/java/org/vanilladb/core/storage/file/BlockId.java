@@ -19,13 +19,26 @@ package org.vanilladb.core.storage.file;
  * A reference to a disk block. A BlockId object consists of a fileName and a
  * block number. It does not hold the contents of the block; instead, that is
  * the job of a {@link Page} object.
+ * 
+ * <p>
+ * The file is also identified by the id registered in {@link FileMgr}, and
+ * the id and the block number are packed into a {@link #key() key}, so that
+ * blocks are hashed and compared for equality without touching the file
+ * name. Once the ids run out, the hash code of the file name is packed
+ * instead, and the blocks with equal keys are compared by their file names.
+ * </p>
  */
 public class BlockId implements Comparable<BlockId> {
-	private String fileName;
-	private long blkNum;
-	// Optimization: Materialize the toString and hash value
+	private static final int BLOCK_NUM_BITS = 40;
+	private static final long BLOCK_NUM_MASK = (1L << BLOCK_NUM_BITS) - 1;
+	private static final long FILE_HASH_MASK = FileMgr.MAX_FILE_ID;
+
+	private final String fileName;
+	private final long blkNum;
+	// Optimization: Materialize the packed key and the hash value
+	private final long key;
+	private final int myHashCode;
 	private String myString;
-	private int myHashCode;
 
 	/**
 	 * Constructs a block ID for the specified fileName and block number.
@@ -38,9 +51,13 @@ public class BlockId implements Comparable<BlockId> {
 	public BlockId(String fileName, long blkNum) {
 		this.fileName = fileName;
 		this.blkNum = blkNum;
-		// Optimization: Materialize the hash code and the output of toString
-		myString = "[file " + fileName + ", block " + blkNum + "]";
-		myHashCode = myString.hashCode();
+		int fileId = FileMgr.fileId(fileName);
+		if (fileId != FileMgr.NO_FILE_ID)
+			key = ((long) fileId << BLOCK_NUM_BITS) | (blkNum & BLOCK_NUM_MASK);
+		else
+			key = Long.MIN_VALUE | ((fileName.hashCode() & FILE_HASH_MASK) << BLOCK_NUM_BITS)
+					| (blkNum & BLOCK_NUM_MASK);
+		myHashCode = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
 	}
 
 	/**
@@ -60,6 +77,19 @@ public class BlockId implements Comparable<BlockId> {
 	public long number() {
 		return blkNum;
 	}
+
+	/**
+	 * Returns the id of the file and the block number packed into a long.
+	 * Two blocks with non-negative keys are equal if and only if their keys
+	 * are equal, as long as the block numbers are less than 2<sup>40</sup>.
+	 * A negative key belongs to a file registered after the ids ran out, and
+	 * may be shared by blocks of different files.
+	 * 
+	 * @return the packed key of the block
+	 */
+	public long key() {
+		return key;
+	}
 	
 	@Override
 	public int compareTo(BlockId blk) {
@@ -82,11 +112,16 @@ public class BlockId implements Comparable<BlockId> {
 		if (obj == null || !(obj.getClass().equals(BlockId.class)))
 			return false;
 		BlockId blk = (BlockId) obj;
-		return fileName.equals(blk.fileName) && blkNum == blk.blkNum;
+		if (key != blk.key)
+			return false;
+		return key >= 0 || fileName.equals(blk.fileName);
 	}
 	
 	@Override
 	public String toString() {
+		// Optimization: Materialize the output of toString on demand
+		if (myString == null)
+			myString = "[file " + fileName + ", block " + blkNum + "]";
 		return myString;
 	}
 	
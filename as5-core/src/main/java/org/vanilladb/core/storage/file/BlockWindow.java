@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.file;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.io.IoAllocator;
+import org.vanilladb.core.storage.file.io.IoBuffer;
+
+/**
+ * A run of consecutive blocks of a file read by a single I/O. A window is
+ * used to read ahead of a sequential access, which then copies each block
+ * from the window into its own {@link Page page} instead of reading it
+ * separately. A window is not thread-safe.
+ */
+public class BlockWindow {
+	private IoBuffer contents;
+	private int numBlocks;
+	private String fileName;
+	private long first;
+	private int count;
+
+	/**
+	 * Creates a window holding up to the specified number of blocks.
+	 * 
+	 * @param numBlocks
+	 *            the maximum number of blocks in the window
+	 */
+	public BlockWindow(int numBlocks) {
+		this.numBlocks = Math.max(1, numBlocks);
+		contents = IoAllocator.newIoBuffer(this.numBlocks * Page.BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the maximum number of blocks in this window.
+	 * 
+	 * @return the size of the window in blocks
+	 */
+	public int numBlocks() {
+		return numBlocks;
+	}
+
+	/**
+	 * Reads the blocks starting from the specified one into the window,
+	 * replacing its previous contents. Fewer blocks are read near the end of
+	 * the file.
+	 * 
+	 * @param blk
+	 *            the first block to be read
+	 * @return the number of blocks read
+	 */
+	public int read(BlockId blk) {
+		// Invalidate the window first in case the read fails
+		count = 0;
+		int bytes = VanillaDb.fileMgr().read(blk, contents);
+		fileName = blk.fileName();
+		first = blk.number();
+		count = Math.max(0, bytes / Page.BLOCK_SIZE);
+		return count;
+	}
+
+	/**
+	 * Returns true if the specified block is in this window.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @return true if the block has been read into the window
+	 */
+	public boolean contains(BlockId blk) {
+		return count > 0 && blk.number() >= first && blk.number() < first + count
+				&& blk.fileName().equals(fileName);
+	}
+
+	/**
+	 * Copies the specified block from this window into a page.
+	 * 
+	 * @param blk
+	 *            a block in the window
+	 * @param page
+	 *            the page to be filled
+	 */
+	public void copyTo(BlockId blk, Page page) {
+		if (!contains(blk))
+			throw new IllegalArgumentException(blk + " is not in the window");
+		page.copyFrom(contents, (int) (blk.number() - first) * Page.BLOCK_SIZE);
+	}
+
+	/**
+	 * Releases the buffer of this window.
+	 */
+	public void close() {
+		count = 0;
+		contents.close();
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.file;
+
+/**
+ * The policies deciding when the written blocks are forced to the storage
+ * device. The policy in use is {@link FileMgr#DURABILITY_MODE}.
+ */
+public enum DurabilityMode {
+	/**
+	 * Every write of every file is synchronous to the storage device.
+	 */
+	STRICT,
+
+	/**
+	 * Data files are written through the OS cache and forced when all the
+	 * buffers are flushed, e.g., at checkpoints. The log is forced before a
+	 * flush request is acknowledged, so committed transactions are durable.
+	 */
+	NORMAL,
+
+	/**
+	 * Same as {@link #NORMAL}, except that the log is never forced. The
+	 * database survives the crash of its process, but the work committed
+	 * since the last checkpoint may be lost or inconsistent after the crash
+	 * of the OS.
+	 */
+	RELAXED
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.file;
+
+import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+
+import java.io.IOException;
+
+import org.vanilladb.core.storage.file.io.IoAllocator;
+import org.vanilladb.core.storage.file.io.IoBuffer;
+import org.vanilladb.core.storage.file.io.IoChannel;
+
+/**
+ * An I/O channel that grows its file by extents of zero-filled blocks. The
+ * channel tracks the logical end of the file apart from its physical size, so
+ * that appending a block inside the last extent is an ordinary write, which
+ * does not change the size of the file.
+ * 
+ * <p>
+ * The logical end is not stored on disk. When a file is opened, the trailing
+ * zero-filled blocks of its last extent are taken as unused. This is safe
+ * since such a block reads the same as one never appended, and a block read
+ * or written behind the logical end, e.g. by the recovery, is taken as
+ * allocated.
+ * </p>
+ */
+class ExtentIoChannel implements IoChannel {
+
+	// The zero-filled extent shared by all the channels
+	private static final Object zerosLock = new Object();
+	private static IoBuffer zeros;
+
+	private IoChannel channel;
+	private volatile long logicalSize;
+	private long physicalSize;
+
+	/**
+	 * Wraps the specified channel, finding the logical end of its file.
+	 * 
+	 * @param channel
+	 *            the channel of the file
+	 * @throws IOException
+	 */
+	ExtentIoChannel(IoChannel channel) throws IOException {
+		this.channel = channel;
+		physicalSize = channel.size();
+		logicalSize = physicalSize;
+
+		// Skip the unused blocks of the last extent, read by one I/O
+		int tailSize = (int) Math.min(physicalSize - physicalSize % BLOCK_SIZE, FileMgr.EXTENT_SIZE);
+		if (tailSize > 0) {
+			IoBuffer tail = IoAllocator.newIoBuffer(tailSize);
+			try {
+				tail.clear();
+				channel.read(tail, physicalSize - tailSize);
+				int end = tailSize;
+				while (end > 0 && isZero(tail, end - BLOCK_SIZE))
+					end -= BLOCK_SIZE;
+				logicalSize = physicalSize - (tailSize - end);
+			} finally {
+				tail.close();
+			}
+		}
+	}
+
+	@Override
+	public int read(IoBuffer buffer, long position) throws IOException {
+		int readSize = channel.read(buffer, position);
+		if (buffer.capacity() == BLOCK_SIZE) {
+			// A single block is read by its ID, so it must be allocated
+			if (readSize > 0)
+				extendLogicalSize(position + readSize);
+			return readSize;
+		}
+
+		// The blocks behind the logical end are not part of the file
+		long end = logicalSize;
+		if (position >= end)
+			return -1;
+		return (int) Math.min(readSize, end - position);
+	}
+
+	@Override
+	public int write(IoBuffer buffer, long position) throws IOException {
+		int writeSize = channel.write(buffer, position);
+		extendLogicalSize(position + writeSize);
+		return writeSize;
+	}
+
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		long writeSize = channel.write(buffers, position);
+		extendLogicalSize(position + writeSize);
+		return writeSize;
+	}
+
+	@Override
+	public synchronized long append(IoBuffer buffer) throws IOException {
+		long position = logicalSize;
+		while (position + buffer.capacity() > physicalSize) {
+			synchronized (zerosLock) {
+				if (zeros == null)
+					zeros = IoAllocator.newIoBuffer(FileMgr.EXTENT_SIZE);
+				zeros.rewind();
+				physicalSize = channel.append(zeros);
+			}
+		}
+		int writeSize = channel.write(buffer, position);
+		logicalSize = position + writeSize;
+		return logicalSize;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return logicalSize;
+	}
+
+	@Override
+	public void force() throws IOException {
+		channel.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void extendLogicalSize(long end) {
+		// Most writes go to the allocated blocks
+		if (end <= logicalSize)
+			return;
+		synchronized (this) {
+			if (end > logicalSize)
+				logicalSize = end;
+			if (end > physicalSize)
+				physicalSize = end;
+		}
+	}
+
+	private static boolean isZero(IoBuffer buffer, int position) {
+		for (int i = 0; i < BLOCK_SIZE; i += 8)
+			if (buffer.getLong(position + i) != 0)
+				return false;
+		return true;
+	}
+}
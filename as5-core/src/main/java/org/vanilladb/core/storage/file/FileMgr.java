@@ -20,6 +20,9 @@ import static org.vanilladb.core.storage.log.LogMgr.DEFAULT_LOG_FILE;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -42,12 +45,21 @@ import org.vanilladb.core.util.CoreProperties;
  * {@link #isNew() isNew} is called during system initialization by
  * {@link VanillaDb#init}. Method {@link #size(String) size} is called by the
  * log manager and transaction manager to determine the end of the file.
+ * 
+ * <p>
+ * Except for the temporary ones, the files grow by extents of
+ * {@link #EXTENT_SIZE} bytes, so that appending a block usually does not
+ * change the size of the file. The size returned by {@link #size(String)} is
+ * the logical one, which counts the appended blocks only.
+ * </p>
  */
 
 public class FileMgr {
 	private static Logger logger = Logger.getLogger(FileMgr.class.getName());
 
 	public static final String DB_FILES_DIR, LOG_FILES_DIR;
+	public static final DurabilityMode DURABILITY_MODE;
+	static final int EXTENT_SIZE;
 	// XXX: This should be deal with by an upper layer
 	public static final String TMP_FILE_NAME_PREFIX = "_temp";
 
@@ -55,6 +67,18 @@ public class FileMgr {
 	private boolean isNew;
 	private Map<String, IoChannel> openFiles = new ConcurrentHashMap<String, IoChannel>();
 
+	/**
+	 * The id of the files registered after the ids run out.
+	 */
+	public static final int NO_FILE_ID = -1;
+
+	// The ids of the file names. An id is never reused, since the blocks of
+	// a deleted file may still be in the buffers.
+	static final int MAX_FILE_ID = (1 << 23) - 1;
+	private static final Map<String, Integer> fileIds = new ConcurrentHashMap<String, Integer>();
+	private static volatile int maxFileId = MAX_FILE_ID;
+	private static volatile int nextFileId;
+
 	static {
 		String dbDir = CoreProperties.getLoader().getPropertyAsString(FileMgr.class.getName() + ".DB_FILES_DIR",
 				System.getProperty("user.home"));
@@ -78,6 +102,23 @@ public class FileMgr {
 
 		DB_FILES_DIR = dbDir;
 		LOG_FILES_DIR = logDir;
+
+		String mode = CoreProperties.getLoader().getPropertyAsString(FileMgr.class.getName() + ".DURABILITY_MODE",
+				DurabilityMode.NORMAL.name());
+		DurabilityMode durabilityMode;
+		try {
+			durabilityMode = DurabilityMode.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("unknown durability mode '" + mode + "', use the default mode: "
+						+ DurabilityMode.NORMAL);
+			durabilityMode = DurabilityMode.NORMAL;
+		}
+		DURABILITY_MODE = durabilityMode;
+
+		int extentSize = CoreProperties.getLoader().getPropertyAsInteger(FileMgr.class.getName() + ".EXTENT_SIZE",
+				1024 * 1024);
+		EXTENT_SIZE = Math.max(BLOCK_SIZE, extentSize - extentSize % BLOCK_SIZE);
 	}
 
 	private final Object[] anchors = new Object[1009];
@@ -89,6 +130,50 @@ public class FileMgr {
 		return anchors[code];
 	}
 
+	/**
+	 * Returns the id of the specified file, registering the file if it has no
+	 * id yet. The id is a small integer that identifies the name of the file
+	 * in the running process, so it is not stored on disk. Once the ids run
+	 * out, {@link #NO_FILE_ID} is returned, and the file is identified by its
+	 * name instead.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the id of the file, or {@link #NO_FILE_ID}
+	 */
+	public static int fileId(String fileName) {
+		Integer id = fileIds.get(fileName);
+		if (id != null)
+			return id;
+		if (nextFileId > maxFileId)
+			return NO_FILE_ID;
+
+		synchronized (fileIds) {
+			id = fileIds.get(fileName);
+			if (id == null) {
+				if (nextFileId > maxFileId) {
+					if (logger.isLoggable(Level.WARNING))
+						logger.warning("no file ids left, identify the files by their names from " + fileName);
+					return NO_FILE_ID;
+				}
+				id = nextFileId++;
+				fileIds.put(fileName, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Sets the largest id given to a file, so that the ids run out early in
+	 * the tests.
+	 * 
+	 * @param maxId
+	 *            the largest id
+	 */
+	static void setMaxFileId(int maxId) {
+		maxFileId = maxId;
+	}
+
 	/**
 	 * Creates a file manager for the specified database. The database will be
 	 * stored in a folder of that name in the user's home directory. If the
@@ -127,14 +212,17 @@ public class FileMgr {
 	}
 
 	/**
-	 * Reads the contents of a disk block into a byte buffer.
+	 * Reads the contents of a disk block into a byte buffer. If the buffer is
+	 * larger than a block, the following blocks are read into it as well.
 	 * 
 	 * @param blk
 	 *            a block ID
 	 * @param buffer
 	 *            the byte buffer
+	 * @return the number of bytes read, or -1 if the block is beyond the end
+	 *         of the file
 	 */
-	void read(BlockId blk, IoBuffer buffer) {
+	int read(BlockId blk, IoBuffer buffer) {
 		try {
 			IoChannel fileChannel = getFileChannel(blk.fileName());
 
@@ -142,7 +230,7 @@ public class FileMgr {
 			buffer.clear();
 
 			// read a block from file
-			fileChannel.read(buffer, blk.number() * BLOCK_SIZE);
+			return fileChannel.read(buffer, blk.number() * BLOCK_SIZE);
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new RuntimeException("cannot read block " + blk);
@@ -172,6 +260,32 @@ public class FileMgr {
 		}
 	}
 
+	/**
+	 * Writes the contents of the specified byte buffers into consecutive disk
+	 * blocks, starting from the specified one, by a single gathering write
+	 * where the I/O channel supports it.
+	 * 
+	 * @param first
+	 *            the ID of the first block
+	 * @param buffers
+	 *            the byte buffers, one per block
+	 */
+	void write(BlockId first, IoBuffer[] buffers) {
+		try {
+			IoChannel fileChannel = getFileChannel(first.fileName());
+
+			// rewind the buffers
+			for (IoBuffer buffer : buffers)
+				buffer.rewind();
+
+			// write the blocks to the file
+			fileChannel.write(buffers, first.number() * BLOCK_SIZE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot write " + buffers.length + " blocks from " + first);
+		}
+	}
+
 	/**
 	 * Appends the contents of a byte buffer to the end of the specified file.
 	 * 
@@ -217,6 +331,88 @@ public class FileMgr {
 		}
 	}
 
+	/**
+	 * Tells whether the specified file exists, without creating it.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return true if the file exists
+	 */
+	public boolean exists(String fileName) {
+		if (openFiles.containsKey(fileName))
+			return true;
+		return new File(directoryOf(fileName), fileName).exists();
+	}
+
+	/**
+	 * Returns the names of the existing files that start with the specified
+	 * prefix, e.g., the segments of a log.
+	 * 
+	 * @param prefix
+	 *            the prefix of the file names
+	 * @return the names of the files
+	 */
+	public List<String> listFiles(String prefix) {
+		List<String> fileNames = new ArrayList<String>();
+		String[] names = directoryOf(prefix).list();
+		if (names != null)
+			for (String name : names)
+				if (name.startsWith(prefix))
+					fileNames.add(name);
+		return fileNames;
+	}
+
+	/**
+	 * Creates the specified file if it does not exist yet, and keeps it open,
+	 * so that the first access to the file does not wait for the creation.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 */
+	public void create(String fileName) {
+		try {
+			getFileChannel(fileName);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot create " + fileName);
+		}
+	}
+
+	/**
+	 * Forces the written blocks of the specified file to the storage device.
+	 * Nothing is done if the file is not open.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 */
+	public void force(String fileName) {
+		try {
+			IoChannel fileChannel = openFiles.get(fileName);
+			if (fileChannel != null)
+				fileChannel.force();
+		} catch (ClosedChannelException e) {
+			// The file has been deleted
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot force " + fileName);
+		}
+	}
+
+	/**
+	 * Forces the written blocks of all the open files, except the temporary
+	 * ones, to the storage device. Nothing is done in the
+	 * {@link DurabilityMode#STRICT strict} mode, where every write is already
+	 * synchronous.
+	 */
+	public void forceAll() {
+		if (DURABILITY_MODE == DurabilityMode.STRICT)
+			return;
+
+		for (String fileName : openFiles.keySet())
+			if (!fileName.startsWith(TMP_FILE_NAME_PREFIX))
+				force(fileName);
+	}
+
 	/**
 	 * Returns a boolean indicating whether the file manager had to create a new
 	 * database directory.
@@ -243,9 +439,11 @@ public class FileMgr {
 			IoChannel fileChannel = openFiles.get(fileName);
 
 			if (fileChannel == null) {
-				File dbFile = fileName.equals(DEFAULT_LOG_FILE) ? new File(logDirectory, fileName)
-						: new File(dbDirectory, fileName);
-				fileChannel = IoAllocator.newIoChannel(dbFile);
+				File dbFile = new File(directoryOf(fileName), fileName);
+				fileChannel = IoAllocator.newIoChannel(dbFile, DURABILITY_MODE == DurabilityMode.STRICT);
+				// The temporary files are small and short-lived
+				if (EXTENT_SIZE > BLOCK_SIZE && !fileName.startsWith(TMP_FILE_NAME_PREFIX))
+					fileChannel = new ExtentIoChannel(fileChannel);
 
 				openFiles.put(fileName, fileChannel);
 			}
@@ -254,6 +452,14 @@ public class FileMgr {
 		}
 	}
 
+	/**
+	 * Returns the directory of the specified file. The log and its segments
+	 * are stored in the log directory.
+	 */
+	private File directoryOf(String fileName) {
+		return fileName.startsWith(DEFAULT_LOG_FILE) ? logDirectory : dbDirectory;
+	}
+
 	/**
 	 * Delete the specified file.
 	 * 
@@ -269,9 +475,14 @@ public class FileMgr {
 					fileChannel.close();
 
 				// Delete the file
-				boolean hasDeleted = new File(dbDirectory, fileName).delete();
+				boolean hasDeleted = new File(directoryOf(fileName), fileName).delete();
 				if (!hasDeleted && logger.isLoggable(Level.WARNING))
 					logger.warning("cannot delete file: " + fileName);
+
+				// The name of a temporary file is never used again, so the
+				// file no longer needs its id
+				if (fileName.startsWith(TMP_FILE_NAME_PREFIX))
+					fileIds.remove(fileName);
 			}
 		} catch (IOException e) {
 			if (logger.isLoggable(Level.WARNING))
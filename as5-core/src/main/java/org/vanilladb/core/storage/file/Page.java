@@ -15,10 +15,17 @@
  ******************************************************************************/
 package org.vanilladb.core.storage.file;
 
+import static java.sql.Types.BIGINT;
+import static java.sql.Types.DOUBLE;
+import static java.sql.Types.INTEGER;
+
 import java.nio.BufferOverflowException;
 
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.file.io.IoAllocator;
 import org.vanilladb.core.storage.file.io.IoBuffer;
@@ -53,6 +60,14 @@ import org.vanilladb.core.util.CoreProperties;
  * p3.read(blk);
  * String s = (String) p3.getVal(20).asJavaVal();
  * </pre>
+ * 
+ * <p>
+ * The values are accessed at absolute offsets of the underlying
+ * {@link IoBuffer}, so the getters and setters need no lock of the page. Only
+ * the disk I/Os, which move the position of the buffer, are synchronized. A
+ * caller that reads a range while another thread writes it must coordinate
+ * by itself, as {@link org.vanilladb.core.storage.buffer.Buffer} does.
+ * </p>
  */
 
 public class Page {
@@ -89,7 +104,7 @@ public class Page {
 		return val.getType().isFixedSize() ? val.size() : ByteHelper.INT_SIZE + val.size();
 	}
 
-	private IoBuffer contents = IoAllocator.newIoBuffer(BLOCK_SIZE);
+	private IoBuffer contents;
 	private FileMgr fileMgr = VanillaDb.fileMgr();
 
 	/**
@@ -101,6 +116,18 @@ public class Page {
 	 * or {@link VanillaDb#initFileAndLogMgr(String)} is called first.
 	 */
 	public Page() {
+		this(IoAllocator.newIoBuffer(BLOCK_SIZE));
+	}
+
+	/**
+	 * Creates a new page over the specified buffer of a block size, such as a
+	 * frame allocated by {@link IoAllocator#newIoBuffers(int, int)}.
+	 * 
+	 * @param contents
+	 *            the buffer holding the contents of the page
+	 */
+	public Page(IoBuffer contents) {
+		this.contents = contents;
 	}
 
 	/**
@@ -123,6 +150,47 @@ public class Page {
 		fileMgr.write(blk, contents);
 	}
 
+	/**
+	 * Writes the contents of the specified pages to consecutive disk blocks,
+	 * starting from the specified one, by one I/O. Unlike {@link #write}, the
+	 * monitors of the pages are not taken, so the caller must make sure that
+	 * no other thread does I/O on them meanwhile, as
+	 * {@link org.vanilladb.core.storage.buffer.Buffer} does.
+	 * 
+	 * @param first
+	 *            the ID of the block to write the first page to
+	 * @param pages
+	 *            the pages, in the order of their blocks
+	 */
+	public static void write(BlockId first, Page[] pages) {
+		IoBuffer[] buffers = new IoBuffer[pages.length];
+		for (int i = 0; i < pages.length; i++)
+			buffers[i] = pages[i].contents;
+		VanillaDb.fileMgr().write(first, buffers);
+	}
+
+	/**
+	 * Copies the contents of the specified page into this page.
+	 * 
+	 * @param page
+	 *            the source page
+	 */
+	public void copyFrom(Page page) {
+		page.contents.copyTo(0, contents, 0, BLOCK_SIZE);
+	}
+
+	/**
+	 * Copies a block held by the specified I/O buffer into this page.
+	 * 
+	 * @param src
+	 *            the buffer holding the block
+	 * @param position
+	 *            the position of the block in the buffer
+	 */
+	void copyFrom(IoBuffer src, int position) {
+		src.copyTo(position, contents, 0, BLOCK_SIZE);
+	}
+
 	/**
 	 * Appends the contents of the page to the specified file.
 	 * 
@@ -138,6 +206,9 @@ public class Page {
 	/**
 	 * Returns the value at a specified offset of this page. If a constant was
 	 * not stored at that offset, the behavior of the method is unpredictable.
+	 * A variable-size value whose length does not fit in the page, e.g., one
+	 * read without a lock while it is being modified, is rejected before its
+	 * bytes are allocated.
 	 * 
 	 * @param offset
 	 *            the byte offset within the page
@@ -147,26 +218,64 @@ public class Page {
 	 * 
 	 * @return the constant value at that offset
 	 */
-	public synchronized Constant getVal(int offset, Type type) {
-		int size;
-		byte[] byteVal = null;
+	public Constant getVal(int offset, Type type) {
+		// Decode the numeric values without copying them out first
+		switch (type.getSqlType()) {
+		case INTEGER:
+			return new IntegerConstant(contents.getInt(offset));
+		case BIGINT:
+			return new BigIntConstant(contents.getLong(offset));
+		case DOUBLE:
+			return new DoubleConstant(contents.getDouble(offset));
+		}
 
-		// Check the length of bytes
+		int size;
 		if (type.isFixedSize()) {
 			size = type.maxSize();
 		} else {
-			byteVal = new byte[ByteHelper.INT_SIZE];
-			contents.get(offset, byteVal);
-			size = ByteHelper.toInteger(byteVal);
+			size = contents.getInt(offset);
 			offset += ByteHelper.INT_SIZE;
+			if (size < 0 || size > BLOCK_SIZE - offset)
+				throw new IndexOutOfBoundsException("bad length " + size + " at offset " + offset);
 		}
-
-		// Get bytes and translate it to Constant
-		byteVal = new byte[size];
+		byte[] byteVal = new byte[size];
 		contents.get(offset, byteVal);
 		return Constant.newInstance(type, byteVal);
 	}
 
+	/**
+	 * Returns the integer at the specified offset of this page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @return the integer at that offset
+	 */
+	public int getInt(int offset) {
+		return contents.getInt(offset);
+	}
+
+	/**
+	 * Returns the long integer at the specified offset of this page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @return the long integer at that offset
+	 */
+	public long getLong(int offset) {
+		return contents.getLong(offset);
+	}
+
+	/**
+	 * Returns the double at the specified offset of this page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @return the double at that offset
+	 */
+	public double getDouble(int offset) {
+		return contents.getDouble(offset);
+	}
+
 	/**
 	 * Writes a constant value to the specified offset on the page.
 	 * 
@@ -176,7 +285,19 @@ public class Page {
 	 * @param val
 	 *            the constant value to be written to the page
 	 */
-	public synchronized void setVal(int offset, Constant val) {
+	public void setVal(int offset, Constant val) {
+		switch (val.getType().getSqlType()) {
+		case INTEGER:
+			contents.putInt(offset, (Integer) val.asJavaVal());
+			return;
+		case BIGINT:
+			contents.putLong(offset, (Long) val.asJavaVal());
+			return;
+		case DOUBLE:
+			contents.putDouble(offset, (Double) val.asJavaVal());
+			return;
+		}
+
 		byte[] byteval = val.asBytes();
 
 		// Append the size of value if it is not fixed size
@@ -185,15 +306,66 @@ public class Page {
 			if (offset + ByteHelper.INT_SIZE + byteval.length > BLOCK_SIZE)
 				throw new BufferOverflowException();
 
-			byte[] sizeBytes = ByteHelper.toBytes(byteval.length);
-			contents.put(offset, sizeBytes);
-			offset += sizeBytes.length;
+			contents.putInt(offset, byteval.length);
+			offset += ByteHelper.INT_SIZE;
 		}
 
 		// Put bytes
 		contents.put(offset, byteval);
 	}
 
+	/**
+	 * Writes an integer to the specified offset on the page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param val
+	 *            the integer to be written
+	 */
+	public void setInt(int offset, int val) {
+		contents.putInt(offset, val);
+	}
+
+	/**
+	 * Writes a long integer to the specified offset on the page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param val
+	 *            the long integer to be written
+	 */
+	public void setLong(int offset, long val) {
+		contents.putLong(offset, val);
+	}
+
+	/**
+	 * Writes a double to the specified offset on the page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param val
+	 *            the double to be written
+	 */
+	public void setDouble(int offset, double val) {
+		contents.putDouble(offset, val);
+	}
+
+	/**
+	 * Writes the specified bytes to the page at the specified offset. The
+	 * bytes are copied as they are, so the caller is responsible for encoding
+	 * the values in the same format as {@link #setVal(int, Constant)}.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param bytes
+	 *            the bytes to be written
+	 */
+	public void setBytes(int offset, byte[] bytes) {
+		if (offset + bytes.length > BLOCK_SIZE)
+			throw new BufferOverflowException();
+		contents.put(offset, bytes);
+	}
+
 	/**
 	 * Close this page to release resources.
 	 */
@@ -20,6 +20,7 @@ import java.io.IOException;
 
 import org.vanilladb.core.storage.file.io.javanio.JavaNioByteBuffer;
 import org.vanilladb.core.storage.file.io.javanio.JavaNioFileChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioMappedChannel;
 import org.vanilladb.core.storage.file.io.jaydio.JaydioDirectByteBuffer;
 import org.vanilladb.core.storage.file.io.jaydio.JaydioDirectIoChannel;
 import org.vanilladb.core.util.CoreProperties;
@@ -27,10 +28,19 @@ import org.vanilladb.core.util.CoreProperties;
 public class IoAllocator {
 
 	private static boolean USE_O_DIRECT;
+	// The prefixes of the names of the files accessed through memory mapping
+	private static String[] MAPPED_FILES;
+	// The maximal size of an arena holding many buffers
+	private static int ARENA_SIZE;
 
 	static {
 		USE_O_DIRECT = CoreProperties.getLoader().getPropertyAsBoolean(
 				IoAllocator.class.getName() + ".USE_O_DIRECT", false);
+		String mapped = CoreProperties.getLoader().getPropertyAsString(
+				IoAllocator.class.getName() + ".MAPPED_FILES", "");
+		MAPPED_FILES = mapped.trim().isEmpty() ? new String[0] : mapped.trim().split("\\s*,\\s*");
+		ARENA_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+				IoAllocator.class.getName() + ".ARENA_SIZE", 1 << 30);
 	}
 
 	public static IoBuffer newIoBuffer(int capacity) {
@@ -40,10 +50,52 @@ public class IoAllocator {
 			return new JavaNioByteBuffer(capacity);
 	}
 
-	public static IoChannel newIoChannel(File file) throws IOException {
+	/**
+	 * Allocates the specified number of buffers of the same capacity, such as
+	 * the frames of a buffer pool. The java.nio buffers are slices of a few
+	 * arenas of at most {@code ARENA_SIZE} bytes, which are allocated at once.
+	 * The O_DIRECT buffers are still allocated one by one, since the jaydio
+	 * channel reads and writes whole aligned buffers only.
+	 * 
+	 * @param count
+	 *            the number of buffers
+	 * @param capacity
+	 *            the capacity of each buffer
+	 * @return the buffers
+	 */
+	public static IoBuffer[] newIoBuffers(int count, int capacity) {
+		if (USE_O_DIRECT) {
+			IoBuffer[] buffers = new IoBuffer[count];
+			for (int i = 0; i < count; i++)
+				buffers[i] = new JaydioDirectByteBuffer(capacity);
+			return buffers;
+		} else
+			return JavaNioByteBuffer.allocateSlices(count, capacity, ARENA_SIZE);
+	}
+
+	public static IoChannel newIoChannel(File file, boolean syncWrites) throws IOException {
+		if (isMapped(file.getName()))
+			return new JavaNioMappedChannel(file, syncWrites);
 		if (USE_O_DIRECT)
-			return new JaydioDirectIoChannel(file);
+			return new JaydioDirectIoChannel(file, syncWrites);
 		else
-			return new JavaNioFileChannel(file);
+			return new JavaNioFileChannel(file, syncWrites);
+	}
+
+	/**
+	 * Returns true if the specified file is configured to be accessed through
+	 * memory mapping, that is, its name starts with one of the comma-separated
+	 * prefixes of the {@code MAPPED_FILES} property (e.g.,
+	 * "item.tbl,idx_item" maps the item table and its index).
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return true if the file is mapped
+	 */
+	public static boolean isMapped(String fileName) {
+		for (String prefix : MAPPED_FILES)
+			if (fileName.startsWith(prefix))
+				return true;
+		return false;
 	}
 }
@@ -15,12 +15,52 @@
  ******************************************************************************/
 package org.vanilladb.core.storage.file.io;
 
+/**
+ * A fixed-size buffer used for the disk I/Os. All the accessors take an
+ * absolute position and leave the position of the buffer untouched, so that
+ * they can be called concurrently on disjoint ranges of the buffer. The
+ * multi-byte values are stored in the big-endian byte order.
+ */
 public interface IoBuffer {
 
 	IoBuffer get(int position, byte[] dst);
 
 	IoBuffer put(int position, byte[] src);
 
+	int getInt(int position);
+
+	long getLong(int position);
+
+	double getDouble(int position);
+
+	IoBuffer putInt(int position, int val);
+
+	IoBuffer putLong(int position, long val);
+
+	IoBuffer putDouble(int position, double val);
+
+	/**
+	 * Copies the bytes of this buffer in the specified range to another
+	 * buffer without going through an intermediate byte array.
+	 * 
+	 * @param position
+	 *            the position of the first byte to be copied
+	 * @param dst
+	 *            the destination buffer
+	 * @param dstPosition
+	 *            the position in the destination buffer
+	 * @param length
+	 *            the number of bytes to be copied
+	 */
+	void copyTo(int position, IoBuffer dst, int dstPosition, int length);
+
+	/**
+	 * Returns the number of bytes of this buffer.
+	 * 
+	 * @return the capacity of the buffer
+	 */
+	int capacity();
+
 	void clear();
 
 	void rewind();
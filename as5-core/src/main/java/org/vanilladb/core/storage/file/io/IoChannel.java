@@ -23,9 +23,13 @@ public interface IoChannel {
 	
 	int write(IoBuffer buffer, long position) throws IOException;
 	
+	long write(IoBuffer[] buffers, long position) throws IOException;
+	
 	long append(IoBuffer buffer) throws IOException;
 	
 	long size() throws IOException;
 	
+	void force() throws IOException;
+	
 	void close() throws IOException;
 }
@@ -26,21 +26,117 @@ public class JavaNioByteBuffer implements IoBuffer {
 	public JavaNioByteBuffer(int capacity) {
 		byteBuffer = ByteBuffer.allocateDirect(capacity);
 	}
+
+	/**
+	 * Wraps an existing byte buffer, such as a mapped region of a file.
+	 * 
+	 * @param byteBuffer
+	 *            the byte buffer to be wrapped
+	 */
+	JavaNioByteBuffer(ByteBuffer byteBuffer) {
+		this.byteBuffer = byteBuffer;
+	}
+	
+	/**
+	 * Allocates the specified number of buffers as slices of a few large
+	 * direct buffers, called arenas, instead of a direct buffer each.
+	 * 
+	 * @param count
+	 *            the number of buffers
+	 * @param capacity
+	 *            the capacity of each buffer
+	 * @param arenaSize
+	 *            the maximal size of an arena in bytes
+	 * @return the buffers, with the neighbors in the same arena
+	 */
+	public static JavaNioByteBuffer[] allocateSlices(int count, int capacity, int arenaSize) {
+		int perArena = Math.max(1, arenaSize / capacity);
+		JavaNioByteBuffer[] buffers = new JavaNioByteBuffer[count];
+		ByteBuffer arena = null;
+		for (int i = 0; i < count; i++) {
+			int slot = i % perArena;
+			if (slot == 0)
+				arena = ByteBuffer.allocateDirect(Math.min(perArena, count - i) * capacity);
+			arena.limit((slot + 1) * capacity);
+			arena.position(slot * capacity);
+			buffers[i] = new JavaNioByteBuffer(arena.slice());
+		}
+		return buffers;
+	}
 	
 	@Override
 	public IoBuffer get(int position, byte[] dst) {
-		byteBuffer.position(position);
-		byteBuffer.get(dst);
+		// Use the absolute accessors to leave the position untouched
+		for (int i = 0; i < dst.length; i++)
+			dst[i] = byteBuffer.get(position + i);
 		return this;
 	}
 
 	@Override
 	public IoBuffer put(int position, byte[] src) {
-		byteBuffer.position(position);
-		byteBuffer.put(src);
+		if (position < 0 || position + src.length > byteBuffer.capacity())
+			throw new IndexOutOfBoundsException();
+		for (int i = 0; i < src.length; i++)
+			byteBuffer.put(position + i, src[i]);
 		return this;
 	}
+
+	@Override
+	public int getInt(int position) {
+		return byteBuffer.getInt(position);
+	}
+
+	@Override
+	public long getLong(int position) {
+		return byteBuffer.getLong(position);
+	}
+
+	@Override
+	public double getDouble(int position) {
+		return byteBuffer.getDouble(position);
+	}
+
+	@Override
+	public IoBuffer putInt(int position, int val) {
+		byteBuffer.putInt(position, val);
+		return this;
+	}
+
+	@Override
+	public IoBuffer putLong(int position, long val) {
+		byteBuffer.putLong(position, val);
+		return this;
+	}
+
+	@Override
+	public IoBuffer putDouble(int position, double val) {
+		byteBuffer.putDouble(position, val);
+		return this;
+	}
+
+	@Override
+	public void copyTo(int position, IoBuffer dst, int dstPosition, int length) {
+		if (dst instanceof JavaNioByteBuffer) {
+			// Bulk copy between the views, which have their own positions
+			ByteBuffer src = byteBuffer.duplicate();
+			src.clear();
+			src.position(position).limit(position + length);
+			ByteBuffer target = ((JavaNioByteBuffer) dst).byteBuffer.duplicate();
+			target.clear();
+			target.position(dstPosition);
+			target.put(src);
+		} else {
+			byte[] bytes = new byte[length];
+			get(position, bytes);
+			dst.put(dstPosition, bytes);
+		}
+	}
 	
+	@Override
+	public int capacity() {
+		return byteBuffer.capacity();
+	}
+
 	@Override
 	public void clear() {
 		byteBuffer.clear();
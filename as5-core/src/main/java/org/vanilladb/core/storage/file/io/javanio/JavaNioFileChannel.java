@@ -18,6 +18,7 @@ package org.vanilladb.core.storage.file.io.javanio;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -32,9 +33,10 @@ public class JavaNioFileChannel implements IoChannel {
 	// Optimization: store the size of each table
 	private long fileSize;
 
-	public JavaNioFileChannel(File file) throws IOException {
+	public JavaNioFileChannel(File file, boolean syncWrites) throws IOException {
+		// "rws" makes every write synchronous to the storage device
 		@SuppressWarnings("resource")
-		RandomAccessFile f = new RandomAccessFile(file, "rws");
+		RandomAccessFile f = new RandomAccessFile(file, syncWrites ? "rws" : "rw");
 		fileChannel = f.getChannel();
 		fileSize = fileChannel.size();
 	}
@@ -67,6 +69,34 @@ public class JavaNioFileChannel implements IoChannel {
 		}
 	}
 
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		ByteBuffer[] srcs = new ByteBuffer[buffers.length];
+		long total = 0;
+		for (int i = 0; i < buffers.length; i++) {
+			srcs[i] = ((JavaNioByteBuffer) buffers[i]).getByteBuffer();
+			total += srcs[i].remaining();
+		}
+		
+		lock.writeLock().lock();
+		try {
+			// A gathering write goes to the position of the channel, which
+			// the positional reads and writes do not touch
+			fileChannel.position(position);
+			long writeSize = 0;
+			while (writeSize < total)
+				writeSize += fileChannel.write(srcs);
+			
+			// Check if we need to update the size
+			if (position + writeSize > fileSize)
+				fileSize = position + writeSize;
+			
+			return writeSize;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
 	@Override
 	public long append(IoBuffer buffer) throws IOException {
 		lock.writeLock().lock();
@@ -90,6 +120,16 @@ public class JavaNioFileChannel implements IoChannel {
 		}
 	}
 
+	@Override
+	public void force() throws IOException {
+		lock.readLock().lock();
+		try {
+			fileChannel.force(false);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		lock.writeLock().lock();
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.file.io.javanio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.file.io.IoBuffer;
+import org.vanilladb.core.storage.file.io.IoChannel;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A channel that accesses a file through memory-mapped segments of
+ * {@link #SEGMENT_SIZE} bytes, so that reading or writing a block is a copy
+ * between the page and the mapped memory instead of a system call.
+ * 
+ * <p>
+ * The mappings never go beyond the end of the file, since mapping a region
+ * past the end would extend the file. An append is thus written through the
+ * file channel, and the mapping of the last segment grows when the appended
+ * blocks are accessed. The blocks inside the file are written to the mapped
+ * memory under the shared lock, so writes to different blocks proceed in
+ * parallel. The operating system writes the mapped pages back by itself;
+ * {@link #force()}, which is called at checkpoints, makes them durable.
+ * </p>
+ */
+public class JavaNioMappedChannel implements IoChannel {
+
+	/**
+	 * The size of a mapped segment, rounded down to a multiple of the block
+	 * size.
+	 */
+	public static final int SEGMENT_SIZE;
+
+	static {
+		int size = CoreProperties.getLoader()
+				.getPropertyAsInteger(JavaNioMappedChannel.class.getName() + ".SEGMENT_SIZE", 64 * 1024 * 1024);
+		SEGMENT_SIZE = Math.max(1, size / Page.BLOCK_SIZE) * Page.BLOCK_SIZE;
+	}
+
+	private static class Segment {
+		MappedByteBuffer map;
+		JavaNioByteBuffer view;
+
+		Segment(MappedByteBuffer map) {
+			this.map = map;
+			this.view = new JavaNioByteBuffer(map);
+		}
+	}
+
+	private FileChannel fileChannel;
+	private boolean syncWrites;
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile Segment[] segments = new Segment[0];
+
+	// Optimization: store the size of each table
+	private volatile long fileSize;
+
+	public JavaNioMappedChannel(File file, boolean syncWrites) throws IOException {
+		@SuppressWarnings("resource")
+		RandomAccessFile f = new RandomAccessFile(file, syncWrites ? "rws" : "rw");
+		fileChannel = f.getChannel();
+		fileSize = fileChannel.size();
+		this.syncWrites = syncWrites;
+	}
+
+	@Override
+	public int read(IoBuffer buffer, long position) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (position >= fileSize)
+				return -1;
+			int length = (int) Math.min(buffer.capacity(), fileSize - position);
+
+			// Copy segment by segment, since the buffer may hold many blocks
+			int read = 0;
+			while (read < length) {
+				long pos = position + read;
+				int chunk = (int) Math.min(length - read, SEGMENT_SIZE - pos % SEGMENT_SIZE);
+				Segment seg = segment(pos, chunk);
+				seg.view.copyTo((int) (pos % SEGMENT_SIZE), buffer, read, chunk);
+				read += chunk;
+			}
+			return length;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int write(IoBuffer buffer, long position) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (position + Page.BLOCK_SIZE <= fileSize) {
+				Segment seg = segment(position, Page.BLOCK_SIZE);
+				buffer.copyTo(0, seg.view, (int) (position % SEGMENT_SIZE), Page.BLOCK_SIZE);
+				if (syncWrites)
+					seg.map.force();
+				return Page.BLOCK_SIZE;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// The block extends the file
+		lock.writeLock().lock();
+		try {
+			int writeSize = fileChannel.write(toByteBuffer(buffer), position);
+			if (position + writeSize > fileSize)
+				fileSize = position + writeSize;
+			return writeSize;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		// The writes to the mapped memory are copies anyway
+		long writeSize = 0;
+		for (IoBuffer buffer : buffers)
+			writeSize += write(buffer, position + writeSize);
+		return writeSize;
+	}
+
+	@Override
+	public long append(IoBuffer buffer) throws IOException {
+		lock.writeLock().lock();
+		try {
+			int appendSize = fileChannel.write(toByteBuffer(buffer), fileSize);
+			fileSize += appendSize;
+			return fileSize;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long size() throws IOException {
+		return fileSize;
+	}
+
+	@Override
+	public void force() throws IOException {
+		lock.readLock().lock();
+		try {
+			for (Segment seg : segments)
+				if (seg != null)
+					seg.map.force();
+			// The appended blocks are written through the channel
+			fileChannel.force(false);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			fileChannel.close();
+			// The regions are unmapped when the buffers are collected
+			segments = new Segment[0];
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the segment that maps the specified range, mapping it or
+	 * growing its mapping if needed. The range must not cross the end of the
+	 * file or the boundary of a segment.
+	 */
+	private Segment segment(long position, int length) throws IOException {
+		int index = (int) (position / SEGMENT_SIZE);
+		long end = position % SEGMENT_SIZE + length;
+		Segment[] segs = segments;
+		if (index < segs.length && segs[index] != null && segs[index].map.capacity() >= end)
+			return segs[index];
+
+		synchronized (this) {
+			segs = segments;
+			if (index < segs.length && segs[index] != null && segs[index].map.capacity() >= end)
+				return segs[index];
+
+			// Map as much of the segment as the file has now
+			long start = (long) index * SEGMENT_SIZE;
+			long size = Math.min(SEGMENT_SIZE, fileSize - start);
+			Segment seg = new Segment(fileChannel.map(MapMode.READ_WRITE, start, size));
+			Segment[] newSegs = segs;
+			if (index >= segs.length) {
+				newSegs = new Segment[index + 1];
+				System.arraycopy(segs, 0, newSegs, 0, segs.length);
+			} else {
+				newSegs = segs.clone();
+			}
+			newSegs[index] = seg;
+			segments = newSegs;
+			return seg;
+		}
+	}
+
+	private ByteBuffer toByteBuffer(IoBuffer buffer) {
+		if (buffer instanceof JavaNioByteBuffer)
+			return ((JavaNioByteBuffer) buffer).getByteBuffer();
+		byte[] bytes = new byte[Page.BLOCK_SIZE];
+		buffer.get(0, bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+}
@@ -15,35 +15,101 @@
  ******************************************************************************/
 package org.vanilladb.core.storage.file.io.jaydio;
 
+import java.nio.ByteOrder;
+
 import net.smacke.jaydio.DirectIoLib;
 import net.smacke.jaydio.buffer.AlignedDirectByteBuffer;
 
 import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.file.io.IoBuffer;
 
+import com.sun.jna.Pointer;
+
 public class JaydioDirectByteBuffer implements IoBuffer {
 
+	// The native memory is accessed in the native byte order
+	private static final boolean SWAP = ByteOrder.nativeOrder() != ByteOrder.BIG_ENDIAN;
+
 	private AlignedDirectByteBuffer byteBuffer;
+	private Pointer pointer;
 	
 	public JaydioDirectByteBuffer(int capacity) {
 		byteBuffer = AlignedDirectByteBuffer
 				.allocate(DirectIoLib.getLibForPath(FileMgr.DB_FILES_DIR), capacity);
+		pointer = byteBuffer.pointer();
 	}
 	
 	@Override
 	public IoBuffer get(int position, byte[] dst) {
-		byteBuffer.position(position);
-		byteBuffer.get(dst);
+		checkRange(position, dst.length);
+		pointer.read(position, dst, 0, dst.length);
 		return this;
 	}
 
 	@Override
 	public IoBuffer put(int position, byte[] src) {
-		byteBuffer.position(position);
-		byteBuffer.put(src);
+		checkRange(position, src.length);
+		pointer.write(position, src, 0, src.length);
+		return this;
+	}
+
+	@Override
+	public int getInt(int position) {
+		checkRange(position, Integer.BYTES);
+		int val = pointer.getInt(position);
+		return SWAP ? Integer.reverseBytes(val) : val;
+	}
+
+	@Override
+	public long getLong(int position) {
+		checkRange(position, Long.BYTES);
+		long val = pointer.getLong(position);
+		return SWAP ? Long.reverseBytes(val) : val;
+	}
+
+	@Override
+	public double getDouble(int position) {
+		return Double.longBitsToDouble(getLong(position));
+	}
+
+	@Override
+	public IoBuffer putInt(int position, int val) {
+		checkRange(position, Integer.BYTES);
+		pointer.setInt(position, SWAP ? Integer.reverseBytes(val) : val);
 		return this;
 	}
+
+	@Override
+	public IoBuffer putLong(int position, long val) {
+		checkRange(position, Long.BYTES);
+		pointer.setLong(position, SWAP ? Long.reverseBytes(val) : val);
+		return this;
+	}
+
+	@Override
+	public IoBuffer putDouble(int position, double val) {
+		return putLong(position, Double.doubleToRawLongBits(val));
+	}
+
+	@Override
+	public void copyTo(int position, IoBuffer dst, int dstPosition, int length) {
+		checkRange(position, length);
+		if (dst instanceof JaydioDirectByteBuffer) {
+			JaydioDirectByteBuffer target = (JaydioDirectByteBuffer) dst;
+			target.checkRange(dstPosition, length);
+			target.pointer.getByteBuffer(dstPosition, length).put(pointer.getByteBuffer(position, length));
+		} else {
+			byte[] bytes = new byte[length];
+			get(position, bytes);
+			dst.put(dstPosition, bytes);
+		}
+	}
 	
+	@Override
+	public int capacity() {
+		return byteBuffer.capacity();
+	}
+
 	@Override
 	public void clear() {
 		byteBuffer.clear();
@@ -62,4 +128,10 @@ public class JaydioDirectByteBuffer implements IoBuffer {
 	AlignedDirectByteBuffer getAlignedDirectByteBuffer() {
 		return byteBuffer;
 	}
+
+	private void checkRange(int position, int length) {
+		// The native memory is not bounds-checked by JNA
+		if (position < 0 || length < 0 || position + length > byteBuffer.capacity())
+			throw new IndexOutOfBoundsException();
+	}
 }
@@ -17,6 +17,8 @@ package org.vanilladb.core.storage.file.io.jaydio;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.vanilladb.core.storage.file.io.IoBuffer;
@@ -29,14 +31,21 @@ import net.smacke.jaydio.channel.DirectIoByteChannel;
 public class JaydioDirectIoChannel implements IoChannel {
 
 	private BufferedChannel<AlignedDirectByteBuffer> fileChannel;
+	// Jaydio has no fsync, so the file is forced through a separate channel
+	private FileChannel syncChannel;
+	private boolean syncWrites;
 	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
 	// Optimization: store the size of each table
 	private long fileSize;
 
-	public JaydioDirectIoChannel(File file) throws IOException {
+	public JaydioDirectIoChannel(File file, boolean syncWrites) throws IOException {
 		fileChannel = DirectIoByteChannel.getChannel(file, false);
 		fileSize = fileChannel.size();
+		@SuppressWarnings("resource")
+		RandomAccessFile f = new RandomAccessFile(file, "rw");
+		syncChannel = f.getChannel();
+		this.syncWrites = syncWrites;
 	}
 
 	@Override
@@ -61,12 +70,24 @@ public class JaydioDirectIoChannel implements IoChannel {
 			if (position + writeSize > fileSize)
 				fileSize = position + writeSize;
 
+			if (syncWrites)
+				syncChannel.force(false);
+
 			return writeSize;
 		} finally {
 			lock.writeLock().unlock();
 		}
 	}
 
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		// Direct I/O has no gathering write, so the buffers are written in turn
+		long writeSize = 0;
+		for (IoBuffer buffer : buffers)
+			writeSize += write(buffer, position + writeSize);
+		return writeSize;
+	}
+
 	@Override
 	public long append(IoBuffer buffer) throws IOException {
 		lock.writeLock().lock();
@@ -74,6 +95,10 @@ public class JaydioDirectIoChannel implements IoChannel {
 			JaydioDirectByteBuffer jaydioBuffer = (JaydioDirectByteBuffer) buffer;
 			int appendSize = fileChannel.write(jaydioBuffer.getAlignedDirectByteBuffer(), fileSize);
 			fileSize += appendSize;
+
+			if (syncWrites)
+				syncChannel.force(false);
+
 			return fileSize;
 		} finally {
 			lock.writeLock().unlock();
@@ -90,11 +115,22 @@ public class JaydioDirectIoChannel implements IoChannel {
 		}
 	}
 
+	@Override
+	public void force() throws IOException {
+		lock.readLock().lock();
+		try {
+			syncChannel.force(false);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		lock.writeLock().lock();
 		try {
 			fileChannel.close();
+			syncChannel.close();
 		} finally {
 			lock.writeLock().unlock();
 		}
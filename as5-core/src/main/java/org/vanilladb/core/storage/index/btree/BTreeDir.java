@@ -109,8 +109,21 @@ public class BTreeDir {
 		return new SearchKey(vals);
 	}
 
+	/**
+	 * Compares the key of the specified slot with the given key, without
+	 * creating the {@link SearchKey} of the slot.
+	 */
+	static int compareKey(BTreePage p, int slot, SearchKey key) {
+		for (int i = 0; i < key.length(); i++) {
+			int result = p.compareVal(slot, keyFieldName(i), key.get(i));
+			if (result != 0)
+				return result;
+		}
+		return 0;
+	}
+
 	static long getChildBlockNumber(BTreePage p, int slot) {
-		return (Long) p.getVal(slot, SCH_CHILD).asJavaVal();
+		return p.getLongVal(slot, SCH_CHILD);
 	}
 
 	private SearchKeyType keyType;
@@ -342,8 +355,7 @@ public class BTreeDir {
 
 		if (endSlot >= 0) {
 			while (middleSlot != startSlot) {
-				if (getKey(currentPage, middleSlot, keyType.length())
-						.compareTo(searchKey) < 0)
+				if (compareKey(currentPage, middleSlot, searchKey) < 0)
 					startSlot = middleSlot;
 				else
 					endSlot = middleSlot;
@@ -351,10 +363,9 @@ public class BTreeDir {
 				middleSlot = (startSlot + endSlot) / 2;
 			}
 
-			if (getKey(currentPage, endSlot, keyType.length()).compareTo(searchKey) < 0)
+			if (compareKey(currentPage, endSlot, searchKey) < 0)
 				return endSlot;
-			else if (getKey(currentPage, startSlot, keyType.length())
-					.compareTo(searchKey) < 0)
+			else if (compareKey(currentPage, startSlot, searchKey) < 0)
 				return startSlot;
 			else
 				return startSlot - 1;
@@ -128,9 +128,22 @@ public class BTreeLeaf {
 		return new SearchKey(vals);
 	}
 
+	/**
+	 * Compares the key of the specified slot with the given key, without
+	 * creating the {@link SearchKey} of the slot.
+	 */
+	static int compareKey(BTreePage p, int slot, SearchKey key) {
+		for (int i = 0; i < key.length(); i++) {
+			int result = p.compareVal(slot, keyFieldName(i), key.get(i));
+			if (result != 0)
+				return result;
+		}
+		return 0;
+	}
+
 	static RecordId getDataRecordId(BTreePage p, int slot, String dataFileName) {
-		long blkNum = (Long) p.getVal(slot, SCH_RID_BLOCK).asJavaVal();
-		int id = (Integer) p.getVal(slot, SCH_RID_ID).asJavaVal();
+		long blkNum = p.getLongVal(slot, SCH_RID_BLOCK);
+		int id = p.getIntVal(slot, SCH_RID_ID);
 		return new RecordId(new BlockId(dataFileName, blkNum), id);
 	}
 
@@ -436,8 +449,7 @@ public class BTreeLeaf {
 
 		if (endSlot >= 0) {
 			while (middleSlot != startSlot) {
-				if (searchMin.compareTo(
-						getKey(currentPage, middleSlot, keyType.length())) > 0)
+				if (compareKey(currentPage, middleSlot, searchMin) < 0)
 					startSlot = middleSlot;
 				else
 					endSlot = middleSlot;
@@ -445,11 +457,9 @@ public class BTreeLeaf {
 				middleSlot = (startSlot + endSlot) / 2;
 			}
 			
-			if (searchMin.compareTo(
-					getKey(currentPage, endSlot, keyType.length())) > 0)
+			if (compareKey(currentPage, endSlot, searchMin) < 0)
 				currentSlot = endSlot;
-			else if (searchMin.compareTo(
-					getKey(currentPage, startSlot, keyType.length())) > 0)
+			else if (compareKey(currentPage, startSlot, searchMin) < 0)
 				currentSlot = startSlot;
 			else
 				currentSlot = startSlot - 1;
@@ -157,7 +157,7 @@ public class BTreePage {
 	 * @return the i-th flag
 	 */
 	public long getFlag(int i) {
-		return (Long) getVal(Page.maxSize(INTEGER) + Page.maxSize(BIGINT) * i, BIGINT).asJavaVal();
+		return currentBuff.getLong(Page.maxSize(INTEGER) + Page.maxSize(BIGINT) * i);
 	}
 
 	/**
@@ -179,6 +179,56 @@ public class BTreePage {
 		return getVal(fieldPosition(slot, fldName), type);
 	}
 
+	/**
+	 * Returns the value of the specified INTEGER field without creating a
+	 * {@link Constant}.
+	 * 
+	 * @param slot
+	 *            the slot of the record
+	 * @param fldName
+	 *            the name of the field
+	 * @return the value of the field
+	 */
+	public int getIntVal(int slot, String fldName) {
+		return currentBuff.getInt(fieldPosition(slot, fldName));
+	}
+
+	/**
+	 * Returns the value of the specified BIGINT field without creating a
+	 * {@link Constant}.
+	 * 
+	 * @param slot
+	 *            the slot of the record
+	 * @param fldName
+	 *            the name of the field
+	 * @return the value of the field
+	 */
+	public long getLongVal(int slot, String fldName) {
+		return currentBuff.getLong(fieldPosition(slot, fldName));
+	}
+
+	/**
+	 * Compares the value of the specified field with the given value. The
+	 * integral values of the same type are compared in place.
+	 * 
+	 * @param slot
+	 *            the slot of the record
+	 * @param fldName
+	 *            the name of the field
+	 * @param val
+	 *            the value to be compared with
+	 * @return a negative integer, zero, or a positive integer as the value of
+	 *         the field is less than, equal to, or greater than the given value
+	 */
+	public int compareVal(int slot, String fldName, Constant val) {
+		Type type = schema.type(fldName);
+		if (type.getSqlType() == java.sql.Types.INTEGER && val instanceof IntegerConstant)
+			return Integer.compare(getIntVal(slot, fldName), (Integer) val.asJavaVal());
+		if (type.getSqlType() == java.sql.Types.BIGINT && val instanceof BigIntConstant)
+			return Long.compare(getLongVal(slot, fldName), (Long) val.asJavaVal());
+		return getVal(fieldPosition(slot, fldName), type).compareTo(val);
+	}
+
 	/**
 	 * Set the value of the specified field at the specified slot.
 	 * 
@@ -341,7 +391,7 @@ public class BTreePage {
 		// return (Integer) getVal(0, INTEGER).asJavaVal();
 		// Optimization:
 		if (numberOfRecords == -1)
-			numberOfRecords = (Integer) getVal(0, INTEGER).asJavaVal();
+			numberOfRecords = currentBuff.getInt(0);
 		return numberOfRecords;
 	}
 
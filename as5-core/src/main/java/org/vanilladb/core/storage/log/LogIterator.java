@@ -18,34 +18,56 @@ package org.vanilladb.core.storage.log;
 import static org.vanilladb.core.sql.Type.INTEGER;
 
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.BlockWindow;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.tx.recovery.ReversibleIterator;
+import org.vanilladb.core.util.CoreProperties;
 
 /**
  * A class that provides the ability to move through the records of the log file
- * in reverse order.
+ * in reverse order. The blocks are read {@link #READ_AHEAD_BLOCKS} at a time in
+ * the direction of the iteration, except the last block, which may still be
+ * appended to. A read never crosses the boundary of a log segment.
  */
 public class LogIterator implements ReversibleIterator<BasicLogRecord> {
+	/**
+	 * The number of log blocks read by a single I/O.
+	 */
+	public static final int READ_AHEAD_BLOCKS;
+
+	static {
+		READ_AHEAD_BLOCKS = CoreProperties.getLoader()
+				.getPropertyAsInteger(LogIterator.class.getName() + ".READ_AHEAD_BLOCKS", 8);
+	}
+
 	// Optimization: store the size of pointer to other log record
 	private int pointerSize = Page.maxSize(INTEGER);
-	private BlockId blk;
+	private LogMgr logMgr;
+	private long blk;
 	private Page pg = new Page();
 	private int currentRec;
-	private BlockId endBlk;
+	private long firstBlk, endBlk;
 	private boolean isForward = true;
+	private BlockWindow window;
 
 	/**
 	 * Creates an iterator for the records in the log file, positioned after the
 	 * last log record. This constructor is called exclusively by
 	 * {@link LogMgr#iterator()}.
 	 * 
-	 * @param blk
-	 *            the id of the last block of the log file
+	 * @param logMgr
+	 *            the log manager of the log file
+	 * @param firstBlk
+	 *            the number of the first block kept in the log
+	 * @param lastBlk
+	 *            the number of the last block of the log
 	 */
-	public LogIterator(BlockId blk) {
-		this.blk = this.endBlk = blk;
-		pg.read(blk);
-		currentRec = (Integer) pg.getVal(LogMgr.LAST_POS, INTEGER).asJavaVal();
+	LogIterator(LogMgr logMgr, long firstBlk, long lastBlk) {
+		this.logMgr = logMgr;
+		this.firstBlk = firstBlk;
+		this.blk = this.endBlk = lastBlk;
+		pg.read(logMgr.blockOf(blk));
+		currentRec = pg.getInt(LogMgr.LAST_POS);
 	}
 
 	/**
@@ -60,7 +82,7 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 			currentRec = currentRec - pointerSize;
 			isForward = true;
 		}
-		return currentRec > 0 || blk.number() > 0;
+		return currentRec > 0 || blk > firstBlk;
 	}
 
 	/**
@@ -78,8 +100,8 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 		}
 		if (currentRec == 0)
 			moveToNextBlock();
-		currentRec = (Integer) pg.getVal(currentRec, INTEGER).asJavaVal();
-		return new BasicLogRecord(pg, new LogSeqNum(blk.number(), currentRec + pointerSize * 2));
+		currentRec = pg.getInt(currentRec);
+		return new BasicLogRecord(pg, new LogSeqNum(blk, currentRec + pointerSize * 2));
 	}
 
 	@Override
@@ -93,9 +115,9 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 			currentRec = currentRec + pointerSize;
 			isForward = false;
 		}
-		return (blk.number() < endBlk.number())
-				|| (currentRec < (Integer) pg.getVal(LogMgr.LAST_POS, INTEGER).asJavaVal()
-						&& blk.number() <= endBlk.number());
+		return (blk < endBlk)
+				|| (currentRec < pg.getInt(LogMgr.LAST_POS)
+						&& blk <= endBlk);
 	}
 
 	@Override
@@ -105,11 +127,11 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 			isForward = false;
 		}
 		// if the currentRec point back to the front
-		if (currentRec > (Integer) pg.getVal(currentRec, INTEGER).asJavaVal())
+		if (currentRec > pg.getInt(currentRec))
 			moveToPrevBlock();
 
-		BasicLogRecord record = new BasicLogRecord(pg, new LogSeqNum(blk.number(), currentRec + pointerSize));
-		currentRec = (Integer) pg.getVal(currentRec, INTEGER).asJavaVal();
+		BasicLogRecord record = new BasicLogRecord(pg, new LogSeqNum(blk, currentRec + pointerSize));
+		currentRec = pg.getInt(currentRec);
 		return record;
 
 	}
@@ -119,9 +141,9 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 	 * last record in that block.
 	 */
 	private void moveToNextBlock() {
-		blk = new BlockId(blk.fileName(), blk.number() - 1);
-		pg.read(blk);
-		currentRec = (Integer) pg.getVal(LogMgr.LAST_POS, INTEGER).asJavaVal();
+		blk--;
+		readBlock(Math.max(logMgr.segmentStart(blk), blk - READ_AHEAD_BLOCKS + 1));
+		currentRec = pg.getInt(LogMgr.LAST_POS);
 	}
 
 	/**
@@ -129,8 +151,27 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 	 * the last record in that block.
 	 */
 	private void moveToPrevBlock() {
-		blk = new BlockId(blk.fileName(), blk.number() + 1);
-		pg.read(blk);
+		blk++;
+		readBlock(blk);
 		currentRec = 0 + pointerSize;
 	}
+
+	/**
+	 * Reads the current block into the page, through a window starting from
+	 * the specified block of the same segment if the window does not hold the
+	 * current block yet. The window reads no further than the end of the
+	 * segment file.
+	 */
+	private void readBlock(long windowStart) {
+		BlockId id = logMgr.blockOf(blk);
+		if (READ_AHEAD_BLOCKS <= 1 || blk >= endBlk) {
+			pg.read(id);
+			return;
+		}
+		if (window == null)
+			window = new BlockWindow(READ_AHEAD_BLOCKS);
+		if (!window.contains(id))
+			window.read(logMgr.blockOf(windowStart));
+		window.copyTo(id, pg);
+	}
 }
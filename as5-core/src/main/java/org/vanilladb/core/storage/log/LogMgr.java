@@ -18,17 +18,30 @@ package org.vanilladb.core.storage.log;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
+import java.nio.BufferOverflowException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.DurabilityMode;
 import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.tx.recovery.ReversibleIterator;
+import org.vanilladb.core.util.ByteHelper;
 import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.LongHistogram;
 
 /**
  * The low-level log manager. This log manager is responsible for writing log
@@ -36,6 +49,48 @@ import org.vanilladb.core.util.CoreProperties;
  * string values. The log manager does not understand the meaning of these
  * values, which are written and read by the
  * {@link org.vanilladb.core.storage.tx.recovery.RecoveryMgr recovery manager}.
+ * 
+ * <p>
+ * The log records are appended to a ring of log pages in memory. A dedicated
+ * log writer thread writes the filled pages to the log file in order, so the
+ * appenders never wait for disk I/O unless the whole ring is filled. A thread
+ * calling {@link #flush(LogSeqNum)} only waits until the writer has passed
+ * the requested LSN.
+ * </p>
+ * 
+ * <p>
+ * Appenders do not take a lock. Each one reserves the space of its record by
+ * a compare-and-set on the reservation state, which packs the block number,
+ * the next free position and the position of the last record in the block.
+ * The record is then encoded and copied into the reserved space in parallel
+ * with the other appenders. The filled watermark is published in the order of
+ * reservations, so it always marks a contiguous prefix of complete records
+ * that is safe to be written.
+ * </p>
+ * 
+ * <p>
+ * In the group-commit mode, the threads calling {@link #flush(LogSeqNum)}
+ * queue on the flushed-LSN watermark. The first one becomes the leader, which
+ * waits a short time for followers to join its batch and then asks the writer
+ * to write the log once for the whole batch.
+ * </p>
+ * 
+ * <p>
+ * A record can also be read by its LSN, e.g., when a transaction follows the
+ * chain of its own records to roll back. The log blocks read this way are
+ * kept in a small LRU cache, so the consecutive records of a transaction
+ * usually cost no I/O.
+ * </p>
+ * 
+ * <p>
+ * The log is split into segment files of {@link #SEGMENT_BLOCKS} blocks,
+ * named after the log file and the number of the segment. The block number of
+ * an LSN counts the blocks of all the segments, so it also tells the segment
+ * of the record. Once {@link #truncate(LogSeqNum)} is called with the oldest
+ * LSN still needed, a background cleaner deletes the segments before it, and
+ * keeps {@link #PRECREATED_SEGMENTS} empty segments created ahead of the one
+ * being appended to.
+ * </p>
  */
 public class LogMgr implements Iterable<BasicLogRecord> {
 	/**
@@ -45,21 +100,152 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	public static final int LAST_POS = 0;
 	public static final String DEFAULT_LOG_FILE;
 
+	/**
+	 * The number of blocks in a segment of the log.
+	 */
+	public static final int SEGMENT_BLOCKS;
+
+	/**
+	 * The number of empty segments created ahead of the segment being
+	 * appended to.
+	 */
+	public static final int PRECREATED_SEGMENTS;
+
+	private static final int LOG_BUFFER_SIZE;
+	private static final boolean GROUP_COMMIT;
+	private static final long GROUP_COMMIT_FLUSH_INTERVAL;
+	private static final long GROUP_COMMIT_MAX_DELAY;
+	private static final long ASYNC_COMMIT_WINDOW;
+	private static final int READ_CACHE_SIZE;
+	private static final boolean FORCE_LOG = FileMgr.DURABILITY_MODE == DurabilityMode.NORMAL;
+
+	// The layout of a packed state: | block number | position | last record |
+	private static final int POS_BITS = Integer.SIZE - Integer.numberOfLeadingZeros(BLOCK_SIZE);
+	private static final long POS_MASK = (1L << POS_BITS) - 1;
+
 	// Optimization: store the size of pointer to other log record
 	private int pointerSize = Page.maxSize(INTEGER);
-	private Page myPage = new Page();
-	private BlockId currentBlk;
-	private int currentPos;
-	private LogSeqNum lastLsn = LogSeqNum.DEFAULT_VALUE;
-	private LogSeqNum lastFlushedLsn = LogSeqNum.DEFAULT_VALUE;
+	private final Page[] ringPages;
+
+	// The space reserved by the appenders
+	private final AtomicLong reserved = new AtomicLong();
+	// The contiguous prefix of the reserved space that has been filled
+	private volatile long filled;
+
+	// The last filled block that has been written to the log file
+	private volatile long writtenBlk;
+	// Every byte before this position has been written to the log file
+	private LogSeqNum writtenPos;
+	// Every byte before this position has been written and forced to disk
+	private LogSeqNum flushedPos;
+	// The position that the writer is asked to write through
+	private LogSeqNum requestedPos = LogSeqNum.DEFAULT_VALUE;
+	private boolean writing;
+	private final Page writePage = new Page();
 
 	private final Lock logMgrLock = new ReentrantLock();
+	private final Condition writerCond = logMgrLock.newCondition();
+	private final Condition flushedCond = logMgrLock.newCondition();
+
+	// Segments
+	private final int segmentBlocks;
+	// The first block kept in the log, which starts a segment
+	private volatile long firstBlk;
+	// The segments before the one of this block are no longer needed
+	private long truncateBlk;
+	// The last segment that has been created
+	private long lastCreatedSeg = -1;
+	private boolean cleaning;
+	private final Condition cleanerCond = logMgrLock.newCondition();
+
+	// Group commit
+	private final boolean groupCommit;
+	private boolean hasBatchLeader;
+	private final TreeMap<LogSeqNum, Integer> batchWaiters = new TreeMap<LogSeqNum, Integer>();
+	private long lastFlushTime = System.nanoTime();
+	private final LongHistogram batchSizes = new LongHistogram("log flush batch size");
+
+	// Asynchronous commit
+	private volatile boolean asyncFlushPending;
+	private long asyncFlushDeadline;
+
+	// The log blocks read by LSN, in the LRU order
+	private final Map<Long, CachedBlock> readCache = new LinkedHashMap<Long, CachedBlock>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, CachedBlock> eldest) {
+			if (size() <= READ_CACHE_SIZE)
+				return false;
+			eldest.getValue().page.close();
+			return true;
+		}
+	};
+
+	private static class CachedBlock {
+		Page page = new Page();
+		// The records before this position are in the page
+		int limit;
+	}
 
 	static {
 		DEFAULT_LOG_FILE = CoreProperties.getLoader().getPropertyAsString(LogMgr.class.getName() + ".LOG_FILE",
 				"vanilladb.log");
+		LOG_BUFFER_SIZE = Math.max(2, CoreProperties.getLoader()
+				.getPropertyAsInteger(LogMgr.class.getName() + ".LOG_BUFFER_SIZE", 8));
+		GROUP_COMMIT = CoreProperties.getLoader().getPropertyAsBoolean(LogMgr.class.getName() + ".GROUP_COMMIT",
+				false);
+		// The intervals are in microseconds
+		GROUP_COMMIT_FLUSH_INTERVAL = TimeUnit.MICROSECONDS.toNanos(CoreProperties.getLoader()
+				.getPropertyAsLong(LogMgr.class.getName() + ".GROUP_COMMIT_FLUSH_INTERVAL", 1000));
+		GROUP_COMMIT_MAX_DELAY = TimeUnit.MICROSECONDS.toNanos(CoreProperties.getLoader()
+				.getPropertyAsLong(LogMgr.class.getName() + ".GROUP_COMMIT_MAX_DELAY", 2000));
+		// The window is in milliseconds
+		ASYNC_COMMIT_WINDOW = TimeUnit.MILLISECONDS.toNanos(CoreProperties.getLoader()
+				.getPropertyAsLong(LogMgr.class.getName() + ".ASYNC_COMMIT_WINDOW", 10));
+		READ_CACHE_SIZE = Math.max(1, CoreProperties.getLoader()
+				.getPropertyAsInteger(LogMgr.class.getName() + ".READ_CACHE_SIZE", 32));
+		SEGMENT_BLOCKS = Math.max(2, CoreProperties.getLoader()
+				.getPropertyAsInteger(LogMgr.class.getName() + ".SEGMENT_BLOCKS", 4096));
+		PRECREATED_SEGMENTS = Math.max(0, CoreProperties.getLoader()
+				.getPropertyAsInteger(LogMgr.class.getName() + ".PRECREATED_SEGMENTS", 2));
 	}
-	
+
+	/**
+	 * Returns the name of the file of the specified segment of a log.
+	 * 
+	 * @param logFile
+	 *            the name of the log
+	 * @param segment
+	 *            the number of the segment
+	 * @return the name of the segment file
+	 */
+	public static String segmentFileName(String logFile, long segment) {
+		return logFile + "." + segment;
+	}
+
+	/**
+	 * Returns the numbers of the existing segments of the specified log in
+	 * ascending order, including the empty ones created ahead.
+	 * 
+	 * @param logFile
+	 *            the name of the log
+	 * @return the numbers of the segments
+	 */
+	public static List<Long> segmentsOf(String logFile) {
+		String prefix = logFile + ".";
+		List<Long> segments = new ArrayList<Long>();
+		for (String fileName : VanillaDb.fileMgr().listFiles(prefix)) {
+			try {
+				segments.add(Long.parseLong(fileName.substring(prefix.length())));
+			} catch (NumberFormatException e) {
+				// not a segment of this log
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
 	private String logFile;
 
 	/**
@@ -76,15 +262,52 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	}
 	
 	public LogMgr(String logFileName) {
+		this(logFileName, SEGMENT_BLOCKS, GROUP_COMMIT);
+	}
+
+	LogMgr(String logFileName, boolean groupCommit) {
+		this(logFileName, SEGMENT_BLOCKS, groupCommit);
+	}
+
+	LogMgr(String logFileName, int segmentBlocks) {
+		this(logFileName, segmentBlocks, GROUP_COMMIT);
+	}
+
+	LogMgr(String logFileName, int segmentBlocks, boolean groupCommit) {
 		logFile = logFileName;
-		long logsize = VanillaDb.fileMgr().size(logFile);
-		if (logsize == 0)
+		this.groupCommit = groupCommit;
+		this.segmentBlocks = segmentBlocks;
+		ringPages = new Page[LOG_BUFFER_SIZE];
+		for (int i = 0; i < ringPages.length; i++)
+			ringPages[i] = new Page();
+
+		// The log ends in the last non-empty segment
+		long blk = -1;
+		for (long seg : segmentsOf(logFile)) {
+			long size = VanillaDb.fileMgr().size(segmentFileName(logFile, seg));
+			if (size > 0) {
+				if (blk < 0)
+					firstBlk = seg * segmentBlocks;
+				blk = seg * segmentBlocks + size - 1;
+			}
+			lastCreatedSeg = seg;
+		}
+		if (blk < 0)
 			appendNewBlock();
 		else {
-			currentBlk = new BlockId(logFile, logsize - 1);
-			myPage.read(currentBlk);
-			currentPos = getLastRecordPosition() + pointerSize * 2;
+			Page page = ringPages[slotOf(blk)];
+			page.read(blockOf(blk));
+			int lastPos = page.getInt(LAST_POS);
+			resetState(blk, lastPos + pointerSize * 2, lastPos);
 		}
+		truncateBlk = firstBlk;
+
+		Thread writer = new Thread(new LogWriter(), "Log Writer");
+		writer.setDaemon(true);
+		writer.start();
+		Thread cleaner = new Thread(new SegmentCleaner(), "Log Segment Cleaner");
+		cleaner.setDaemon(true);
+		cleaner.start();
 	}
 
 	/**
@@ -97,13 +320,58 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	public void flush(LogSeqNum lsn) {
 		logMgrLock.lock();
 		try {
-			if (lsn.compareTo(lastFlushedLsn) >= 0)
-				flush();
+			if (isFlushed(lsn))
+				return;
+
+			if (groupCommit)
+				groupFlush(lsn);
+			else {
+				// The clamped position moves as the records are appended
+				while (!isFlushed(lsn)) {
+					requestWrite(clamp(lsn));
+					flushedCond.awaitUninterruptibly();
+				}
+			}
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Ensures that the log records corresponding to the specified LSN will be
+	 * written to disk within the asynchronous commit window, without waiting
+	 * for the write.
+	 * 
+	 * @param lsn
+	 *            the LSN of a log record
+	 */
+	public void flushAsync(LogSeqNum lsn) {
+		// A pending deadline covers every record filled before it expires
+		if (asyncFlushPending)
+			return;
+
+		logMgrLock.lock();
+		try {
+			if (asyncFlushPending || isFlushed(lsn))
+				return;
+			asyncFlushPending = true;
+			asyncFlushDeadline = System.nanoTime() + ASYNC_COMMIT_WINDOW;
+			writerCond.signal();
 		} finally {
 			logMgrLock.unlock();
 		}
 	}
 
+	/**
+	 * Returns the distribution of the number of flush requests served by a
+	 * single write of the log page.
+	 * 
+	 * @return the histogram of batch sizes
+	 */
+	public LongHistogram batchSizes() {
+		return batchSizes;
+	}
+
 	/**
 	 * Returns an iterator for the log records, which will be returned in
 	 * reverse order starting with the most recent.
@@ -114,13 +382,56 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	public ReversibleIterator<BasicLogRecord> iterator() {
 		logMgrLock.lock();
 		try {
-			flush();
-			return new LogIterator(currentBlk);
+			// Write the last filled page, even if it has no record yet
+			LogSeqNum lastByte = lastFilledByte();
+			requestWrite(lastByte);
+			while (lastByte.compareTo(writtenPos) >= 0)
+				flushedCond.awaitUninterruptibly();
+			return new LogIterator(this, firstBlk, lastByte.blkNum());
 		} finally {
 			logMgrLock.unlock();
 		}
 	}
 
+	/**
+	 * Reads the log record of the specified LSN into the specified page. The
+	 * record is written to the log file first if it is still in memory.
+	 * 
+	 * @param lsn
+	 *            the LSN of a log record
+	 * @param page
+	 *            the page to hold the block of the record
+	 * @return the log record
+	 */
+	public BasicLogRecord read(LogSeqNum lsn, Page page) {
+		int limit;
+		logMgrLock.lock();
+		try {
+			while (lsn.compareTo(writtenPos) >= 0) {
+				requestWrite(lsn);
+				flushedCond.awaitUninterruptibly();
+			}
+			limit = writtenPos.blkNum() > lsn.blkNum() ? BLOCK_SIZE : (int) writtenPos.offset();
+		} finally {
+			logMgrLock.unlock();
+		}
+
+		synchronized (readCache) {
+			CachedBlock cached = readCache.get(lsn.blkNum());
+			if (cached == null) {
+				cached = new CachedBlock();
+				readCache.put(lsn.blkNum(), cached);
+			}
+			// Re-read the last block if the record was written after it
+			if (lsn.offset() >= cached.limit) {
+				cached.page.read(blockOf(lsn.blkNum()));
+				cached.limit = limit;
+			}
+			page.copyFrom(cached.page);
+		}
+		return new BasicLogRecord(page, lsn);
+	}
+
 	/**
 	 * Appends a log record to the file. The record contains an arbitrary array
 	 * of values. The method also writes an integer to the end of each log
@@ -133,126 +444,506 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 * @return the LSN of the log record
 	 */
 	public LogSeqNum append(Constant[] rec) {
-		logMgrLock.lock();
-		try {
-			// two integers that point to the previous and next log records
-			int recsize = pointerSize * 2;
-			for (Constant c : rec)
-				recsize += Page.size(c);
+		// two integers that point to the previous and next log records
+		int recsize = pointerSize * 2;
+		for (Constant c : rec)
+			recsize += Page.size(c);
+		if (pointerSize * 2 + recsize >= BLOCK_SIZE)
+			throw new BufferOverflowException();
+
+		// Reserve the space of the record
+		long start, end;
+		while (true) {
+			start = reserved.get();
+			int pos = posOf(start);
 
 			// if the log record doesn't fit, move to the next block
-			if (currentPos + recsize >= BLOCK_SIZE) {
-				flush();
-				appendNewBlock();
+			if (pos + recsize >= BLOCK_SIZE) {
+				if (reserved.compareAndSet(start, pack(blkOf(start) + 1, pointerSize * 2, 0)))
+					sealBlock(start);
+				continue;
+			}
+
+			end = pack(blkOf(start), pos + recsize, pos + recsize - pointerSize * 2);
+			if (reserved.compareAndSet(start, end))
+				break;
+		}
+		long blk = blkOf(start);
+		int pos = posOf(start);
+		waitForSlot(blk);
+
+		// Encode the values and the pointer to the previous record
+		byte[] bytes = new byte[recsize - pointerSize];
+		int offset = 0;
+		for (Constant c : rec) {
+			byte[] val = c.asBytes();
+			if (!c.getType().isFixedSize()) {
+				System.arraycopy(ByteHelper.toBytes(val.length), 0, bytes, offset, ByteHelper.INT_SIZE);
+				offset += ByteHelper.INT_SIZE;
+			}
+			System.arraycopy(val, 0, bytes, offset, val.length);
+			offset += val.length;
+		}
+		System.arraycopy(ByteHelper.toBytes(prevOf(start)), 0, bytes, offset, pointerSize);
+
+		// Copy the record into the page and link it to the previous one. The
+		// next pointer of this record is set by the next record, or by the
+		// one that writes the page if this record is the last one.
+		Page page = ringPages[slotOf(blk)];
+		page.setBytes(pos, bytes);
+		page.setInt(prevOf(start) + pointerSize, pos + recsize - pointerSize);
+
+		publish(start, end);
+		return new LogSeqNum(blk, pos);
+	}
+
+	/**
+	 * Returns a lower bound of the LSNs of the records to be appended. The
+	 * records appended so far have smaller LSNs.
+	 * 
+	 * @return the LSN of the next record, or a smaller one
+	 */
+	public LogSeqNum nextLsn() {
+		long state = reserved.get();
+		return new LogSeqNum(blkOf(state), posOf(state));
+	}
+
+	/**
+	 * Allows the segments that only hold the records before the specified LSN
+	 * to be recycled. The segment being appended to is always kept. An LSN
+	 * beyond the end of the log, e.g., one taken before the log was
+	 * recreated, is ignored.
+	 * 
+	 * @param lsn
+	 *            the oldest LSN still needed
+	 */
+	public void truncate(LogSeqNum lsn) {
+		logMgrLock.lock();
+		try {
+			if (lsn.blkNum() > truncateBlk && lsn.compareTo(nextLsn()) <= 0) {
+				truncateBlk = lsn.blkNum();
+				cleanerCond.signal();
 			}
-			
-			// Get the current LSN
-			LogSeqNum lsn = currentLSN();
-			
-			// Append a record
-			for (Constant c : rec)
-				appendVal(c);
-			finalizeRecord();
-			
-			// Remember this LSN
-			lastLsn = lsn;
-			
-			return lsn;
 		} finally {
 			logMgrLock.unlock();
 		}
 	}
 
 	/**
-	 * Remove the old log file and create a new one.
+	 * Remove the old log file and create a new one. This method should not be
+	 * called while other threads are appending log records.
 	 */
 	public void removeAndCreateNewLog() {
 		logMgrLock.lock();
 		try {
-			VanillaDb.fileMgr().delete(logFile);
+			// Let the writer finish the pages of the old log, and the cleaner
+			// its segments
+			while (writing || cleaning || writtenBlk < blkOf(filled) - 1)
+				flushedCond.awaitUninterruptibly();
+
+			for (long seg : segmentsOf(logFile))
+				VanillaDb.fileMgr().delete(segmentFileName(logFile, seg));
+			lastCreatedSeg = -1;
+			synchronized (readCache) {
+				for (CachedBlock cached : readCache.values())
+					cached.page.close();
+				readCache.clear();
+			}
 			
 			// Reset all the data
-			lastLsn = LogSeqNum.DEFAULT_VALUE;
-			lastFlushedLsn = LogSeqNum.DEFAULT_VALUE;
+			requestedPos = LogSeqNum.DEFAULT_VALUE;
 			
-			// 'myPage', 'currentBlk' and 'currentPos' are reset in this method
+			// The reservation state and the watermarks are reset in this
+			// method
 			appendNewBlock();
+			truncateBlk = firstBlk;
+			cleanerCond.signal();
+			
+			// Nothing is left to be flushed
+			batchWaiters.clear();
+			asyncFlushPending = false;
+			flushedCond.signalAll();
 		} finally {
 			logMgrLock.unlock();
 		}
 	}
 
 	/**
-	 * Adds the specified value to the page at the position denoted by
-	 * currentPos. Then increments currentPos by the size of the value.
+	 * Returns the ID of the specified block of the log, in the file of its
+	 * segment.
 	 * 
-	 * @param val
-	 *            the value to be added to the page
+	 * @param blk
+	 *            the block number counted over all the segments
+	 * @return the ID of the block in the segment file
+	 */
+	BlockId blockOf(long blk) {
+		return new BlockId(segmentFileName(logFile, segmentOf(blk)), blk % segmentBlocks);
+	}
+
+	/**
+	 * Returns the first block of the segment of the specified block.
 	 */
-	private void appendVal(Constant val) {
-		myPage.setVal(currentPos, val);
-		currentPos += Page.size(val);
+	long segmentStart(long blk) {
+		return blk - blk % segmentBlocks;
+	}
+
+	private long segmentOf(long blk) {
+		return blk / segmentBlocks;
 	}
 
 	/**
-	 * Returns the LSN of the most recent log record. As implemented, the LSN is
-	 * the block number and the offset in the block where the record is stored.
+	 * Waits until the log records up to the specified LSN have been written
+	 * to disk. If no other thread is leading a flush, the calling thread
+	 * becomes the leader. The leader waits until either the flush interval
+	 * since the previous write or the maximum batch delay has elapsed, so
+	 * that the followers arriving in the meantime can share the same write.
 	 * 
-	 * @return the LSN of the most recent log record
+	 * @param lsn
+	 *            the LSN of a log record
 	 */
-	private LogSeqNum currentLSN() {
-		return new LogSeqNum(currentBlk.number(), currentPos);
+	private void groupFlush(LogSeqNum lsn) {
+		LogSeqNum target = clamp(lsn);
+		Integer waiters = batchWaiters.get(target);
+		batchWaiters.put(target, waiters == null ? 1 : waiters + 1);
+
+		while (!isFlushed(lsn)) {
+			if (hasBatchLeader || clamp(lsn).compareTo(requestedPos) <= 0) {
+				flushedCond.awaitUninterruptibly();
+				continue;
+			}
+
+			// Lead this batch
+			hasBatchLeader = true;
+			try {
+				long delay = Math.min(GROUP_COMMIT_MAX_DELAY,
+						lastFlushTime + GROUP_COMMIT_FLUSH_INTERVAL - System.nanoTime());
+				while (delay > 0 && !isFlushed(lsn))
+					delay = flushedCond.awaitNanos(delay);
+			} catch (InterruptedException e) {
+				// Stop waiting for followers and write the page now
+				Thread.currentThread().interrupt();
+			} finally {
+				hasBatchLeader = false;
+			}
+
+			// Cover all the records filled by the batch
+			if (!isFlushed(lsn))
+				requestWrite(lastFilledByte());
+		}
+	}
+
+	/**
+	 * Checks if the log record of the specified LSN has been written to disk.
+	 * An LSN beyond the last appended record (e.g., the LSN of a page written
+	 * before the log was recreated) is covered once all the appended records
+	 * are written.
+	 */
+	private boolean isFlushed(LogSeqNum lsn) {
+		return clamp(lsn).compareTo(flushedPos) < 0;
+	}
+
+	private LogSeqNum clamp(LogSeqNum lsn) {
+		LogSeqNum lastByte = lastFilledByte();
+		return lsn.compareTo(lastByte) > 0 ? lastByte : lsn;
 	}
 
 	/**
-	 * Writes the current page to the log file.
+	 * Returns the position of the last byte of the filled records.
 	 */
-	private void flush() {
-		myPage.write(currentBlk);
-		lastFlushedLsn = lastLsn;
+	private LogSeqNum lastFilledByte() {
+		long state = filled;
+		return new LogSeqNum(blkOf(state), posOf(state) - 1);
 	}
 
 	/**
-	 * Clear the current page, and append it to the log file.
+	 * Asks the log writer to write the log through the specified position.
+	 */
+	private void requestWrite(LogSeqNum pos) {
+		if (pos.compareTo(requestedPos) > 0) {
+			requestedPos = pos;
+			writerCond.signal();
+		}
+	}
+
+	/**
+	 * Waits until the ring page for the specified block is no longer used by
+	 * an earlier block waiting for the writer.
+	 */
+	private void waitForSlot(long blk) {
+		if (blk - ringPages.length <= writtenBlk)
+			return;
+
+		logMgrLock.lock();
+		try {
+			while (blk - ringPages.length > writtenBlk)
+				flushedCond.awaitUninterruptibly();
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Publishes the filled record, after all the records reserved before it
+	 * have been published.
+	 */
+	private void publish(long start, long end) {
+		while (filled != start)
+			Thread.yield();
+		filled = end;
+	}
+
+	/**
+	 * Finishes the specified block when all its records have been filled,
+	 * and hands it over to the log writer. Only the appender that moved the
+	 * reservation to the next block calls this method.
+	 * 
+	 * @param last
+	 *            the final reservation state of the block
+	 */
+	private void sealBlock(long last) {
+		long blk = blkOf(last);
+		waitForSlot(blk);
+		while (filled != last)
+			Thread.yield();
+
+		// Terminate the pointer chains of the page
+		finalizePage(ringPages[slotOf(blk)], prevOf(last));
+
+		filled = pack(blk + 1, pointerSize * 2, 0);
+		logMgrLock.lock();
+		try {
+			writerCond.signal();
+			// Create more segments ahead
+			if (segmentStart(blk + 1) == blk + 1)
+				cleanerCond.signal();
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Clear a page, and write it as the first block of the first segment. The
+	 * log must be empty.
 	 */
 	private void appendNewBlock() {
-		setLastRecordPosition(0);
-		currentPos = pointerSize * 2;
-		currentBlk = myPage.append(logFile);
+		Page page = ringPages[slotOf(0)];
+		page.setInt(LAST_POS, 0);
+		page.write(blockOf(0));
+		firstBlk = 0;
+		resetState(0, pointerSize * 2, 0);
+	}
+
+	private void resetState(long blk, int pos, int lastPos) {
+		long state = pack(blk, pos, lastPos);
+		reserved.set(state);
+		filled = state;
+		writtenBlk = blk - 1;
+		writtenPos = flushedPos = new LogSeqNum(blk, pos);
 	}
 
 	/**
-	 * Sets up a circular chain of pointers to the records in the page. There is
-	 * an integer added to the end of each log record whose value is the offset
-	 * of the previous log record. The first four bytes of the page contain an
-	 * integer whose value is the offset of the integer for the last log record
-	 * in the page.
+	 * Sets the pointer to the last record in the page, and marks the next
+	 * pointer of that record as the end of the circular chain. The value of
+	 * the next pointer is the offset of the first next pointer.
 	 */
-	private void finalizeRecord() {
-		myPage.setVal(currentPos, new IntegerConstant(getLastRecordPosition()));
-		setPreviousNextRecordPosition(currentPos + pointerSize);
-		setLastRecordPosition(currentPos);
-		currentPos += pointerSize;
-		setNextRecordPosition(currentPos);
+	private void finalizePage(Page page, int lastPos) {
+		page.setInt(LAST_POS, lastPos);
+		if (lastPos != 0)
+			page.setInt(lastPos + pointerSize, LAST_POS + pointerSize);
+	}
+
+	private int slotOf(long blk) {
+		return (int) (blk % ringPages.length);
+	}
 
-		// leave for next pointer
-		currentPos += pointerSize;
+	private static long pack(long blk, int pos, int lastPos) {
+		return (blk << (POS_BITS * 2)) | ((long) pos << POS_BITS) | lastPos;
 	}
 
-	private int getLastRecordPosition() {
-		return (Integer) myPage.getVal(LAST_POS, INTEGER).asJavaVal();
+	private static long blkOf(long state) {
+		return state >>> (POS_BITS * 2);
 	}
 
-	private void setLastRecordPosition(int pos) {
-		myPage.setVal(LAST_POS, new IntegerConstant(pos));
+	private static int posOf(long state) {
+		return (int) ((state >>> POS_BITS) & POS_MASK);
 	}
 
-	private void setNextRecordPosition(int pos) {
-		myPage.setVal(pos, new IntegerConstant(LAST_POS + pointerSize));
+	private static int prevOf(long state) {
+		return (int) (state & POS_MASK);
 	}
 
-	private void setPreviousNextRecordPosition(int pos) {
-		int lastPos = (Integer) myPage.getVal(LAST_POS, INTEGER).asJavaVal();
-		myPage.setVal(lastPos + pointerSize, new IntegerConstant(pos));
+	/**
+	 * The log writer, which writes the filled pages of the ring in order, and
+	 * then a snapshot of the current page if a flush request is pending or the
+	 * window of asynchronous commits ends. In the {@link DurabilityMode#NORMAL
+	 * normal} durability mode, the log file is forced once the written pages
+	 * cover the pending request.
+	 */
+	private class LogWriter implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				Page page = null;
+				long blk = -1;
+				LogSeqNum pos;
+				long forcedSeg = 0;
+
+				logMgrLock.lock();
+				try {
+					while (true) {
+						long state = filled;
+						if (requestedPos.compareTo(flushedPos) >= 0 && requestedPos.compareTo(writtenPos) < 0) {
+							// The requested records have been written but not
+							// forced yet, possibly to more than one segment
+							pos = writtenPos;
+							forcedSeg = segmentOf(flushedPos.blkNum());
+							break;
+						}
+						if (writtenBlk < blkOf(state) - 1) {
+							// The oldest filled page
+							blk = writtenBlk + 1;
+							page = ringPages[slotOf(blk)];
+							pos = new LogSeqNum(blk, BLOCK_SIZE);
+							break;
+						}
+						if (requestedPos.compareTo(writtenPos) >= 0) {
+							// Copy the filled prefix so appenders can go on
+							blk = blkOf(state);
+							writePage.copyFrom(ringPages[slotOf(blk)]);
+							finalizePage(writePage, prevOf(state));
+							page = writePage;
+							pos = new LogSeqNum(blk, posOf(state));
+							break;
+						}
+						if (!asyncFlushPending) {
+							writerCond.awaitUninterruptibly();
+							continue;
+						}
+
+						// Flush the asynchronous commits when the window ends
+						long delay = asyncFlushDeadline - System.nanoTime();
+						if (delay > 0) {
+							try {
+								writerCond.awaitNanos(delay);
+							} catch (InterruptedException e) {
+								// check the deadline again
+							}
+						} else {
+							asyncFlushPending = false;
+							requestWrite(lastFilledByte());
+						}
+					}
+					writing = true;
+				} finally {
+					logMgrLock.unlock();
+				}
+
+				if (page != null)
+					page.write(blockOf(blk));
+				else
+					for (long seg = forcedSeg; seg <= segmentOf(pos.blkNum()); seg++)
+						VanillaDb.fileMgr().force(segmentFileName(logFile, seg));
+
+				logMgrLock.lock();
+				try {
+					writing = false;
+					if (page != null) {
+						if (page != writePage)
+							writtenBlk = blk;
+						if (pos.compareTo(writtenPos) > 0)
+							writtenPos = pos;
+						if (!FORCE_LOG)
+							advanceFlushedPos(writtenPos);
+					} else
+						advanceFlushedPos(pos);
+
+					flushedCond.signalAll();
+				} finally {
+					logMgrLock.unlock();
+				}
+			}
+		}
+
+		private void advanceFlushedPos(LogSeqNum pos) {
+			if (pos.compareTo(flushedPos) <= 0)
+				return;
+			flushedPos = pos;
+			lastFlushTime = System.nanoTime();
+
+			// Count the group flush requests served by this flush
+			if (groupCommit) {
+				int served = 0;
+				Map<LogSeqNum, Integer> head = batchWaiters.headMap(flushedPos);
+				for (Integer waiters : head.values())
+					served += waiters;
+				head.clear();
+				if (served > 0)
+					batchSizes.record(served);
+			}
+		}
+	}
+
+	/**
+	 * The segment cleaner, which deletes the segments no longer needed, and
+	 * creates the empty segments ahead of the one being appended to, so that
+	 * neither the appenders nor the log writer wait for the files.
+	 */
+	private class SegmentCleaner implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				long firstSeg, deleteTo, createTo;
+
+				logMgrLock.lock();
+				try {
+					while (true) {
+						long currentSeg = segmentOf(blkOf(reserved.get()));
+						firstSeg = segmentOf(firstBlk);
+						deleteTo = Math.min(segmentOf(truncateBlk), currentSeg);
+						createTo = currentSeg + PRECREATED_SEGMENTS;
+						if (deleteTo > firstSeg || createTo > lastCreatedSeg)
+							break;
+						cleanerCond.awaitUninterruptibly();
+					}
+
+					// Hide the deleted segments from the new readers first
+					if (deleteTo > firstSeg) {
+						firstBlk = deleteTo * segmentBlocks;
+						synchronized (readCache) {
+							Iterator<Map.Entry<Long, CachedBlock>> iter = readCache.entrySet().iterator();
+							while (iter.hasNext()) {
+								Map.Entry<Long, CachedBlock> entry = iter.next();
+								if (entry.getKey() < firstBlk) {
+									entry.getValue().page.close();
+									iter.remove();
+								}
+							}
+						}
+					}
+					cleaning = true;
+				} finally {
+					logMgrLock.unlock();
+				}
+
+				try {
+					for (long seg = firstSeg; seg < deleteTo; seg++)
+						VanillaDb.fileMgr().delete(segmentFileName(logFile, seg));
+					for (long seg = Math.max(lastCreatedSeg + 1, deleteTo); seg <= createTo; seg++) {
+						VanillaDb.fileMgr().create(segmentFileName(logFile, seg));
+						lastCreatedSeg = seg;
+					}
+				} finally {
+					logMgrLock.lock();
+					try {
+						cleaning = false;
+						flushedCond.signalAll();
+					} finally {
+						logMgrLock.unlock();
+					}
+				}
+			}
+		}
 	}
 }
@@ -30,8 +30,8 @@ public class LogSeqNum implements Comparable<LogSeqNum> {
 	private final int hashCode;
 
 	public static LogSeqNum readFromPage(Page page, int pos) {
-		long blkNum = (long) page.getVal(pos, Type.BIGINT).asJavaVal();
-		long offset = (long) page.getVal(pos + Type.BIGINT.maxSize(), Type.BIGINT).asJavaVal();
+		long blkNum = page.getLong(pos);
+		long offset = page.getLong(pos + Type.BIGINT.maxSize());
 
 		return new LogSeqNum(blkNum, offset);
 	}
@@ -62,8 +62,8 @@ public class LogSeqNum implements Comparable<LogSeqNum> {
 	}
 
 	public void writeToPage(Page page, int pos) {
-		page.setVal(pos, new BigIntConstant(blkNum));
-		page.setVal(pos + Type.BIGINT.maxSize(), new BigIntConstant(offset));
+		page.setLong(pos, blkNum);
+		page.setLong(pos + Type.BIGINT.maxSize(), offset);
 	}
 
 	@Override
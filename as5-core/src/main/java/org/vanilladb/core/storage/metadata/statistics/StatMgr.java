@@ -107,7 +107,15 @@ public class StatMgr {
 		return this.isRefreshStatOn;
 	}
 
-	protected synchronized void refreshStatistics(String tblName, Transaction tx) {
+	/**
+	 * Recalculates the statistics of the specified table by traversing it.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public synchronized void refreshStatistics(String tblName, Transaction tx) {
 		updateCounts.put(tblName, 0);
 
 		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
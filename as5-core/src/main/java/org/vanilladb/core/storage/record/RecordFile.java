@@ -21,6 +21,7 @@ import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.SchemaIncompatibleException;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.metadata.TableInfo;
@@ -49,6 +50,7 @@ public class RecordFile implements Record {
 	private FileHeaderPage fhp;
 	private long currentBlkNum;
 	private boolean doLog;
+	private BufferRing ring;
 
 	/**
 	 * Constructs an object to manage a file of records. If the file does not
@@ -72,6 +74,19 @@ public class RecordFile implements Record {
 		headerBlk = new BlockId(fileName, 0);
 	}
 
+	/**
+	 * Makes the data blocks of this file be read and appended through the
+	 * specified buffer ring. This should be set for a bulk sequential access,
+	 * e.g., a full scan of a large table, so that it does not evict the blocks
+	 * used by other transactions.
+	 * 
+	 * @param ring
+	 *            the buffer ring, or null to use the buffer pool as usual
+	 */
+	public void setBufferRing(BufferRing ring) {
+		this.ring = ring;
+	}
+
 	/**
 	 * Format the header of specified file.
 	 * 
@@ -372,7 +387,7 @@ public class RecordFile implements Record {
 			return false;
 		currentBlkNum = b;
 		BlockId blk = new BlockId(fileName, currentBlkNum);
-		rp = new RecordPage(blk, ti, tx, doLog);
+		rp = new RecordPage(blk, ti, tx, doLog, ring);
 		return true;
 	}
 
@@ -380,7 +395,7 @@ public class RecordFile implements Record {
 		if (!isTempTable())
 			tx.concurrencyMgr().modifyFile(fileName);
 		RecordFormatter fmtr = new RecordFormatter(ti);
-		Buffer buff = tx.bufferMgr().pinNew(fileName, fmtr);
+		Buffer buff = tx.bufferMgr().pinNew(fileName, fmtr, ring);
 		tx.bufferMgr().unpin(buff);
 		if (!isTempTable())
 			tx.concurrencyMgr().insertBlock(buff.block());
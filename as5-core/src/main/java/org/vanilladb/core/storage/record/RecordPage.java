@@ -28,6 +28,7 @@ import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferRing;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.log.LogSeqNum;
@@ -140,12 +141,32 @@ public class RecordPage implements Record {
 	 *            will it log the modification
 	 */
 	public RecordPage(BlockId blk, TableInfo ti, Transaction tx, boolean doLog) {
+		this(blk, ti, tx, doLog, null);
+	}
+
+	/**
+	 * Creates the record manager for the specified block, whose buffer is
+	 * taken from the specified ring if the block is not in the buffer pool.
+	 * The current record is set to be prior to the first one.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param ti
+	 *            the table's metadata
+	 * @param tx
+	 *            the transaction
+	 * @param doLog
+	 *            will it log the modification
+	 * @param ring
+	 *            the buffer ring of a bulk access, or null
+	 */
+	public RecordPage(BlockId blk, TableInfo ti, Transaction tx, boolean doLog, BufferRing ring) {
 		this.blk = blk;
 		this.tx = tx;
 		this.ti = ti;
 		this.doLog = doLog;
 		this.rec = null;
-		currentBuff = tx.bufferMgr().pin(blk);
+		currentBuff = tx.bufferMgr().pin(blk, ring);
 
 		// Optimization: Reduce the cost of prepare the schema information
 		Schema sch = ti.schema();
@@ -256,7 +277,7 @@ public class RecordPage implements Record {
 	 * @return true, if it succeed. If the slot has been occupied, return false.
 	 */
 	public boolean insertIntoTheCurrentSlot() {
-		if (!getVal(currentPos(), INTEGER).equals(EMPTY_CONST))
+		if (getFlag(currentPos()) != EMPTY)
 			return false;
 		
 		setVal(currentPos(), INUSE_CONST);
@@ -380,7 +401,7 @@ public class RecordPage implements Record {
 	private boolean searchFor(int flag) {
 		currentSlot++;
 		while (isValidSlot()) {
-			if ((Integer) getVal(currentPos(), INTEGER).asJavaVal() == flag) {
+			if (getFlag(currentPos()) == flag) {
 				return true;
 			}
 			currentSlot++;
@@ -403,6 +424,16 @@ public class RecordPage implements Record {
 		return currentBuff.getVal(offset, type);
 	}
 
+	private int getFlag(int offset) {
+		// Read the flag in place unless this transaction has modified it
+		Constant v = tx.getVal(this.blk, offset);
+		if (v != null)
+			return (Integer) v.asJavaVal();
+		if (!isTempTable())
+			tx.concurrencyMgr().readRecord(new RecordId(blk, currentSlot));
+		return currentBuff.getInt(offset);
+	}
+
 	private void setVal(int offset, Constant val) {
 //		System.out.println(" RecordPage - setShadowVal func ... ");
 		if (tx.isReadOnly() && !isTempTable())
@@ -49,6 +49,7 @@ public class Transaction {
 	private List<TransactionLifecycleListener> lifecycleListeners;
 	private long txNum;
 	private boolean readOnly;
+	private boolean asyncCommit;
 	// [TODO] HashMap
 	private ConcurrentHashMap<BlockId, Vector<Workspace>> workspace;
 
@@ -174,6 +175,24 @@ public class Transaction {
 		return this.readOnly;
 	}
 
+	/**
+	 * Sets whether the transaction commits asynchronously. An asynchronous
+	 * commit returns once the commit record is in the log buffer, without
+	 * waiting for it to be written to disk. The record is written by the log
+	 * writer within a bounded window, so the transaction may be lost if the
+	 * system crashes before that.
+	 * 
+	 * @param asyncCommit
+	 *            true to commit asynchronously
+	 */
+	public void setAsyncCommit(boolean asyncCommit) {
+		this.asyncCommit = asyncCommit;
+	}
+
+	public boolean isAsyncCommit() {
+		return this.asyncCommit;
+	}
+
 	public RecoveryMgr recoveryMgr() {
 		return recoveryMgr;
 	}
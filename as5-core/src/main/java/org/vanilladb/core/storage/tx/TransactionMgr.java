@@ -17,10 +17,10 @@ package org.vanilladb.core.storage.tx;
 
 import java.lang.reflect.Constructor;
 import java.sql.Connection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,7 +65,10 @@ public class TransactionMgr implements TransactionLifecycleListener {
 
 	// Old method for maintaining active transaction list
 	// When the above optimization ready, switch to that one
-	private Set<Long> activeTxs = new HashSet<Long>();
+	private Map<Long, Transaction> activeTxs = new HashMap<Long, Transaction>();
+	// The txs being created, with a lower bound of the LSNs of their start
+	// records
+	private Map<Long, LogSeqNum> startingTxs = new HashMap<Long, LogSeqNum>();
 
 	private long nextTxNum = 0;
 	// Optimization: Use separate lock for nextTxNum
@@ -117,47 +120,64 @@ public class TransactionMgr implements TransactionLifecycleListener {
 	}
 
 	/**
-	 * Creates non-quiescent checkpoint record.
+	 * Creates a fuzzy checkpoint. The active transactions and the dirty page
+	 * table of the buffer pool are taken without writing any page, and the
+	 * checkpoint record tells the recovery to redo the log from the earliest
+	 * change that might not be on disk. The transactions are blocked only
+	 * while the active ones are listed.
+	 * 
+	 * <p>
+	 * The log before the redo point is no longer needed, and is recycled. A
+	 * transaction that has logged its start record but is not active yet is
+	 * covered by the lower bound taken before its start record is appended.
+	 * </p>
 	 * 
 	 * @param checkpointTx
 	 *            the transaction that performs checkpointing
+	 * @return the redo point of the checkpoint
 	 */
-	public void createCheckpoint(Transaction checkpointTx) {
-		// stop access new tx request and find out active txs by using a write
-		// lock on threadTxNums
-		List<Long> txNums;
-		// for (Transaction tx : activeTxs)
-		// if (tx.getTransactionNumber() != checkpointTx
-		// .getTransactionNumber())
-		// txNums.add(tx.getTransactionNumber());
+	public LogSeqNum createCheckpoint(Transaction checkpointTx) {
+		// The records appended from now on are redone anyway
+		LogSeqNum redoLsn = VanillaDb.logMgr().nextLsn();
 
-		// activeTxsLock.writeLock().lock();
-		// try {
-		// for (Long l : threadTxNums) {
-		// if (l >= 0) {
-		// txNums.add(l);
-		// }
-		// }
-		//
-		// // flush all buffers
-		// // CT : Pick a tx and call its bufferMgr flushAll, or get
-		// // bufferPoolMgr (init it at VanillaDb)
-		// checkpointTx.bufferMgr().flushAll();
-		// // wrtie a checkpoint record and flush to disk
-		// LogSeqNum lsn = checkpointTx.recoveryMgr().checkpoint(txNums);
-		// VanillaDb.logMgr().flush(lsn);
-		// System.out.println("Chkpnt :" + txNums);
-		// } finally {
-		// activeTxsLock.writeLock().unlock();
-		// }
-
-		// Old method
+		List<Long> txNums;
 		synchronized (this) {
-			txNums = new LinkedList<Long>(activeTxs);
-			checkpointTx.bufferMgr().flushAll();
-			LogSeqNum lsn = checkpointTx.recoveryMgr().checkpoint(txNums);
-			VanillaDb.logMgr().flush(lsn);
+			txNums = new LinkedList<Long>(activeTxs.keySet());
+			// The txs left by an instant restart are still being rolled back
+			txNums.addAll(RecoveryMgr.undoingTxNums());
+			// An active tx may have logged changes not applied to the pages
+			// yet
+			for (Transaction tx : activeTxs.values()) {
+				LogSeqNum startLsn = tx.recoveryMgr().startLsn();
+				if (startLsn != null && startLsn.compareTo(redoLsn) < 0)
+					redoLsn = startLsn;
+			}
+			// So may a tx being created
+			for (Map.Entry<Long, LogSeqNum> entry : startingTxs.entrySet()) {
+				if (!txNums.contains(entry.getKey()))
+					txNums.add(entry.getKey());
+				if (entry.getValue().compareTo(redoLsn) < 0)
+					redoLsn = entry.getValue();
+			}
 		}
+
+		// The changes of the finished txs are either in the dirty pages, or
+		// written to the files
+		for (LogSeqNum recLsn : checkpointTx.bufferMgr().dirtyPageTable().values())
+			if (recLsn.compareTo(redoLsn) < 0)
+				redoLsn = recLsn;
+		VanillaDb.fileMgr().forceAll();
+
+		LogSeqNum lsn = checkpointTx.recoveryMgr().checkpoint(txNums, redoLsn);
+		VanillaDb.logMgr().flush(lsn);
+
+		// The txs being rolled back in the background may start anywhere
+		if (RecoveryMgr.undoingTxNums().isEmpty())
+			VanillaDb.logMgr().truncate(redoLsn);
+
+		// Remember the cached blocks for a warm restart
+		checkpointTx.bufferMgr().saveResidentBlocks();
+		return redoLsn;
 	}
 
 	public Transaction newTransaction(int isolationLevel, boolean readOnly) {
@@ -172,11 +192,22 @@ public class TransactionMgr implements TransactionLifecycleListener {
 
 	public Transaction newTransaction(int isolationLevel, boolean readOnly, long txNum) {
 		// Update next transaction number
+		skipTxNums(txNum);
+		return createTransaction(isolationLevel, readOnly, txNum);
+	}
+
+	/**
+	 * Makes the transactions created from now on numbered after the specified
+	 * one, e.g., when the log of the earlier transactions is kept.
+	 * 
+	 * @param txNum
+	 *            the last transaction number not to be reused
+	 */
+	public void skipTxNums(long txNum) {
 		synchronized (txNumLock) {
 			if (txNum >= nextTxNum)
 				nextTxNum = txNum + 1;
 		}
-		return createTransaction(isolationLevel, readOnly, txNum);
 	}
 
 	public long getNextTxNum() {
@@ -185,10 +216,37 @@ public class TransactionMgr implements TransactionLifecycleListener {
 		}
 	}
 
+	/**
+	 * Marks the specified transaction as being created. This must be called
+	 * before the start record of the transaction is appended, so that the
+	 * checkpoints taken before the transaction becomes active keep its log.
+	 * 
+	 * @param txNum
+	 *            the number of the transaction
+	 */
+	synchronized void txStarting(long txNum) {
+		startingTxs.put(txNum, VanillaDb.logMgr().nextLsn());
+	}
+
+	/**
+	 * Marks the specified transaction as active.
+	 * 
+	 * @param tx
+	 *            the transaction
+	 */
+	synchronized void txStarted(Transaction tx) {
+		activeTxs.put(tx.getTransactionNumber(), tx);
+		startingTxs.remove(tx.getTransactionNumber());
+	}
+
 	private Transaction createTransaction(int isolationLevel, boolean readOnly, long txNum) {
 		if (logger.isLoggable(Level.FINE))
 			logger.fine("new transaction: " + txNum);
 
+		// A read-only tx logs nothing
+		if (!readOnly)
+			txStarting(txNum);
+
 		// Create a recovery manager
 		RecoveryMgr recoveryMgr = null;
 		try {
@@ -239,6 +297,9 @@ public class TransactionMgr implements TransactionLifecycleListener {
 			}
 			break;
 		default:
+			synchronized (this) {
+				startingTxs.remove(txNum);
+			}
 			throw new UnsupportedOperationException("unsupported isolation level");
 		}
 
@@ -251,9 +312,7 @@ public class TransactionMgr implements TransactionLifecycleListener {
 		// activeTxsLock.readLock().unlock();
 		// }
 
-		synchronized (this) {
-			activeTxs.add(tx.getTransactionNumber());
-		}
+		txStarted(tx);
 		return tx;
 	}
 }
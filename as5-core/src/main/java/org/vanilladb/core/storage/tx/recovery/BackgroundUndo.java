@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+/**
+ * Rolls back the transactions left unfinished by an instant restart in the
+ * background, while new transactions are running.
+ * 
+ * <p>
+ * A system transaction first locks every block changed by those transactions
+ * exclusively, so a new transaction touching one of the blocks waits for the
+ * undo. The undo of a physical record only needs these locks. The undo of a
+ * logical record, e.g., the B-tree deletion undoing an index insertion, also
+ * locks blocks that were not locked in advance, such as the directory blocks
+ * of the index, and may wait for a new transaction holding one of them. If
+ * the wait times out, the undo is retried from the end of the log, where the
+ * compensation records tell which records have been undone. Once the undo
+ * completes, a rollback record is written for each of the transactions and
+ * the locks are released.
+ * </p>
+ * 
+ * <p>
+ * The statistics are built by the initialization of the system before the
+ * undo, and thus include the changes of the unfinished transactions. The
+ * statistics of the tables changed by them are recalculated after the undo.
+ * </p>
+ */
+class BackgroundUndo implements Runnable {
+	private static Logger logger = Logger.getLogger(BackgroundUndo.class.getName());
+
+	// The suffix of the file names of the tables, see TableInfo#fileName()
+	private static final String TBL_FILE_SUFFIX = ".tbl";
+
+	private final Set<Long> pendingTxs;
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private Transaction tx;
+	private ReversibleIterator<LogRecord> iter;
+	private final Set<String> changedTables = new HashSet<String>();
+
+	BackgroundUndo(Set<Long> txNums) {
+		pendingTxs = new HashSet<Long>(txNums);
+	}
+
+	/**
+	 * Locks the blocks changed by the unfinished transactions, and starts the
+	 * undo thread.
+	 */
+	void start() {
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		for (BlockId blk : changedBlocks()) {
+			tx.concurrencyMgr().modifyBlock(blk);
+			if (blk.fileName().endsWith(TBL_FILE_SUFFIX))
+				changedTables.add(blk.fileName().substring(0,
+						blk.fileName().length() - TBL_FILE_SUFFIX.length()));
+		}
+
+		// The records appended by the new transactions are not needed
+		iter = new LogRecordIterator();
+		Thread thread = new Thread(this, "Background Undo");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits until the undo finishes, whether it succeeds or not.
+	 */
+	void await() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	synchronized List<Long> pendingTxNums() {
+		return new ArrayList<Long>(pendingTxs);
+	}
+
+	@Override
+	public void run() {
+		long startTime = System.nanoTime();
+		try {
+			Set<Long> txNums = new HashSet<Long>(pendingTxNums());
+			while (true) {
+				try {
+					tx.recoveryMgr().undo(tx, iter, new HashSet<Long>(txNums), Integer.MAX_VALUE);
+					break;
+				} catch (LockAbortException e) {
+					// A logical undo waited too long for a new transaction.
+					// Keep the locks, and start over from the compensation
+					// records.
+					if (logger.isLoggable(Level.WARNING))
+						logger.warning("background undo timed out on a lock, retrying");
+					tx.recoveryMgr().resetUndo();
+					iter = new LogRecordIterator();
+				}
+			}
+
+			// Finish the transactions before they are dropped from the
+			// checkpoints
+			LogSeqNum lsn = null;
+			for (long txNum : txNums)
+				lsn = tx.recoveryMgr().logRollback(txNum);
+			if (lsn != null)
+				VanillaDb.logMgr().flush(lsn);
+			synchronized (this) {
+				pendingTxs.clear();
+			}
+			tx.commit();
+
+			if (logger.isLoggable(Level.INFO))
+				logger.info("rolled back " + txNums.size() + " unfinished transactions in the background in "
+						+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+			refreshStatistics();
+		} catch (RuntimeException e) {
+			// The rest is undone by the next restart
+			if (logger.isLoggable(Level.SEVERE))
+				logger.severe("background undo failed: " + e);
+			tx.rollback();
+		} finally {
+			finished.countDown();
+		}
+	}
+
+	/**
+	 * Recalculates the statistics of the tables changed by the unfinished
+	 * transactions, which were built before the undo.
+	 */
+	private void refreshStatistics() {
+		Transaction refreshTx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+		try {
+			for (String tblName : changedTables) {
+				// The table may be created by the transactions
+				if (VanillaDb.catalogMgr().getTableInfo(tblName, refreshTx) != null)
+					VanillaDb.statMgr().refreshStatistics(tblName, refreshTx);
+			}
+			refreshTx.commit();
+		} catch (RuntimeException e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("failed to refresh the statistics after the background undo: " + e);
+			refreshTx.rollback();
+		}
+	}
+
+	/**
+	 * Finds the blocks changed by the unfinished transactions, by iterating
+	 * the log backward until their start records.
+	 */
+	private Set<BlockId> changedBlocks() {
+		Set<Long> txNums = new HashSet<Long>(pendingTxNums());
+		Set<BlockId> blks = new HashSet<BlockId>();
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext() && !txNums.isEmpty()) {
+			LogRecord rec = iter.next();
+			if (!txNums.contains(rec.txNumber()))
+				continue;
+			if (rec.op() == OP_START)
+				txNums.remove(rec.txNumber());
+			else if (rec instanceof PageLogRecord)
+				blks.add(((PageLogRecord) rec).block());
+		}
+		return blks;
+	}
+}
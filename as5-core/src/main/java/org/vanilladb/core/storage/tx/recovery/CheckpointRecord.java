@@ -30,10 +30,13 @@ import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
- * The checkpoint log record.
+ * The checkpoint log record. Besides the active transactions, the record
+ * holds the LSN from which the recovery redoes the log, since the pages are
+ * not written at a checkpoint.
  */
 class CheckpointRecord implements LogRecord {
 	private List<Long> txNums;
+	private LogSeqNum redoLsn;
 	private LogSeqNum lsn;
 	/**
 	 * Creates a quiescent checkpoint record.
@@ -43,13 +46,28 @@ class CheckpointRecord implements LogRecord {
 	}
 
 	/**
-	 * Creates a non-quiescent checkpoint record.
+	 * Creates a non-quiescent checkpoint record, whose redo starts from the
+	 * record itself.
 	 */
 	public CheckpointRecord(List<Long> txNums) {
 		this.txNums = txNums;
 		
 	}
 
+	/**
+	 * Creates a non-quiescent checkpoint record.
+	 * 
+	 * @param txNums
+	 *            the active transactions
+	 * @param redoLsn
+	 *            the LSN from which the log must be redone, which is no
+	 *            larger than the recovery LSN of any dirty page
+	 */
+	public CheckpointRecord(List<Long> txNums, LogSeqNum redoLsn) {
+		this.txNums = txNums;
+		this.redoLsn = redoLsn;
+	}
+
 	/**
 	 * Creates a log record by reading no other values from the basic log
 	 * record.
@@ -64,19 +82,9 @@ class CheckpointRecord implements LogRecord {
 		for (int i = 0; i < txCount; i++) {
 			txNums.add((Long) rec.nextVal(BIGINT).asJavaVal());
 		}
-	}
-
-	/**
-	 * Writes a checkpoint record to the log. This log record contains the
-	 * {@link LogRecord#OP_CHECKPOINT} operator ID, number of active transctions
-	 * during checkpointing and a list of active transaction ids.
-	 * 
-	 * @return the LSN of the log record
-	 */
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+		long blkNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		long offset = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.redoLsn = new LogSeqNum(blkNum, offset);
 	}
 
 	@Override
@@ -121,13 +129,22 @@ class CheckpointRecord implements LogRecord {
 		if (txNums.size() > 0)
 			strbuf.delete(strbuf.length() - 1, strbuf.length());
 		
-		return strbuf.toString() + ">";
+		return strbuf.toString() + " " + redoLsn + ">";
 	}
 
 	public List<Long> activeTxNums() {
 		return this.txNums;
 	}
 
+	/**
+	 * Returns the LSN from which the log must be redone.
+	 * 
+	 * @return the redo LSN
+	 */
+	public LogSeqNum redoLsn() {
+		return redoLsn;
+	}
+
 	public boolean isContainTxNum(long txNum) {
 		return this.txNums.contains(txNum);
 	}
@@ -140,6 +157,11 @@ class CheckpointRecord implements LogRecord {
 		int recLength = txNums.size();
 		for (int i = 0; i < recLength; i++)
 			rec.add(new BigIntConstant(txNums.get(i)));
+		// Nothing before this record needs to be redone by default
+		if (redoLsn == null)
+			redoLsn = logMgr.nextLsn();
+		rec.add(new BigIntConstant(redoLsn.blkNum()));
+		rec.add(new BigIntConstant(redoLsn.offset()));
 		return rec;
 	}
 
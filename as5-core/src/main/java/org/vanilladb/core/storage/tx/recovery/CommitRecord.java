@@ -55,18 +55,6 @@ class CommitRecord implements LogRecord {
 		lsn = rec.getLSN();
 	}
 
-	/**
-	 * Writes a commit record to the log. This log record contains the
-	 * {@link LogRecord#OP_COMMIT} operator ID, followed by the transaction ID.
-	 * 
-	 * @return the LSN of the log record
-	 */
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_COMMIT;
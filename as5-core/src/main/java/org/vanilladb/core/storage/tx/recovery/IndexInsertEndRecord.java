@@ -80,12 +80,6 @@ public class IndexInsertEndRecord extends LogicalEndRecord implements LogRecord
 		lsn = rec.getLSN();
 	}
 
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_INDEX_FILE_INSERT_END;
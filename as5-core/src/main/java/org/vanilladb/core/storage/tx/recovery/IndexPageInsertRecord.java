@@ -37,7 +37,7 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
-public class IndexPageInsertRecord implements LogRecord {
+public class IndexPageInsertRecord implements PageLogRecord {
 	private long txNum;
 	private BlockId indexBlkId;
 	private int slotId;
@@ -74,13 +74,6 @@ public class IndexPageInsertRecord implements LogRecord {
 		lsn = rec.getLSN();
 	}
 
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-
-	}
-
 	@Override
 	public int op() {
 		return OP_INDEX_PAGE_INSERT;
@@ -174,4 +167,9 @@ public class IndexPageInsertRecord implements LogRecord {
 		return lsn;
 	}
 
+	@Override
+	public BlockId block() {
+		return indexBlkId;
+	}
+
 }
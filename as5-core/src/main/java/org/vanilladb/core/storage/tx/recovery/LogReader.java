@@ -33,11 +33,14 @@ import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_SET_VALUE;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_SET_VALUE_CLR;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
 
+import java.util.List;
+
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogMgr;
 import org.vanilladb.core.storage.log.LogSeqNum;
 
 public class LogReader {
@@ -46,20 +49,22 @@ public class LogReader {
 	// Page
 	private int pointerSize = Page.maxSize(Type.INTEGER);
 	private Page page = new Page();
-	private BlockId currentBlk;
+	private long currentBlk; // counted over all the segments
 	private int currentPos;
 
 	// Log File
-	private long fileSize; // number of blocks
+	private String logFileName;
 
 	// Log Record
 	private LogRecord currentRec;
 
 	public LogReader(String logFileName) {
-		fileSize = VanillaDb.fileMgr().size(logFileName);
-		currentBlk = new BlockId(logFileName, 0);
+		this.logFileName = logFileName;
+		List<Long> segments = LogMgr.segmentsOf(logFileName);
+		currentBlk = segments.isEmpty() ? 0 : segments.get(0) * LogMgr.SEGMENT_BLOCKS;
 		currentPos = pointerSize * 2; // point to first record
-		page.read(currentBlk);
+		if (hasBlock(currentBlk))
+			page.read(blockOf(currentBlk));
 	}
 
 	public boolean nextRecord() {
@@ -79,7 +84,7 @@ public class LogReader {
 
 		// get record
 		// TODO : Need to check currentPos type
-		currentRec = readRecord(new BasicLogRecord(page, new LogSeqNum(currentBlk.number(), currentPos)));
+		currentRec = readRecord(new BasicLogRecord(page, new LogSeqNum(currentBlk, currentPos)));
 		// move to next record position
 		int nextPos = (Integer) page.getVal(currentPos - pointerSize, Type.INTEGER).asJavaVal();
 		currentPos = nextPos + pointerSize;
@@ -94,6 +99,7 @@ public class LogReader {
 
 	private LogRecord readRecord(BasicLogRecord rec) {
 		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		LogRecordIterator.readPrevLsn(rec);
 		switch (op) {
 		case OP_CHECKPOINT:
 			return new CheckpointRecord(rec);
@@ -133,16 +139,23 @@ public class LogReader {
 	}
 
 	private void moveToNextBlock() {
-		BlockId nextBlk = new BlockId(currentBlk.fileName(), currentBlk.number() + 1);
-		page.read(nextBlk);
-		currentBlk = nextBlk;
+		currentBlk++;
+		page.read(blockOf(currentBlk));
 		currentPos = pointerSize * 2; // point to first record
 	}
 
 	private boolean hasNextBlock() {
-		if (currentBlk.number() < fileSize - 1)
-			return true;
-		return false;
+		return hasBlock(currentBlk + 1);
+	}
+
+	private boolean hasBlock(long blk) {
+		BlockId id = blockOf(blk);
+		return VanillaDb.fileMgr().exists(id.fileName()) && id.number() < VanillaDb.fileMgr().size(id.fileName());
+	}
+
+	private BlockId blockOf(long blk) {
+		return new BlockId(LogMgr.segmentFileName(logFileName, blk / LogMgr.SEGMENT_BLOCKS),
+				blk % LogMgr.SEGMENT_BLOCKS);
 	}
 
 	private boolean hasRecordInCurrentBlock() {
@@ -40,19 +40,13 @@ public interface LogRecord {
 
 	/**
 	 * Build the constants for the physical log record and return them as a
-	 * list.
+	 * list. When the record is written, the recovery manager inserts the LSN
+	 * of the previous record of the same transaction after the operation ID.
 	 * 
 	 * @return a list containing the constants for a log record
 	 */
 	List<Constant> buildRecord();
 
-	/**
-	 * Writes the record to the log and returns its LSN.
-	 * 
-	 * @return the LSN of the record in the log
-	 */
-	LogSeqNum writeToLog();
-
 	/**
 	 * Returns IDs used to distinguish different logged operations. Depending on
 	 * the type of value being set, the operation ID of the
@@ -15,6 +15,7 @@
  ******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
+import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
@@ -35,6 +36,7 @@ import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogSeqNum;
 
 /**
  * A class that provides the ability to read records from the log in reverse
@@ -53,7 +55,8 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 	/**
 	 * Constructs a log record from the values in the current basic log record.
 	 * The method first reads an integer, which denotes the type of the log
-	 * record. Based on that type, the method calls the appropriate LogRecord
+	 * record, and skips the LSN of the previous record of the transaction.
+	 * Based on that type, the method calls the appropriate LogRecord
 	 * constructor to read the remaining values.
 	 * 
 	 * @return the next log record, or null if no more records
@@ -63,42 +66,8 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 	public LogRecord next() {
 		BasicLogRecord rec = iter.next();
 		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
-		switch (op) {
-		case OP_CHECKPOINT:
-			return new CheckpointRecord(rec);
-		case OP_START:
-			return new StartRecord(rec);
-		case OP_COMMIT:
-			return new CommitRecord(rec);
-		case OP_ROLLBACK:
-			return new RollbackRecord(rec);
-		case OP_SET_VALUE:
-			return new SetValueRecord(rec);
-		case OP_LOGICAL_START:
-			return new LogicalStartRecord(rec);
-		case OP_LOGICAL_ABORT:
-			return new LogicalAbortRecord(rec);
-		case OP_RECORD_FILE_INSERT_END:
-			return new RecordFileInsertEndRecord(rec);
-		case OP_RECORD_FILE_DELETE_END:
-			return new RecordFileDeleteEndRecord(rec);
-		case OP_INDEX_FILE_INSERT_END:
-			return new IndexInsertEndRecord(rec);
-		case OP_INDEX_FILE_DELETE_END:
-			return new IndexDeleteEndRecord(rec);
-		case OP_INDEX_PAGE_INSERT:
-			return new IndexPageInsertRecord(rec);
-		case OP_INDEX_PAGE_DELETE:
-			return new IndexPageDeleteRecord(rec);
-		case OP_SET_VALUE_CLR:
-			return new SetValueClr(rec);
-		case OP_INDEX_PAGE_INSERT_CLR:
-			return new IndexPageInsertClr(rec);
-		case OP_INDEX_PAGE_DELETE_CLR:
-			return new IndexPageDeleteClr(rec);
-		default:
-			throw new UnsupportedOperationException();
-		}
+		readPrevLsn(rec);
+		return toLogRecord(op, rec);
 	}
 
 	@Override
@@ -115,6 +84,36 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 	public LogRecord previous() {
 		BasicLogRecord rec = iter.previous();
 		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		readPrevLsn(rec);
+		return toLogRecord(op, rec);
+	}
+
+	/**
+	 * Reads the LSN of the previous record of the same transaction, which
+	 * follows the operation ID of each log record.
+	 * 
+	 * @param rec
+	 *            the basic log record whose operation ID has been read
+	 * @return the LSN of the previous record, or
+	 *         {@link LogSeqNum#DEFAULT_VALUE} if there is none
+	 */
+	static LogSeqNum readPrevLsn(BasicLogRecord rec) {
+		long blkNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		long offset = (Long) rec.nextVal(BIGINT).asJavaVal();
+		return new LogSeqNum(blkNum, offset);
+	}
+
+	/**
+	 * Constructs a log record of the specified type from the remaining values
+	 * in the basic log record.
+	 * 
+	 * @param op
+	 *            the operation ID of the log record
+	 * @param rec
+	 *            the basic log record
+	 * @return the log record
+	 */
+	static LogRecord toLogRecord(int op, BasicLogRecord rec) {
 		switch (op) {
 		case OP_CHECKPOINT:
 			return new CheckpointRecord(rec);
@@ -44,12 +44,6 @@ public class LogicalAbortRecord extends LogicalEndRecord implements LogRecord {
 		lsn = rec.getLSN();
 	}
 
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_LOGICAL_ABORT;
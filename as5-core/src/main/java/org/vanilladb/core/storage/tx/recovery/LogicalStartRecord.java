@@ -51,12 +51,6 @@ public class LogicalStartRecord implements LogRecord {
 		return lsn;
 	}
 
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_LOGICAL_START;
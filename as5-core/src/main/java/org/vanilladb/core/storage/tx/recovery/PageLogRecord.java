@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * A log record whose redo only changes a single block. The redo of such
+ * records can be replayed in parallel as long as the records of the same
+ * block are replayed in the order of the log.
+ */
+interface PageLogRecord extends LogRecord {
+
+	/**
+	 * Returns the block changed by this log record.
+	 * 
+	 * @return the block changed by the record
+	 */
+	BlockId block();
+}
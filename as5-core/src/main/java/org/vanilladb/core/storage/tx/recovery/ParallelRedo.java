@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import java.sql.Connection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Replays the redo of the log records with a set of worker threads. Each
+ * {@link PageLogRecord} is dispatched to the worker owning the partition of
+ * its block, so the records of a block are replayed by the same worker in the
+ * order they are dispatched. The redo of the other records does not touch any
+ * page and is replayed in order by the dispatching thread.
+ * 
+ * <p>
+ * Each worker pins the blocks through its own read-only transaction, because
+ * the buffer manager of a transaction is not thread-safe.
+ * </p>
+ */
+class ParallelRedo {
+	private static final int QUEUE_SIZE = 1024;
+
+	// Marks the end of the records dispatched to a worker
+	private static final LogRecord END = new StartRecord(-1);
+
+	private final Transaction tx;
+	private final Worker[] workers;
+	private RuntimeException failure;
+
+	/**
+	 * Starts the specified number of workers.
+	 * 
+	 * @param tx
+	 *            the recovery transaction
+	 * @param numWorkers
+	 *            the number of worker threads
+	 */
+	ParallelRedo(Transaction tx, int numWorkers) {
+		this.tx = tx;
+		workers = new Worker[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Worker();
+			Thread thread = new Thread(workers[i], "Redo Worker-" + i);
+			thread.setDaemon(true);
+			workers[i].thread = thread;
+			thread.start();
+		}
+	}
+
+	/**
+	 * Replays the redo of the specified record, or dispatches it to the worker
+	 * of its block. The records must be passed in the order of the log.
+	 * 
+	 * @param rec
+	 *            the log record
+	 */
+	void redo(LogRecord rec) {
+		if (rec instanceof PageLogRecord) {
+			BlockId blk = ((PageLogRecord) rec).block();
+			workers[(blk.hashCode() & Integer.MAX_VALUE) % workers.length].put(rec);
+		} else
+			rec.redo(tx);
+	}
+
+	/**
+	 * Waits until the workers have replayed all the dispatched records, and
+	 * stops them. The first failure of the workers is thrown here.
+	 */
+	void finish() {
+		for (Worker w : workers)
+			w.put(END);
+
+		boolean interrupted = false;
+		for (Worker w : workers) {
+			while (w.thread.isAlive()) {
+				try {
+					w.thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			w.tx.commit();
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		synchronized (this) {
+			if (failure != null)
+				throw failure;
+		}
+	}
+
+	private synchronized boolean hasFailed() {
+		return failure != null;
+	}
+
+	private synchronized void fail(RuntimeException e) {
+		if (failure == null)
+			failure = e;
+	}
+
+	private class Worker implements Runnable {
+		private final BlockingQueue<LogRecord> queue = new ArrayBlockingQueue<LogRecord>(QUEUE_SIZE);
+		private final Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE,
+				true);
+		private Thread thread;
+
+		void put(LogRecord rec) {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					queue.put(rec);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				LogRecord rec;
+				try {
+					rec = queue.take();
+				} catch (InterruptedException e) {
+					continue;
+				}
+				if (rec == END)
+					return;
+
+				// Keep draining the queue after a failure
+				if (hasFailed())
+					continue;
+				try {
+					rec.redo(tx);
+				} catch (RuntimeException e) {
+					fail(e);
+				}
+			}
+		}
+	}
+}
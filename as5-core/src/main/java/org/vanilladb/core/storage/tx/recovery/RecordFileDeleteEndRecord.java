@@ -60,12 +60,6 @@ public class RecordFileDeleteEndRecord extends LogicalEndRecord implements LogRe
 		lsn = rec.getLSN();
 	}
 
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_RECORD_FILE_DELETE_END;
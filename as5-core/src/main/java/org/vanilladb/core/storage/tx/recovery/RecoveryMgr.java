@@ -20,13 +20,19 @@ import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROLLBACK;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
@@ -35,14 +41,47 @@ import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.util.CoreProperties;
 
 /**
  * The recovery manager. Each transaction has its own recovery manager.
+ * 
+ * <p>
+ * All the log records are written through a recovery manager, which links
+ * each record of its transaction to the previous one by storing the LSN of
+ * that record after the operation ID. A transaction is thus rolled back by
+ * following its own chain, without scanning the records of the others.
+ * </p>
  */
 public class RecoveryMgr implements TransactionLifecycleListener {
+	private static Logger logger = Logger.getLogger(RecoveryMgr.class.getName());
+
+	/**
+	 * The number of threads replaying the redo of the records of different
+	 * blocks in parallel during the recovery. The redo is replayed by the
+	 * recovering thread alone if this is 1.
+	 */
+	public static final int REDO_THREADS;
+
+	/**
+	 * Whether the system accepts new transactions right after the redo, and
+	 * undoes the unfinished transactions in the background. The statistics of
+	 * the tables changed by them are recalculated after the undo.
+	 */
+	public static final boolean INSTANT_RESTART;
+
+	static {
+		REDO_THREADS = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(RecoveryMgr.class.getName() + ".REDO_THREADS", 4));
+		INSTANT_RESTART = CoreProperties.getLoader()
+				.getPropertyAsBoolean(RecoveryMgr.class.getName() + ".INSTANT_RESTART", false);
+	}
 
 	private static boolean enableLogging = true;
 
+	// The unfinished transactions left by an instant restart
+	private static volatile BackgroundUndo backgroundUndo;
+
 	public static void enableLogging(boolean log) {
 		enableLogging = log;
 	}
@@ -53,21 +92,71 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 * log and flush it. This method should be called only during system
 	 * startup, before user transactions begin.
 	 * 
+	 * <p>
+	 * In the {@link #INSTANT_RESTART instant restart} mode, only the analysis
+	 * and the redo are done here. The log is kept, and the uncompleted
+	 * transactions are rolled back after {@link #startBackgroundUndo()} is
+	 * called.
+	 * </p>
+	 * 
 	 * @param tx
 	 *            the context of executing transaction
 	 */
 	public static void initializeSystem(Transaction tx) {
+		if (INSTANT_RESTART) {
+			tx.recoveryMgr().recoverSystemInstantly(tx);
+			return;
+		}
+
 		tx.recoveryMgr().recoverSystem(tx);
 		tx.bufferMgr().flushAll();
 		VanillaDb.logMgr().removeAndCreateNewLog();
 		
 		// Add a start record for this transaction
-		new StartRecord(tx.getTransactionNumber()).writeToLog();
+		RecoveryMgr recoveryMgr = tx.recoveryMgr();
+		recoveryMgr.lastLsn = null;
+		recoveryMgr.startLsn = recoveryMgr.append(new StartRecord(tx.getTransactionNumber()));
+	}
+
+	/**
+	 * Starts to roll back the transactions left unfinished by an instant
+	 * restart in the background. Before this method returns, a system
+	 * transaction locks all the blocks changed by those transactions, so a new
+	 * transaction waits if it touches one of them. This method should be
+	 * called after the initializing transaction ends, and before user
+	 * transactions begin.
+	 */
+	public static void startBackgroundUndo() {
+		BackgroundUndo undo = backgroundUndo;
+		if (undo != null)
+			undo.start();
+	}
+
+	/**
+	 * Returns the transactions left unfinished by an instant restart that have
+	 * not been rolled back yet. A checkpoint must list them as active.
+	 * 
+	 * @return the numbers of the transactions being rolled back
+	 */
+	public static List<Long> undoingTxNums() {
+		BackgroundUndo undo = backgroundUndo;
+		return undo == null ? Collections.<Long> emptyList() : undo.pendingTxNums();
+	}
+
+	/**
+	 * Waits until the background undo of an instant restart finishes.
+	 */
+	static void awaitBackgroundUndo() {
+		BackgroundUndo undo = backgroundUndo;
+		if (undo != null)
+			undo.await();
 	}
 
 	private Map<Long, LogSeqNum> txUnDoNextLSN = new HashMap<Long, LogSeqNum>();
 	private long txNum; // the owner id of this recovery manger
 	private LogSeqNum logicalStartLSN = null;
+	private LogSeqNum startLsn;
+	private LogSeqNum lastLsn;
 
 	/**
 	 * Creates a recovery manager for the specified transaction.
@@ -80,12 +169,26 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public RecoveryMgr(long txNum, boolean isReadOnly) {
 		this.txNum = txNum;
 		if (!isReadOnly && enableLogging)
-			new StartRecord(txNum).writeToLog();
+			startLsn = append(new StartRecord(txNum));
+	}
+
+	/**
+	 * Returns the LSN of the start record of the transaction. The changes of
+	 * the transaction are logged after this LSN, but they may be applied to
+	 * the pages much later.
+	 * 
+	 * @return the LSN of the start record, or null if the transaction logs
+	 *         nothing
+	 */
+	public LogSeqNum startLsn() {
+		return startLsn;
 	}
 
 	/**
 	 * Writes a commit record to the log, and then flushes the log record to
-	 * disk.
+	 * disk. If the transaction commits asynchronously, the log record is left
+	 * to the log writer instead. In both cases, the record is in the log
+	 * before the concurrency manager releases the locks.
 	 * 
 	 * @param tx
 	 *            the context of committing transaction
@@ -93,8 +196,11 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	@Override
 	public void onTxCommit(Transaction tx) {
 		if (!tx.isReadOnly() && enableLogging) {
-			LogSeqNum lsn = new CommitRecord(txNum).writeToLog();
-			VanillaDb.logMgr().flush(lsn);
+			LogSeqNum lsn = append(new CommitRecord(txNum));
+			if (tx.isAsyncCommit())
+				VanillaDb.logMgr().flushAsync(lsn);
+			else
+				VanillaDb.logMgr().flush(lsn);
 		}
 	}
 
@@ -106,11 +212,23 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public void onTxRollback(Transaction tx) {
 		if (!tx.isReadOnly() && enableLogging) {
 			rollback(tx);
-			LogSeqNum lsn = new RollbackRecord(txNum).writeToLog();
+			LogSeqNum lsn = append(new RollbackRecord(txNum));
 			VanillaDb.logMgr().flush(lsn);
 		}
 	}
 
+	/**
+	 * Writes a rollback record for a transaction whose changes have been
+	 * undone by the recovery.
+	 * 
+	 * @param txNum
+	 *            the number of the rolled back transaction
+	 * @return the LSN of the log record
+	 */
+	LogSeqNum logRollback(long txNum) {
+		return append(new RollbackRecord(txNum));
+	}
+
 	@Override
 	public void onTxEndStatement(Transaction tx) {
 		// do nothing
@@ -122,10 +240,12 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 * @param txNums
 	 *            the transactions that are being executed when writing the
 	 *            checkpoint.
+	 * @param redoLsn
+	 *            the LSN from which the log must be redone after a crash
 	 * @return the LSN of the log record.
 	 */
-	public LogSeqNum checkpoint(List<Long> txNums) {
-		return new CheckpointRecord(txNums).writeToLog();
+	public LogSeqNum checkpoint(List<Long> txNums, LogSeqNum redoLsn) {
+		return append(new CheckpointRecord(txNums, redoLsn));
 	}
 
 	/**
@@ -144,7 +264,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			BlockId blk = buff.block();
 			if (isTempBlock(blk))
 				return null;
-			return new SetValueRecord(txNum, blk, offset, buff.getVal(offset, newVal.getType()), newVal).writeToLog();
+			return append(new SetValueRecord(txNum, blk, offset, buff.getVal(offset, newVal.getType()), newVal));
 		} else
 			return null;
 	}
@@ -152,7 +272,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public LogSeqNum logLogicalStart() {
 		if (enableLogging) {
 			// Store logicalStartLSN inside the RecoveryMgr
-			this.logicalStartLSN = new LogicalStartRecord(txNum).writeToLog();
+			this.logicalStartLSN = append(new LogicalStartRecord(txNum));
 			return this.logicalStartLSN;
 		} else
 			return null;
@@ -171,7 +291,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 */
 	public LogSeqNum logLogicalAbort(long txNum, LogSeqNum undoNextLSN) {
 		if (enableLogging) {
-			return new LogicalAbortRecord(txNum, undoNextLSN).writeToLog();
+			return append(new LogicalAbortRecord(txNum, undoNextLSN));
 		} else
 			return null;
 	}
@@ -180,8 +300,8 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		if (enableLogging) {
 			if (this.logicalStartLSN == null)
 				throw new RuntimeException("Logical start LSN is null (in logRecordFileInsertionEnd)");
-			LogSeqNum lsn = new RecordFileInsertEndRecord(txNum, tblName, blkNum, slotId, this.logicalStartLSN)
-					.writeToLog();
+			LogSeqNum lsn = append(
+					new RecordFileInsertEndRecord(txNum, tblName, blkNum, slotId, this.logicalStartLSN));
 			this.logicalStartLSN = null;
 			return lsn;
 		} else
@@ -192,8 +312,8 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		if (enableLogging) {
 			if (this.logicalStartLSN == null)
 				throw new RuntimeException("Logical start LSN is null (in logRecordFileDeletionEnd)");
-			LogSeqNum lsn = new RecordFileDeleteEndRecord(txNum, tblName, blkNum, slotId, this.logicalStartLSN)
-					.writeToLog();
+			LogSeqNum lsn = append(
+					new RecordFileDeleteEndRecord(txNum, tblName, blkNum, slotId, this.logicalStartLSN));
 			this.logicalStartLSN = null;
 			return lsn;
 		} else
@@ -205,8 +325,8 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		if (enableLogging) {
 			if (this.logicalStartLSN == null)
 				throw new RuntimeException("Logical start LSN is null (in logIndexInsertionEnd)");
-			LogSeqNum lsn = new IndexInsertEndRecord(txNum, indexName, searchKey, recordBlockNum, recordSlotId,
-					this.logicalStartLSN).writeToLog();
+			LogSeqNum lsn = append(new IndexInsertEndRecord(txNum, indexName, searchKey, recordBlockNum,
+					recordSlotId, this.logicalStartLSN));
 			this.logicalStartLSN = null;
 			return lsn;
 		} else
@@ -217,8 +337,8 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		if (enableLogging) {
 			if (this.logicalStartLSN == null)
 				throw new RuntimeException("Logical start LSN is null (in logIndexDeletionEnd)");
-			LogSeqNum lsn = new IndexDeleteEndRecord(txNum, indexName, searchKey, recordBlockNum, recordSlotId,
-					this.logicalStartLSN).writeToLog();
+			LogSeqNum lsn = append(new IndexDeleteEndRecord(txNum, indexName, searchKey, recordBlockNum,
+					recordSlotId, this.logicalStartLSN));
 			this.logicalStartLSN = null;
 			return lsn;
 		} else
@@ -227,14 +347,14 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 
 	public LogSeqNum logIndexPageInsertion(BlockId indexBlkId, boolean isDirPage, SearchKeyType keyType, int slotId) {
 		if (enableLogging) {
-			return new IndexPageInsertRecord(txNum, indexBlkId, isDirPage, keyType, slotId).writeToLog();
+			return append(new IndexPageInsertRecord(txNum, indexBlkId, isDirPage, keyType, slotId));
 		} else
 			return null;
 	}
 
 	public LogSeqNum logIndexPageDeletion(BlockId indexBlkId, boolean isDirPage, SearchKeyType keyType, int slotId) {
 		if (enableLogging) {
-			return new IndexPageDeleteRecord(txNum, indexBlkId, isDirPage, keyType, slotId).writeToLog();
+			return append(new IndexPageDeleteRecord(txNum, indexBlkId, isDirPage, keyType, slotId));
 		} else
 			return null;
 	}
@@ -242,7 +362,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public LogSeqNum logIndexPageInsertionClr(long compTxNum, BlockId indexBlkId, boolean isDirPage,
 			SearchKeyType keyType, int slotId, LogSeqNum undoNextLSN) {
 		if (enableLogging) {
-			return new IndexPageInsertClr(compTxNum, indexBlkId, isDirPage, keyType, slotId, undoNextLSN).writeToLog();
+			return append(new IndexPageInsertClr(compTxNum, indexBlkId, isDirPage, keyType, slotId, undoNextLSN));
 		} else
 			return null;
 	}
@@ -250,7 +370,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public LogSeqNum logIndexPageDeletionClr(long compTxNum, BlockId indexBlkId, boolean isDirPage,
 			SearchKeyType keyType, int slotId, LogSeqNum undoNextLSN) {
 		if (enableLogging) {
-			return new IndexPageDeleteClr(compTxNum, indexBlkId, isDirPage, keyType, slotId, undoNextLSN).writeToLog();
+			return append(new IndexPageDeleteClr(compTxNum, indexBlkId, isDirPage, keyType, slotId, undoNextLSN));
 		} else
 			return null;
 	}
@@ -260,48 +380,36 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			BlockId blk = buff.block();
 			if (isTempBlock(blk))
 				return null;
-			return new SetValueClr(compTxNum, blk, offset, buff.getVal(offset, newVal.getType()), newVal, undoNextLSN)
-					.writeToLog();
+			return append(new SetValueClr(compTxNum, blk, offset, buff.getVal(offset, newVal.getType()), newVal,
+					undoNextLSN));
 		} else
 			return null;
 	}
 
 	/**
-	 * Rolls back the transaction. The method iterates through the log records,
-	 * calling {@link LogRecord#undo(Transaction)} for each log record it finds
-	 * for the transaction, until it finds the transaction's START record.
+	 * Rolls back the transaction. The method follows the chain of the log
+	 * records of the transaction from the last one, calling
+	 * {@link LogRecord#undo(Transaction)} for each record, until it finds the
+	 * transaction's START record. The records of a logical operation are
+	 * skipped once the operation has been undone as a whole.
 	 */
 	void rollback(Transaction tx) {
-		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
-		LogSeqNum txUnDoNextLSN = null;
-		while (iter.hasNext()) {
-			LogRecord rec = iter.next();
-			if (rec.txNumber() == txNum) {
-				if (txUnDoNextLSN != null) {
-					if (txUnDoNextLSN.compareTo(rec.getLSN()) != 1)
-						continue;
-				}
+		TxLogRecordIterator iter = new TxLogRecordIterator(lastLsn);
+		try {
+			while (iter.hasNext()) {
+				LogRecord rec = iter.next();
 				if (rec.op() == OP_START)
 					return;
-				else if (rec instanceof LogicalEndRecord) {
-
-					// Undo this Logical operation;
-					rec.undo(tx);
-					/*
-					 * Extract the logicalStartLSN form rec by casting it as a
-					 * LogicalEndRecord
-					 */
-					LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
-
-					/*
-					 * Save the Logical Start LSN to skip the log records
-					 * between the end record and the start record
-					 */
-					txUnDoNextLSN = logicalStartLSN;
-
-				} else
-					rec.undo(tx);
+				rec.undo(tx);
+				if (rec instanceof LogicalEndRecord) {
+					// Skip the records back to the logical start record
+					iter.skipTo(((LogicalEndRecord) rec).getlogicalStartLSN());
+					if (iter.hasNext())
+						iter.next();
+				}
 			}
+		} finally {
+			iter.close();
 		}
 	}
 
@@ -334,32 +442,80 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	}
 
 	/**
-	 * Does a complete database recovery. The method iterates through the log
-	 * records. Whenever it finds a log record for an unfinished transaction, it
-	 * calls {@link LogRecord#undo(Transaction)} on that record. The method
-	 * stops iterating forward when it encounters a CHECKPOINT record and finds
-	 * all the transactions which were executing when the checkpoint took place,
-	 * or when the end of the log is reached. The method then iterates backward
-	 * and redoes all finished transactions. TODO fix comments...
+	 * Does a complete database recovery. The method first analyzes the log
+	 * backward to the latest checkpoint to find the unfinished transactions,
+	 * then redoes the log forward from the redo LSN of the checkpoint, and
+	 * finally undoes the unfinished transactions by iterating the log backward
+	 * again.
 	 */
 	void recoverSystem(Transaction tx) {
+		recoverSystemPartially(tx, Integer.MAX_VALUE);
+	}
+
+	void recoverSystemPartially(Transaction tx, int stepsInUndo) {
 		Set<Long> finishedTxs = new HashSet<Long>();
 		Set<Long> unCompletedTxs = new HashSet<Long>();
-
-		List<Long> txsOnCheckpointing = null;
 		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		LogSeqNum redoLsn = analyze(iter, finishedTxs, unCompletedTxs);
+
 		/*
-		 * analyze phase: Find the earliest unfinished txNum
+		 * redo phase: Repeating History
 		 */
-		// analyze phase
+		redo(tx, iter, redoLsn);
+
+		// remove the recovery tx from unCompletedTxs set
+		unCompletedTxs.remove(tx.getTransactionNumber());
+
+		undo(tx, new LogRecordIterator(), unCompletedTxs, stepsInUndo);
+	}
+
+	/**
+	 * Recovers the database for an instant restart. Only the analysis and the
+	 * redo are done here, and the unfinished transactions are left to
+	 * {@link #startBackgroundUndo()}. The log is kept, so the transactions
+	 * created from now on are numbered after those in the log.
+	 */
+	void recoverSystemInstantly(Transaction tx) {
+		Set<Long> finishedTxs = new HashSet<Long>();
+		Set<Long> unCompletedTxs = new HashSet<Long>();
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		LogSeqNum redoLsn = analyze(iter, finishedTxs, unCompletedTxs);
+
+		long lastTxNum = tx.getTransactionNumber();
+		for (long txNum : finishedTxs)
+			lastTxNum = Math.max(lastTxNum, txNum);
+		for (long txNum : unCompletedTxs)
+			lastTxNum = Math.max(lastTxNum, txNum);
+		VanillaDb.txMgr().skipTxNums(lastTxNum);
+
+		redo(tx, iter, redoLsn);
+
+		unCompletedTxs.remove(tx.getTransactionNumber());
+		backgroundUndo = unCompletedTxs.isEmpty() ? null : new BackgroundUndo(unCompletedTxs);
+	}
+
+	/**
+	 * Analyzes the log backward from the end to the latest checkpoint, and
+	 * then moves the iterator back to the redo LSN of the checkpoint.
+	 * 
+	 * @param iter
+	 *            the iterator at the end of the log
+	 * @param finishedTxs
+	 *            the set to be filled with the finished transactions
+	 * @param unCompletedTxs
+	 *            the set to be filled with the unfinished transactions
+	 * @return the redo LSN, or null if the log has to be redone from the start
+	 */
+	private LogSeqNum analyze(ReversibleIterator<LogRecord> iter, Set<Long> finishedTxs, Set<Long> unCompletedTxs) {
+		LogSeqNum redoLsn = null;
 		while (iter.hasNext()) {
 			LogRecord rec = iter.next();
 
 			int op = rec.op();
 			if (op == OP_CHECKPOINT) {
-				// Since we flush all dirtyPage at checkpoint, therefore no need
+				// Since the checkpoint lists the active txs, therefore no need
 				// to find the start record of active txNum
-				txsOnCheckpointing = ((CheckpointRecord) rec).activeTxNums();
+				List<Long> txsOnCheckpointing = ((CheckpointRecord) rec).activeTxNums();
 				for (long acTxn : txsOnCheckpointing) {
 					// txNum give us info of possible unFinshedTxs,
 					// Check if those weren't in finishedTxs, and add it to the
@@ -367,7 +523,9 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 					if (!finishedTxs.contains(acTxn))
 						unCompletedTxs.add(acTxn);
 				}
-				// Start Redo From checkpoint
+				// Start Redo from the earliest change that might not be
+				// written when the checkpoint took place
+				redoLsn = ((CheckpointRecord) rec).redoLsn();
 				break;
 			}
 
@@ -378,33 +536,25 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			} else if (op == OP_START && !finishedTxs.contains(rec.txNumber())) {
 				unCompletedTxs.add(rec.txNumber());
 			}
-
-		}
-
-		finishedTxs = null;
-		/*
-		 * redo phase: Repeating History
-		 */
-
-		while (iter.hasPrevious()) {
-			LogRecord rec = iter.previous();
-
-			rec.redo(tx);
-
 		}
 
-		// remove the recovery tx from unCompletedTxs set
-		unCompletedTxs.remove(tx.getTransactionNumber());
-
-		iter = new LogRecordIterator();
-		/*
-		 * undo phase: undo all actions performed by the active txs during last
-		 * crash
-		 */
+		// The pages are not written at a checkpoint, so the redo may start
+		// before it
+		if (redoLsn != null)
+			while (iter.hasNext() && iter.next().getLSN().compareTo(redoLsn) >= 0)
+				;
+		return redoLsn;
+	}
 
-		while (iter.hasNext()) {
+	/**
+	 * Undoes the actions of the specified transactions by iterating the log
+	 * backward, until the start records of all of them are found or the
+	 * specified number of records have been visited.
+	 */
+	void undo(Transaction tx, ReversibleIterator<LogRecord> iter, Set<Long> unCompletedTxs, int stepsInUndo) {
+		while (iter.hasNext() && stepsInUndo >= 0 && !unCompletedTxs.isEmpty()) {
 			LogRecord rec = iter.next();
-
+			stepsInUndo--;
 			int op = rec.op();
 			if (!unCompletedTxs.contains(rec.txNumber()) || op == OP_COMMIT || op == OP_ROLLBACK)
 				continue;
@@ -412,7 +562,6 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			 * Use UnDoNextLSN to skip unnecessary physical record which have
 			 * been redo its undo by CLR or records have been rolled back
 			 */
-
 			if (txUnDoNextLSN.containsKey(rec.txNumber())) {
 				if (txUnDoNextLSN.get(rec.txNumber()).compareTo(rec.getLSN()) != 1)
 					continue;
@@ -420,128 +569,92 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			if (op == OP_START)
 				unCompletedTxs.remove(rec.txNumber());
 			else if (rec instanceof LogicalEndRecord) {
-
 				// Undo this Logical operation;
 				rec.undo(tx);
-				/*
-				 * Extract the logicalStartLSN form rec by casting it as a
-				 * LogicalEndRecord
-				 */
-				LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
-
 				/*
 				 * Save the Logical Start LSN to skip the log records between
 				 * the end record and the start record
 				 */
+				LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
 				txUnDoNextLSN.put(rec.txNumber(), logicalStartLSN);
-
 			} else if (rec instanceof CompesationLogRecord) {
-				/*
-				 * Extract the logicalStartLSN form rec by casting it as a
-				 * LogicalEndRecord
-				 */
-				LogSeqNum undoNextLSN = ((CompesationLogRecord) rec).getUndoNextLSN();
 				/*
 				 * Save the UndoNext LSN to skip the records have been rolled
 				 * back
 				 */
+				LogSeqNum undoNextLSN = ((CompesationLogRecord) rec).getUndoNextLSN();
 				txUnDoNextLSN.put(rec.txNumber(), undoNextLSN);
 			} else
 				rec.undo(tx);
-
-			if (unCompletedTxs.size() == 0)
-				break;
-
 		}
 	}
 
-	void recoverSystemPartially(Transaction tx, int stepsInUndo) {
-		Set<Long> finishedTxs = new HashSet<Long>();
-		Set<Long> unCompletedTxs = new HashSet<Long>();
-
-		List<Long> txsOnCheckpointing = null;
-		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
-		/*
-		 * analyze phase: Find the earliest unfinished txNum
-		 */
-		while (iter.hasNext()) {
-			LogRecord rec = iter.next();
+	/**
+	 * Forgets the progress of an interrupted undo. The progress is found again
+	 * from the compensation records when the log is iterated from its end.
+	 */
+	void resetUndo() {
+		txUnDoNextLSN.clear();
+	}
 
-			int op = rec.op();
-			if (op == OP_CHECKPOINT) {
-				txsOnCheckpointing = ((CheckpointRecord) rec).activeTxNums();
-				for (long acTxn : txsOnCheckpointing) {
+	/**
+	 * Redoes the records from the current position of the iterator to the end
+	 * of the log, skipping the records before the redo LSN. The records of
+	 * different blocks are redone in parallel by {@link #REDO_THREADS}
+	 * threads.
+	 */
+	private void redo(Transaction tx, ReversibleIterator<LogRecord> iter, LogSeqNum redoLsn) {
+		long startTime = System.nanoTime();
+		ParallelRedo parallelRedo = REDO_THREADS > 1 ? new ParallelRedo(tx, REDO_THREADS) : null;
+		LogSeqNum firstRedone = null, lastRedone = null;
+		int count = 0;
+		try {
+			while (iter.hasPrevious()) {
+				LogRecord rec = iter.previous();
+				if (redoLsn != null && rec.getLSN().compareTo(redoLsn) < 0)
+					continue;
 
-					if (!finishedTxs.contains(acTxn))
-						unCompletedTxs.add(acTxn);
-				}
-				break;
-			}
+				if (parallelRedo != null)
+					parallelRedo.redo(rec);
+				else
+					rec.redo(tx);
 
-			if (op == OP_COMMIT) {
-				finishedTxs.add(rec.txNumber());
-			} else if (op == OP_ROLLBACK) {
-				finishedTxs.add(rec.txNumber());
-			} else if (op == OP_START && !finishedTxs.contains(rec.txNumber())) {
-				unCompletedTxs.add(rec.txNumber());
+				if (firstRedone == null)
+					firstRedone = rec.getLSN();
+				lastRedone = rec.getLSN();
+				count++;
 			}
-
+		} finally {
+			if (parallelRedo != null)
+				parallelRedo.finish();
 		}
 
-		finishedTxs = null;
-		/*
-		 * redo phase: Repeating History
-		 */
-
-		while (iter.hasPrevious()) {
-			LogRecord rec = iter.previous();
-
-			rec.redo(tx);
-
+		if (logger.isLoggable(Level.INFO)) {
+			long blocks = count == 0 ? 0 : lastRedone.blkNum() - firstRedone.blkNum() + 1;
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			logger.info("redid " + count + " log records in " + blocks + " log blocks in " + elapsed + " ms with "
+					+ REDO_THREADS + " threads");
 		}
+	}
 
-		unCompletedTxs.remove(tx.getTransactionNumber());
-
-		iter = new LogRecordIterator();
-		/*
-		 * undo phase: undo all actions performed by the active txs during last
-		 * crash
-		 */
-
-		while (iter.hasNext() && stepsInUndo >= 0) {
-			LogRecord rec = iter.next();
-			// System.out.println(rec.getLSN() + rec.toString());
-			stepsInUndo--;
-			int op = rec.op();
-			if (!unCompletedTxs.contains(rec.txNumber()) || op == OP_COMMIT || op == OP_ROLLBACK)
-				continue;
-
-			if (txUnDoNextLSN.containsKey(rec.txNumber())) {
-				if (txUnDoNextLSN.get(rec.txNumber()).compareTo(rec.getLSN()) != 1)
-					continue;
-			}
-			if (op == OP_START)
-				unCompletedTxs.remove(rec.txNumber());
-			else if (rec instanceof LogicalEndRecord) {
-
-				rec.undo(tx);
-
-				LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
-
-				txUnDoNextLSN.put(rec.txNumber(), logicalStartLSN);
-
-			} else if (rec instanceof CompesationLogRecord) {
-
-				LogSeqNum undoNextLSN = ((CompesationLogRecord) rec).getUndoNextLSN();
-
-				txUnDoNextLSN.put(rec.txNumber(), undoNextLSN);
-			} else
-				rec.undo(tx);
-
-			if (unCompletedTxs.size() == 0)
-				break;
-
-		}
+	/**
+	 * Writes the specified record to the log. A record of the owner
+	 * transaction is linked to the previous one of the transaction.
+	 * 
+	 * @param rec
+	 *            the log record
+	 * @return the LSN of the log record
+	 */
+	private LogSeqNum append(LogRecord rec) {
+		boolean isOwner = rec.txNumber() == txNum;
+		LogSeqNum prevLsn = isOwner && lastLsn != null ? lastLsn : LogSeqNum.DEFAULT_VALUE;
+		List<Constant> vals = rec.buildRecord();
+		vals.addAll(1, Arrays.asList(new Constant[] { new BigIntConstant(prevLsn.blkNum()),
+				new BigIntConstant(prevLsn.offset()) }));
+		LogSeqNum lsn = VanillaDb.logMgr().append(vals.toArray(new Constant[vals.size()]));
+		if (isOwner)
+			lastLsn = lsn;
+		return lsn;
 	}
 
 	/**
@@ -56,19 +56,6 @@ class RollbackRecord implements LogRecord {
 		lsn = rec.getLSN();
 	}
 
-	/**
-	 * Writes a rollback record to the log. This log record contains the
-	 * {@link LogRecord#OP_ROLLBACK} operator ID, followed by the transaction
-	 * ID.
-	 * 
-	 * @return the LSN of the log record
-	 */
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_ROLLBACK;
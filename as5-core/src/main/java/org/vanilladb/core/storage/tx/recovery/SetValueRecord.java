@@ -34,7 +34,7 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
-class SetValueRecord implements LogRecord {
+class SetValueRecord implements PageLogRecord {
 	private long txNum;
 	private int offset;
 	private int type;
@@ -85,22 +85,6 @@ class SetValueRecord implements LogRecord {
 		lsn = rec.getLSN();
 	}
 
-	/**
-	 * Writes a setval record to the log. This log record contains the SQL type
-	 * corresponding to the value as the operator ID, followed by the
-	 * transaction ID, the filename, block number, and offset of the modified
-	 * block, and the previous integer value at that offset.
-	 * 
-	 * @return the LSN of the log record
-	 */
-	@Override
-	public LogSeqNum writeToLog() {
-
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-
-	}
-
 	@Override
 	public int op() {
 		return OP_SET_VALUE;
@@ -174,4 +158,9 @@ class SetValueRecord implements LogRecord {
 		return lsn;
 	}
 
+	@Override
+	public BlockId block() {
+		return blk;
+	}
+
 }
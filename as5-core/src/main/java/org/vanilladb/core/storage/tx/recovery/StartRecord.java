@@ -53,18 +53,6 @@ class StartRecord implements LogRecord {
 		lsn = rec.getLSN();
 	}
 
-	/**
-	 * Writes a start record to the log. This log record contains the
-	 * {@link LogRecord#OP_START} operator ID, followed by the transaction ID.
-	 * 
-	 * @return the LSN of the log record
-	 */
-	@Override
-	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
-	}
-
 	@Override
 	public int op() {
 		return OP_START;
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.Iterator;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogSeqNum;
+
+/**
+ * An iterator over the log records of a single transaction, from the most
+ * recent one back to its start record. Each record is read by its LSN through
+ * {@link org.vanilladb.core.storage.log.LogMgr#read(LogSeqNum, Page)}, and
+ * links to the previous record of the same transaction, so the records of the
+ * other transactions are never read.
+ */
+class TxLogRecordIterator implements Iterator<LogRecord> {
+	private Page page = new Page();
+	private LogSeqNum nextLsn;
+
+	/**
+	 * Creates an iterator starting from the specified record.
+	 * 
+	 * @param lastLsn
+	 *            the LSN of the last record of the transaction, or null if
+	 *            there is none
+	 */
+	TxLogRecordIterator(LogSeqNum lastLsn) {
+		nextLsn = lastLsn;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextLsn != null && nextLsn.blkNum() >= 0;
+	}
+
+	@Override
+	public LogRecord next() {
+		BasicLogRecord rec = VanillaDb.logMgr().read(nextLsn, page);
+		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		nextLsn = LogRecordIterator.readPrevLsn(rec);
+		return LogRecordIterator.toLogRecord(op, rec);
+	}
+
+	/**
+	 * Moves the iterator to the specified record of the transaction, skipping
+	 * the records after it.
+	 * 
+	 * @param lsn
+	 *            the LSN of a record of the transaction
+	 */
+	void skipTo(LogSeqNum lsn) {
+		nextLsn = lsn;
+	}
+
+	/**
+	 * Releases the page held by this iterator.
+	 */
+	void close() {
+		page.close();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
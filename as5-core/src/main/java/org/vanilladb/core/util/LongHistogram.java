@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative long values, such as batch sizes or
+ * waiting times, used by the storage components to expose their runtime
+ * statistics. Values are counted into power-of-two buckets: bucket 0 holds the
+ * value 0 and bucket <em>i</em> holds the values in [2<sup>i-1</sup>,
+ * 2<sup>i</sup>).
+ */
+public class LongHistogram {
+	private static final int NUM_BUCKETS = Long.SIZE + 1;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public LongHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a value. Negative values are counted as 0.
+	 * 
+	 * @param value
+	 *            the value to be recorded
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		buckets.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value))
+			currentMax = max.get();
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public long count() {
+		return count.get();
+	}
+
+	public long sum() {
+		return sum.get();
+	}
+
+	public long max() {
+		return max.get();
+	}
+
+	public double mean() {
+		long c = count.get();
+		return c == 0 ? 0.0 : ((double) sum.get()) / c;
+	}
+
+	/**
+	 * Returns an upper bound of the specified percentile of the recorded
+	 * values. The bound is the upper limit of the bucket in which the
+	 * percentile falls.
+	 * 
+	 * @param percentile
+	 *            a value in (0.0, 1.0]
+	 * @return the upper bound of the percentile
+	 */
+	public long percentile(double percentile) {
+		long total = count.get();
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Returns the number of values recorded in the specified bucket.
+	 * 
+	 * @param bucket
+	 *            the index of the bucket
+	 * @return the number of values
+	 */
+	public long bucketCount(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(name).append(": count ").append(count());
+		sb.append(String.format(", mean %.2f", mean()));
+		sb.append(", p50 ").append(percentile(0.5));
+		sb.append(", p99 ").append(percentile(0.99));
+		sb.append(", max ").append(max());
+		sb.append(", buckets {");
+		boolean first = true;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			long c = buckets.get(i);
+			if (c == 0)
+				continue;
+			if (!first)
+				sb.append(", ");
+			sb.append("<=").append(upperBoundOf(i)).append(": ").append(c);
+			first = false;
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	private static int bucketOf(long value) {
+		return Long.SIZE - Long.numberOfLeadingZeros(value);
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket == 0)
+			return 0;
+		if (bucket >= Long.SIZE - 1)
+			return Long.MAX_VALUE;
+		return (1L << bucket) - 1;
+	}
+}
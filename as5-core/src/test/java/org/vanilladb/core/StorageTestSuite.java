@@ -24,12 +24,15 @@ import org.vanilladb.core.storage.buffer.BufferMgrConcurrencyTest;
 import org.vanilladb.core.storage.buffer.BufferPoolConcurrencyTest;
 import org.vanilladb.core.storage.buffer.BufferTest;
 import org.vanilladb.core.storage.buffer.LastLSNTest;
+import org.vanilladb.core.storage.buffer.PageTableTest;
+import org.vanilladb.core.storage.buffer.replacement.ReplacementStrategyTest;
 import org.vanilladb.core.storage.file.FileTest;
 import org.vanilladb.core.storage.file.PageConcurrencyTest;
 import org.vanilladb.core.storage.index.btree.BTreeIndexTest;
 import org.vanilladb.core.storage.index.btree.BTreeLeafTest;
 import org.vanilladb.core.storage.index.btree.BTreePageTest;
 import org.vanilladb.core.storage.index.hash.HashIndexTest;
+import org.vanilladb.core.storage.log.LogMgrTest;
 import org.vanilladb.core.storage.metadata.CatalogTest;
 import org.vanilladb.core.storage.metadata.statistics.HistogramTest;
 import org.vanilladb.core.storage.record.RecordTest;
@@ -43,10 +46,16 @@ import org.vanilladb.core.storage.tx.recovery.RecoveryBasicTest;
 	// storage.file
 	FileTest.class, PageConcurrencyTest.class,
 	
+	// storage.log
+	LogMgrTest.class,
+	
 	// storage.buffer
 	BufferTest.class, BufferConcurrencyTest.class,
 	BufferMgrConcurrencyTest.class, BufferPoolConcurrencyTest.class,
-	LastLSNTest.class,
+	LastLSNTest.class, PageTableTest.class,
+	
+	// storage.buffer.replacement
+	ReplacementStrategyTest.class,
 	
 	// storage.record
 	RecordTest.class,
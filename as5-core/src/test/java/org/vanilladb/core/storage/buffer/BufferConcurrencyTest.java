@@ -24,6 +24,8 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.util.BarrierStartRunner;
 
 import junit.framework.Assert;
@@ -68,6 +70,34 @@ public class BufferConcurrencyTest {
 		Assert.assertEquals("testBufferPinCount failed", buffer.isPinned(), false);
 	}
 
+	@Test
+	public void testConcurrentReadWrite() {
+		Buffer buffer = new Buffer();
+		buffer.setVal(0, new VarcharConstant(""), 1, null);
+		CyclicBarrier startBarrier = new CyclicBarrier(CLIENT_COUNT);
+		CyclicBarrier endBarrier = new CyclicBarrier(CLIENT_COUNT + 1);
+
+		// One writer and many readers of the same value
+		Reader[] readers = new Reader[CLIENT_COUNT - 1];
+		new Writer(startBarrier, endBarrier, buffer).start();
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Reader(startBarrier, endBarrier, buffer);
+			readers[i].start();
+		}
+
+		// Wait for running
+		try {
+			endBarrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			e.printStackTrace();
+		}
+
+		// A reader should never see a value that was not written
+		for (Reader reader : readers)
+			if (reader.getException() != null)
+				Assert.fail("testConcurrentReadWrite failed: " + reader.getException());
+	}
+
 	class Pinner extends BarrierStartRunner {
 
 		Buffer buf;
@@ -87,4 +117,50 @@ public class BufferConcurrencyTest {
 		}
 
 	}
+
+	class Writer extends BarrierStartRunner {
+
+		Buffer buf;
+
+		public Writer(CyclicBarrier startBarrier, CyclicBarrier endBarrier, Buffer buf) {
+			super(startBarrier, endBarrier);
+
+			this.buf = buf;
+		}
+
+		@Override
+		public void runTask() {
+			for (int i = 0; i < 10000; i++)
+				buf.setVal(0, new VarcharConstant(value(i % 100)), 1, null);
+		}
+
+	}
+
+	class Reader extends BarrierStartRunner {
+
+		Buffer buf;
+
+		public Reader(CyclicBarrier startBarrier, CyclicBarrier endBarrier, Buffer buf) {
+			super(startBarrier, endBarrier);
+
+			this.buf = buf;
+		}
+
+		@Override
+		public void runTask() {
+			for (int i = 0; i < 1000; i++) {
+				String val = (String) buf.getVal(0, Type.VARCHAR(100)).asJavaVal();
+				if (!val.equals(value(val.length())))
+					throw new RuntimeException("torn value: " + val);
+			}
+		}
+
+	}
+
+	private static String value(int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			sb.append('x');
+		return sb.toString();
+	}
 }
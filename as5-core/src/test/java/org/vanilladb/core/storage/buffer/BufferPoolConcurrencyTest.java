@@ -73,6 +73,7 @@ public class BufferPoolConcurrencyTest {
 		} catch (InterruptedException | BrokenBarrierException e) {
 			e.printStackTrace();
 		}
+		bufferPool.shutdown();
 
 		// Check the results
 		for (int blkNum = 0; blkNum < BUFFER_COUNT; blkNum++) {
@@ -16,15 +16,23 @@
 package org.vanilladb.core.storage.buffer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -32,8 +40,10 @@ import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.buffer.BufferWaitQueue.Waiter;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
 public class BufferTest {
@@ -54,6 +64,20 @@ public class BufferTest {
 		if (logger.isLoggable(Level.INFO))
 			logger.info("FINISH BUFFER TEST");
 	}
+
+	// The pools created by a test, whose threads are stopped after it
+	private List<BufferPoolMgr> pools = new ArrayList<BufferPoolMgr>();
+
+	@After
+	public void shutdownPools() {
+		for (BufferPoolMgr pool : pools)
+			pool.shutdown();
+	}
+
+	private BufferPoolMgr newPool(BufferPoolMgr pool) {
+		pools.add(pool);
+		return pool;
+	}
 	
 	@Test
 	public void testBuffer() {
@@ -101,6 +125,26 @@ public class BufferTest {
 		bm.unpin(buff2);
 	}
 
+	@Test
+	public void testTornLength() {
+		Transaction tx = VanillaDb.txMgr().newTransaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		BufferMgr bm = tx.bufferMgr();
+		Buffer buff = bm.pin(new BlockId(fileName, 4));
+
+		// A length beyond the page should not be allocated
+		buff.setVal(100, new IntegerConstant(Integer.MAX_VALUE), 1, null);
+		try {
+			buff.getVal(100, VARCHAR);
+			fail("*****BufferTest: bad length accepted");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		} finally {
+			bm.unpin(buff);
+			tx.commit();
+		}
+	}
+
 	@Test
 	public void testMultiplePinning() {
 		Transaction tx = VanillaDb.txMgr().newTransaction(
@@ -168,4 +212,251 @@ public class BufferTest {
 				tx.bufferMgr().unpin(buf);
 		}
 	}
+
+	/**
+	 * Tests that the cleaner writes the dirty buffers that are not pinned, and
+	 * leaves the pinned ones alone.
+	 */
+	@Test
+	public void testCleaner() {
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(4));
+		BlockId blk1 = new BlockId(fileName, 10);
+		BlockId blk2 = new BlockId(fileName, 11);
+
+		Buffer buff1 = pool.pin(blk1);
+		buff1.setVal(0, new IntegerConstant(4321), 1, null);
+		pool.unpin(buff1);
+		Buffer buff2 = pool.pin(blk2);
+		buff2.setVal(0, new IntegerConstant(8765), 1, null);
+
+		pool.cleaner().cleanRound();
+		assertFalse("*****BufferTest: bad cleaning", buff1.isDirty());
+		assertTrue("*****BufferTest: bad cleaning", buff2.isDirty());
+
+		// The written value should be found on disk
+		Page page = new Page();
+		page.read(blk1);
+		assertEquals("*****BufferTest: bad cleaning", new IntegerConstant(4321),
+				page.getVal(LogSeqNum.SIZE, INTEGER));
+		pool.unpin(buff2);
+	}
+
+	/**
+	 * Tests that flushing the pool writes the runs of consecutive dirty blocks
+	 * and the ones between the gaps, and only those of the transaction if one
+	 * is given.
+	 */
+	@Test
+	public void testFlushAllInBlockOrder() {
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(8));
+		// Modify the blocks in reverse order, with a gap at 23
+		int[] blkNums = { 25, 24, 22, 21, 20 };
+		Buffer[] buffs = new Buffer[blkNums.length];
+		for (int i = 0; i < blkNums.length; i++) {
+			buffs[i] = pool.pin(new BlockId(fileName, blkNums[i]));
+			long txNum = blkNums[i] == 21 ? 2 : 1;
+			buffs[i].setVal(0, new IntegerConstant(1000 + blkNums[i]), txNum, null);
+		}
+
+		pool.flushAll(1);
+		for (int i = 0; i < blkNums.length; i++)
+			assertEquals("*****BufferTest: bad flushing", blkNums[i] == 21, buffs[i].isDirty());
+
+		pool.flushAll();
+		Page page = new Page();
+		for (int i = 0; i < blkNums.length; i++) {
+			assertFalse("*****BufferTest: bad flushing", buffs[i].isDirty());
+			page.read(new BlockId(fileName, blkNums[i]));
+			assertEquals("*****BufferTest: bad flushing", new IntegerConstant(1000 + blkNums[i]),
+					page.getVal(LogSeqNum.SIZE, INTEGER));
+			pool.unpin(buffs[i]);
+		}
+	}
+
+	/**
+	 * Tests that the pool grows up to its capacity, and that shrinking it
+	 * writes the dirty blocks of the frames taken away.
+	 */
+	@Test
+	public void testResize() {
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(4, 8, 1));
+		Buffer[] buffs = new Buffer[8];
+		for (int i = 0; i < 4; i++)
+			buffs[i] = pool.pin(new BlockId(fileName, 30 + i));
+		assertNull("*****BufferTest: bad pool size", pool.pin(new BlockId(fileName, 34)));
+
+		assertEquals("*****BufferTest: bad growth", 8, pool.resize(100));
+		for (int i = 4; i < 8; i++) {
+			buffs[i] = pool.pin(new BlockId(fileName, 30 + i));
+			assertNotNull("*****BufferTest: bad growth", buffs[i]);
+			buffs[i].setVal(0, new IntegerConstant(3000 + i), 1, null);
+		}
+		pool.unpin(buffs);
+
+		assertEquals("*****BufferTest: bad shrinking", 2, pool.resize(2));
+		assertEquals("*****BufferTest: bad shrinking", 2, pool.available());
+		Page page = new Page();
+		for (int i = 4; i < 8; i++) {
+			Buffer buff = pool.pin(new BlockId(fileName, 30 + i));
+			page.read(buff.block());
+			assertEquals("*****BufferTest: lost write", new IntegerConstant(3000 + i), buff.getVal(0, INTEGER));
+			assertEquals("*****BufferTest: lost write", new IntegerConstant(3000 + i),
+					page.getVal(LogSeqNum.SIZE, INTEGER));
+			pool.unpin(buff);
+		}
+	}
+
+	/**
+	 * Tests that the saved list of resident blocks is loaded into another
+	 * pool, keeping the hottest blocks if the pool is smaller.
+	 */
+	@Test
+	public void testWarmRestart() {
+		String dataFile = "buffertest_warm";
+		String listFile = "buffertest_resident.lst";
+		Page page = new Page();
+		long base = page.append(dataFile).number();
+		for (int i = 1; i < 6; i++)
+			page.append(dataFile);
+
+		// Cache all but the fourth block, and make the second and the fifth
+		// ones hot. No adjacent blocks are pinned in a row, which would read
+		// the fourth one ahead.
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(8));
+		int[] offsets = { 0, 2, 4, 1, 5, 1, 4, 1 };
+		for (int offset : offsets)
+			pool.unpin(pool.pin(new BlockId(dataFile, base + offset)));
+		new BufferWarmer(pool, listFile).save();
+
+		BufferPoolMgr restarted = newPool(new BufferPoolMgr(8));
+		BufferWarmer warmer = new BufferWarmer(restarted, listFile);
+		assertEquals("*****BufferTest: bad resident list", 5, warmer.load().size());
+		assertEquals("*****BufferTest: bad warm-up", 5, warmer.warmUp(warmer.load()));
+		for (int offset : new int[] { 0, 1, 2, 4, 5 })
+			restarted.unpin(restarted.pin(new BlockId(dataFile, base + offset)));
+		assertEquals("*****BufferTest: bad warm-up", 0, restarted.statistics().misses());
+		assertEquals("*****BufferTest: bad warm-up", 5, restarted.statistics().readAheadHits());
+
+		BufferPoolMgr small = newPool(new BufferPoolMgr(2));
+		warmer = new BufferWarmer(small, listFile);
+		assertEquals("*****BufferTest: bad warm-up", 2, warmer.warmUp(warmer.load()));
+		small.unpin(small.pin(new BlockId(dataFile, base + 1)));
+		small.unpin(small.pin(new BlockId(dataFile, base + 4)));
+		assertEquals("*****BufferTest: bad warm-up", 0, small.statistics().misses());
+	}
+
+	/**
+	 * Tests that a scan through a buffer ring only replaces the buffers of
+	 * its ring.
+	 */
+	@Test
+	public void testBufferRing() {
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(8));
+		for (int i = 0; i < 8; i++)
+			pool.unpin(pool.pin(new BlockId(fileName, i)));
+
+		// Only the first two blocks of the scan take buffers from the pool
+		BufferStatistics stats = pool.statistics();
+		BufferRing ring = new BufferRing(2);
+		for (int i = 100; i < 140; i++)
+			pool.unpin(pool.pin(new BlockId(fileName, i), ring));
+		assertEquals("*****BufferTest: bad ring", 40, stats.cleanEvictions() + stats.dirtyEvictions());
+		assertEquals("*****BufferTest: bad ring", 38, stats.ringReuses());
+	}
+
+	/**
+	 * Tests that the frames of a partitioned pool are stolen across the
+	 * partitions, so that every buffer can be pinned, and that the stolen
+	 * frames are found again.
+	 */
+	@Test
+	public void testPartitionedPool() {
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(8, 4));
+		assertEquals("*****BufferTest: bad partitioning", 4, pool.numPartitions());
+
+		Buffer[] buffs = new Buffer[8];
+		for (int i = 0; i < buffs.length; i++) {
+			buffs[i] = pool.pin(new BlockId(fileName, 200 + i));
+			assertNotNull("*****BufferTest: bad stealing", buffs[i]);
+		}
+		assertEquals("*****BufferTest: bad partitioning", 0, pool.available());
+		assertNull("*****BufferTest: bad partitioning", pool.pin(new BlockId(fileName, 300)));
+
+		for (Buffer buff : buffs)
+			pool.unpin(buff);
+		assertEquals("*****BufferTest: bad partitioning", 8, pool.available());
+
+		for (int i = 0; i < buffs.length; i++) {
+			Buffer buff = pool.pin(new BlockId(fileName, 200 + i));
+			assertTrue("*****BufferTest: bad partitioning", buff == buffs[i]);
+			pool.unpin(buff);
+		}
+		assertEquals("*****BufferTest: bad partitioning", 8, pool.statistics().hits());
+	}
+
+	/**
+	 * Tests that two consecutive misses make the read-ahead load the next
+	 * blocks, which are then pinned as hits.
+	 */
+	@Test
+	public void testReadAhead() throws InterruptedException {
+		String file = "buffertest_readahead";
+		Page page = new Page();
+		for (int i = 0; i < 16; i++)
+			page.append(file);
+
+		BufferPoolMgr pool = newPool(new BufferPoolMgr(32));
+		BufferStatistics stats = pool.statistics();
+		pool.unpin(pool.pin(new BlockId(file, 0)));
+		pool.unpin(pool.pin(new BlockId(file, 1)));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (stats.readAheads() == 0) {
+			assertTrue("*****BufferTest: no read-ahead", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		pool.unpin(pool.pin(new BlockId(file, 2)));
+		assertEquals("*****BufferTest: bad read-ahead", 2, stats.misses());
+		assertEquals("*****BufferTest: bad read-ahead", 1, stats.readAheadHits());
+	}
+
+	/**
+	 * Tests that the waiting threads are woken one at a time, in the order
+	 * of arrival.
+	 */
+	@Test
+	public void testWaitQueue() throws InterruptedException {
+		final BufferWaitQueue queue = new BufferWaitQueue();
+		final boolean[] woken = new boolean[2];
+		Thread[] waiters = new Thread[2];
+		for (int i = 0; i < waiters.length; i++) {
+			final int id = i;
+			final CountDownLatch enqueued = new CountDownLatch(1);
+			waiters[i] = new Thread() {
+				@Override
+				public void run() {
+					Waiter waiter = queue.enqueue();
+					enqueued.countDown();
+					try {
+						woken[id] = queue.await(waiter, System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					} finally {
+						queue.remove(waiter);
+					}
+				}
+			};
+			waiters[i].start();
+			enqueued.await();
+		}
+
+		queue.signalOne();
+		waiters[0].join();
+		assertTrue("*****BufferTest: bad waiting order", woken[0]);
+		assertTrue("*****BufferTest: bad waiting order", waiters[1].isAlive());
+
+		queue.signalOne();
+		waiters[1].join();
+		assertTrue("*****BufferTest: bad waiting order", woken[1]);
+	}
 }
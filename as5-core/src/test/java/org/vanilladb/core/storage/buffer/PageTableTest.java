@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.storage.file.BlockId;
+
+public class PageTableTest {
+	private static Logger logger = Logger.getLogger(PageTableTest.class.getName());
+
+	private static final String FILE_NAME = "_temppagetabletest";
+	private static final int BLOCK_COUNT = 64;
+
+	@BeforeClass
+	public static void init() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN PAGE TABLE TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH PAGE TABLE TEST");
+	}
+
+	@Test
+	public void testPutAndGet() {
+		PageTable table = new PageTable(BLOCK_COUNT);
+		for (int i = 0; i < BLOCK_COUNT; i++)
+			table.put(new BlockId(FILE_NAME, i), i);
+		assertEquals("*****PageTableTest: bad size", BLOCK_COUNT, table.size());
+
+		// Equal blocks are found, no matter which instance is used
+		for (int i = 0; i < BLOCK_COUNT; i++)
+			assertEquals("*****PageTableTest: bad lookup", i, table.get(new BlockId(FILE_NAME, i)));
+		assertEquals("*****PageTableTest: bad lookup", -1, table.get(new BlockId(FILE_NAME, BLOCK_COUNT)));
+		assertEquals("*****PageTableTest: bad lookup", -1, table.get(new BlockId(FILE_NAME + "x", 0)));
+
+		// Updating a block does not add an entry
+		table.put(new BlockId(FILE_NAME, 0), BLOCK_COUNT);
+		assertEquals("*****PageTableTest: bad update", BLOCK_COUNT, table.get(new BlockId(FILE_NAME, 0)));
+		assertEquals("*****PageTableTest: bad size", BLOCK_COUNT, table.size());
+	}
+
+	@Test
+	public void testRemove() {
+		PageTable table = new PageTable(BLOCK_COUNT);
+		for (int i = 0; i < BLOCK_COUNT; i++)
+			table.put(new BlockId(FILE_NAME, i), i);
+
+		// The entries after a removed one should still be found
+		for (int i = 0; i < BLOCK_COUNT; i += 2)
+			table.remove(new BlockId(FILE_NAME, i));
+		assertEquals("*****PageTableTest: bad size", BLOCK_COUNT / 2, table.size());
+		for (int i = 0; i < BLOCK_COUNT; i++) {
+			int expected = i % 2 == 0 ? -1 : i;
+			assertEquals("*****PageTableTest: bad removal", expected, table.get(new BlockId(FILE_NAME, i)));
+		}
+
+		// The freed slots can be reused
+		for (int i = 0; i < BLOCK_COUNT; i += 2)
+			table.put(new BlockId(FILE_NAME, i + BLOCK_COUNT), i);
+		for (int i = 0; i < BLOCK_COUNT; i += 2)
+			assertEquals("*****PageTableTest: bad reuse", i, table.get(new BlockId(FILE_NAME, i + BLOCK_COUNT)));
+		assertEquals("*****PageTableTest: bad size", BLOCK_COUNT, table.size());
+	}
+}
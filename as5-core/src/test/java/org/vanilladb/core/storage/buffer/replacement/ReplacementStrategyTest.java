@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.buffer.replacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.storage.buffer.replacement.ReplacementStrategy.FrameFilter;
+import org.vanilladb.core.storage.file.BlockId;
+
+public class ReplacementStrategyTest {
+	private static Logger logger = Logger.getLogger(ReplacementStrategyTest.class.getName());
+
+	private static final String FILE_NAME = "_tempreplacementtest";
+	private static final int FRAME_COUNT = 4;
+
+	@BeforeClass
+	public static void init() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN REPLACEMENT STRATEGY TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH REPLACEMENT STRATEGY TEST");
+	}
+
+	@Test
+	public void testClockKeepsReferencedBlock() {
+		ReplacementStrategy strategy = new ClockStrategy(FRAME_COUNT);
+		fill(strategy);
+		for (int i = 0; i < 3; i++)
+			strategy.onAccess(0);
+
+		// The frame with a higher usage count survives a few sweeps
+		scan(strategy, 0, 4);
+	}
+
+	@Test
+	public void testTwoQueueResistsScan() {
+		ReplacementStrategy strategy = new TwoQueueStrategy(FRAME_COUNT);
+		fill(strategy);
+
+		// The block replaced from A1in and loaded again enters Am
+		int victim = strategy.chooseVictim(new PinFilter());
+		assertEquals("*****ReplacementStrategyTest: bad 2Q victim", 0, victim);
+		strategy.onLoad(victim, new BlockId(FILE_NAME, 0));
+
+		// Then it is not replaced by a scan
+		scan(strategy, 0, 10);
+	}
+
+	@Test
+	public void testLruKPrefersBlocksReferencedOnce() {
+		ReplacementStrategy strategy = new LruKStrategy(FRAME_COUNT);
+		fill(strategy);
+		strategy.onAccess(2);
+
+		// The least recently used frame is replaced first, but a pinned
+		// frame is skipped
+		PinFilter filter = new PinFilter();
+		filter.pinned.add(0);
+		assertEquals("*****ReplacementStrategyTest: bad LRU-K victim", 1, strategy.chooseVictim(filter));
+		strategy.onLoad(1, new BlockId(FILE_NAME, 100));
+
+		// The frame referenced twice is kept
+		scan(strategy, 2, 6);
+	}
+
+	@Test
+	public void testAllFramesPinned() {
+		ReplacementStrategy[] strategies = { new ClockStrategy(FRAME_COUNT), new TwoQueueStrategy(FRAME_COUNT),
+				new LruKStrategy(FRAME_COUNT) };
+		for (ReplacementStrategy strategy : strategies) {
+			fill(strategy);
+			PinFilter filter = new PinFilter();
+			for (int i = 0; i < FRAME_COUNT; i++)
+				filter.pinned.add(i);
+			assertEquals("*****ReplacementStrategyTest: bad victim of " + strategy.getClass().getSimpleName(), -1,
+					strategy.chooseVictim(filter));
+		}
+	}
+
+	private static void fill(ReplacementStrategy strategy) {
+		for (int i = 0; i < FRAME_COUNT; i++) {
+			PinFilter filter = new PinFilter();
+			int frame = strategy.chooseVictim(filter);
+			strategy.onLoad(frame, new BlockId(FILE_NAME, frame));
+		}
+	}
+
+	private static void scan(ReplacementStrategy strategy, int hotFrame, int blockCount) {
+		for (int i = 0; i < blockCount; i++) {
+			int victim = strategy.chooseVictim(new PinFilter());
+			assertTrue("*****ReplacementStrategyTest: hot frame replaced", victim != hotFrame);
+			strategy.onLoad(victim, new BlockId(FILE_NAME, 1000 + i));
+		}
+	}
+
+	private static class PinFilter implements FrameFilter {
+		Set<Integer> pinned = new HashSet<Integer>();
+
+		@Override
+		public boolean tryReserve(int frame) {
+			return !pinned.contains(frame);
+		}
+	}
+}
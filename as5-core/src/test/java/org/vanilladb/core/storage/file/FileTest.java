@@ -18,10 +18,15 @@ package org.vanilladb.core.storage.file;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.DOUBLE;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -31,10 +36,23 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.query.algebra.materialize.TempTable;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.DoubleConstant;
 import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.io.IoAllocator;
+import org.vanilladb.core.storage.file.io.IoBuffer;
+import org.vanilladb.core.storage.file.io.IoChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioByteBuffer;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioFileChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioMappedChannel;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.tx.Transaction;
 
 public class FileTest {
 	private static Logger logger = Logger.getLogger(FileTest.class.getName());
@@ -127,6 +145,23 @@ public class FileTest {
 		assertEquals("*****FileTest: bad file list", 15, fm.size(filename));
 	}
 
+	@Test
+	public void testForce() {
+		String filename = "test_force";
+		BlockId blk = new BlockId(filename, 0);
+		p1.setVal(0, TEST_INT_789);
+		p1.write(blk);
+
+		// forcing the open files should not change the contents
+		fm.force(filename);
+		fm.forceAll();
+		p2.read(blk);
+		assertEquals("*****FileTest: bad force", TEST_INT_789, p2.getVal(0, INTEGER));
+
+		// a file that has not been opened is ignored
+		fm.force("test_force_not_opened");
+	}
+
 	@Test
 	public void testSetAndGet() {
 		// test normal get/set
@@ -175,6 +210,106 @@ public class FileTest {
 								TEST_VARCHAR));
 	}
 
+	@Test
+	public void testPrimitiveAccessors() {
+		// the primitives should share the encoding of the constants
+		p1.setInt(0, 123);
+		p1.setLong(INT_SIZE, -7L);
+		p1.setDouble(INT_SIZE + 8, 1.5);
+		assertTrue("*****FileTest: bad primitive set",
+				p1.getVal(0, INTEGER).equals(TEST_INT_123)
+						&& p1.getVal(INT_SIZE, BIGINT).equals(new BigIntConstant(-7L))
+						&& p1.getVal(INT_SIZE + 8, DOUBLE).equals(new DoubleConstant(1.5)));
+
+		p1.setVal(40, TEST_INT_456);
+		p1.setVal(44, new BigIntConstant(Long.MAX_VALUE));
+		assertEquals("*****FileTest: bad primitive getInt", 456, p1.getInt(40));
+		assertEquals("*****FileTest: bad primitive getLong", Long.MAX_VALUE, p1.getLong(44));
+
+		// copy the whole page without an intermediate array
+		p1.setVal(BLOCK_SIZE - TEST_VARCHAR_SIZE, TEST_VARCHAR);
+		p2.copyFrom(p1);
+		assertTrue("*****FileTest: bad page copy",
+				p2.getInt(0) == 123 && p2.getLong(44) == Long.MAX_VALUE
+						&& p2.getVal(BLOCK_SIZE - TEST_VARCHAR_SIZE, VARCHAR).equals(TEST_VARCHAR));
+	}
+
+	@Test
+	public void testMappedChannel() throws IOException {
+		File file = File.createTempFile("filetest_mapped", ".tbl");
+		file.deleteOnExit();
+		IoBuffer buf = IoAllocator.newIoBuffer(BLOCK_SIZE);
+		IoChannel mapped = new JavaNioMappedChannel(file, false);
+
+		// append through the channel, then overwrite through the mapping
+		for (int i = 0; i < 3; i++) {
+			buf.putInt(0, i);
+			buf.rewind();
+			assertEquals("*****FileTest: bad mapped append", (i + 1) * BLOCK_SIZE, mapped.append(buf));
+		}
+		buf.putInt(0, 123);
+		buf.rewind();
+		mapped.write(buf, BLOCK_SIZE);
+		mapped.read(buf, 2 * BLOCK_SIZE);
+		assertEquals("*****FileTest: bad mapped read", 2, buf.getInt(0));
+		mapped.force();
+
+		// the file should look the same to a plain channel
+		IoChannel plain = new JavaNioFileChannel(file, false);
+		assertEquals("*****FileTest: bad mapped size", 3 * BLOCK_SIZE, plain.size());
+		buf.clear();
+		plain.read(buf, BLOCK_SIZE);
+		assertEquals("*****FileTest: bad mapped write", 123, buf.getInt(0));
+		plain.close();
+		mapped.close();
+	}
+
+	@Test
+	public void testExtentChannel() throws IOException {
+		File file = File.createTempFile("filetest_extent", ".tbl");
+		file.deleteOnExit();
+		IoBuffer buf = IoAllocator.newIoBuffer(BLOCK_SIZE);
+		IoChannel extent = new ExtentIoChannel(new JavaNioFileChannel(file, false));
+
+		// the first append preallocates a whole extent
+		for (int i = 0; i < 3; i++) {
+			buf.putInt(0, i + 1);
+			buf.rewind();
+			assertEquals("*****FileTest: bad extent append", (i + 1) * BLOCK_SIZE, extent.append(buf));
+		}
+		assertEquals("*****FileTest: bad extent size", 3 * BLOCK_SIZE, extent.size());
+		assertEquals("*****FileTest: bad preallocation", FileMgr.EXTENT_SIZE, file.length());
+		extent.close();
+
+		// the unused blocks are skipped when the file is opened again
+		extent = new ExtentIoChannel(new JavaNioFileChannel(file, false));
+		assertEquals("*****FileTest: bad extent reopen", 3 * BLOCK_SIZE, extent.size());
+		buf.clear();
+		extent.read(buf, 2 * BLOCK_SIZE);
+		assertEquals("*****FileTest: bad extent read", 3, buf.getInt(0));
+		extent.close();
+	}
+
+	@Test
+	public void testArenaSlices() {
+		// five frames in arenas of two frames each
+		IoBuffer[] frames = JavaNioByteBuffer.allocateSlices(5, BLOCK_SIZE, 2 * BLOCK_SIZE);
+		for (int i = 0; i < frames.length; i++) {
+			assertEquals("*****FileTest: bad slice capacity", BLOCK_SIZE, frames[i].capacity());
+			frames[i].putInt(0, i);
+			frames[i].putInt(BLOCK_SIZE - INT_SIZE, -i);
+		}
+		for (int i = 0; i < frames.length; i++)
+			assertTrue("*****FileTest: overlapped slices",
+					frames[i].getInt(0) == i && frames[i].getInt(BLOCK_SIZE - INT_SIZE) == -i);
+
+		// the pages over the slices do I/O as usual
+		Page p = new Page(frames[3]);
+		BlockId blk = p.append("filetest_arena");
+		new Page(frames[4]).read(blk);
+		assertEquals("*****FileTest: bad slice I/O", 3, frames[4].getInt(0));
+	}
+
 	@Test
 	public void testBoundaries() {
 		try {
@@ -220,4 +355,53 @@ public class FileTest {
 		BlockId b = new BlockId(b1.fileName(), b1.number());
 		assertTrue("*****FileTest: bad block extraction", b.equals(b1));
 	}
+
+	@Test
+	public void testFileIdLimit() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+
+		// A dropped temporary table gives up its id, which is not reused
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		TempTable tt = new TempTable(sch, tx);
+		String fileName = tt.getTableInfo().fileName();
+		int id = FileMgr.fileId(fileName);
+		new RecordFile(tt.getTableInfo(), tx, false).remove();
+		assertTrue("*****FileTest: bad id of dropped file", FileMgr.fileId(fileName) > id);
+		tx.commit();
+
+		// Leave only a few ids
+		FileMgr.setMaxFileId(FileMgr.fileId(fileName) + 4);
+		try {
+			for (int i = 0; i < 16; i++) {
+				tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+				tt = new TempTable(sch, tx);
+				UpdateScan s = tt.open();
+				s.beforeFirst();
+				for (int j = 0; j < 100; j++) {
+					s.insert();
+					s.setVal("id", new IntegerConstant(i * 100 + j));
+				}
+				s.beforeFirst();
+				for (int j = 0; j < 100; j++) {
+					assertTrue("*****FileTest: bad temp table " + i, s.next());
+					assertEquals("*****FileTest: bad temp table " + i, new IntegerConstant(i * 100 + j),
+							s.getVal("id"));
+				}
+				assertTrue("*****FileTest: bad temp table " + i, !s.next());
+				s.close();
+				new RecordFile(tt.getTableInfo(), tx, false).remove();
+				tx.commit();
+			}
+
+			// The names "Aa" and "BB" have the same hash code
+			BlockId b1 = new BlockId("_tempfiletestAa", 0);
+			BlockId b2 = new BlockId("_tempfiletestBB", 0);
+			assertTrue("*****FileTest: bad unregistered block", b1.key() == b2.key() && !b1.equals(b2));
+			assertTrue("*****FileTest: bad unregistered block",
+					b1.equals(new BlockId("_tempfiletestAa", 0)) && !b1.equals(new BlockId("_tempfiletestAa", 1)));
+		} finally {
+			FileMgr.setMaxFileId(FileMgr.MAX_FILE_ID);
+		}
+	}
 }
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright 2017 vanilladb.org
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.tx.recovery.ReversibleIterator;
+import org.vanilladb.core.util.BarrierStartRunner;
+
+import junit.framework.Assert;
+
+public class LogMgrTest {
+	private static Logger logger = Logger.getLogger(LogMgrTest.class.getName());
+
+	private static final int CLIENT_COUNT = 20;
+	private static final int RECORD_COUNT = 100;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init(LogMgrTest.class);
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN LOG MANAGER TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH LOG MANAGER TEST");
+	}
+
+	@Test
+	public void testAppendAndIterate() {
+		LogMgr logMgr = new LogMgr("logmgrtest_iterate.log");
+
+		// Append records that span more blocks than the log buffer holds
+		for (int i = 0; i < RECORD_COUNT * 50; i++)
+			logMgr.append(newRecord(i));
+
+		// The records should be returned in the reverse order
+		ReversibleIterator<BasicLogRecord> iter = logMgr.iterator();
+		for (int i = RECORD_COUNT * 50 - 1; i >= 0; i--) {
+			Assert.assertTrue(iter.hasNext());
+			BasicLogRecord rec = iter.next();
+			Assert.assertEquals(new IntegerConstant(i), rec.nextVal(INTEGER));
+			Assert.assertEquals(new VarcharConstant("record" + i), rec.nextVal(VARCHAR));
+		}
+		Assert.assertFalse(iter.hasNext());
+
+		// And in the original order when moving backward
+		for (int i = 0; i < RECORD_COUNT * 50; i++) {
+			Assert.assertTrue(iter.hasPrevious());
+			BasicLogRecord rec = iter.previous();
+			Assert.assertEquals(new IntegerConstant(i), rec.nextVal(INTEGER));
+		}
+	}
+
+	@Test
+	public void testFlushWritesRecord() {
+		LogMgr logMgr = new LogMgr("logmgrtest_write.log");
+
+		for (int i = 0; i < RECORD_COUNT * 5; i++) {
+			LogSeqNum lsn = logMgr.append(newRecord(i));
+			if (i % RECORD_COUNT != 0)
+				continue;
+
+			// The flushed record should be readable from the log file
+			logMgr.flush(lsn);
+			Page page = new Page();
+			page.read(logMgr.blockOf(lsn.blkNum()));
+			BasicLogRecord rec = new BasicLogRecord(page, lsn);
+			Assert.assertEquals(new IntegerConstant(i), rec.nextVal(INTEGER));
+		}
+	}
+
+	@Test
+	public void testReadByLsn() {
+		LogMgr logMgr = new LogMgr("logmgrtest_read.log");
+		LogSeqNum[] lsns = new LogSeqNum[RECORD_COUNT * 5];
+		Page page = new Page();
+
+		for (int i = 0; i < lsns.length; i++) {
+			lsns[i] = logMgr.append(newRecord(i));
+
+			// A record in the last block should be readable at once
+			BasicLogRecord rec = logMgr.read(lsns[i], page);
+			Assert.assertEquals(new IntegerConstant(i), rec.nextVal(INTEGER));
+		}
+
+		// Read back in the reverse order, as a rollback does
+		for (int i = lsns.length - 1; i >= 0; i--) {
+			BasicLogRecord rec = logMgr.read(lsns[i], page);
+			Assert.assertEquals(new IntegerConstant(i), rec.nextVal(INTEGER));
+			Assert.assertEquals(new VarcharConstant("record" + i), rec.nextVal(VARCHAR));
+		}
+	}
+
+	@Test
+	public void testSegmentTruncation() {
+		String logFile = "logmgrtest_segment.log";
+		LogMgr logMgr = new LogMgr(logFile, 4);
+		LogSeqNum[] lsns = new LogSeqNum[RECORD_COUNT * 50];
+		for (int i = 0; i < lsns.length; i++)
+			lsns[i] = logMgr.append(newRecord(i));
+		logMgr.flush(lsns[lsns.length - 1]);
+
+		// The records before the middle one are no longer needed
+		int mid = lsns.length / 2;
+		long midSeg = lsns[mid].blkNum() / 4;
+		long lastSeg = lsns[lsns.length - 1].blkNum() / 4;
+		Assert.assertTrue(midSeg > 1);
+		logMgr.truncate(lsns[mid]);
+
+		// Wait for the cleaner
+		long deadline = System.currentTimeMillis() + 5000;
+		while (VanillaDb.fileMgr().exists(LogMgr.segmentFileName(logFile, midSeg - 1))
+				|| !VanillaDb.fileMgr().exists(LogMgr.segmentFileName(logFile, lastSeg + 1))) {
+			Assert.assertTrue("the segments are not recycled", System.currentTimeMillis() < deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		Assert.assertFalse(VanillaDb.fileMgr().exists(LogMgr.segmentFileName(logFile, 0)));
+
+		// The iterator should stop at the first kept segment
+		ReversibleIterator<BasicLogRecord> iter = logMgr.iterator();
+		int id = lsns.length;
+		while (iter.hasNext()) {
+			BasicLogRecord rec = iter.next();
+			id--;
+			Assert.assertEquals(lsns[id], rec.getLSN());
+			Assert.assertEquals(new IntegerConstant(id), rec.nextVal(INTEGER));
+		}
+		Assert.assertTrue(id > 0 && id <= mid);
+		Assert.assertEquals(midSeg, lsns[id].blkNum() / 4);
+
+		// A new log manager should append after the kept records
+		logMgr = new LogMgr(logFile, 4);
+		LogSeqNum lsn = logMgr.append(newRecord(lsns.length));
+		Assert.assertTrue(lsn.compareTo(lsns[lsns.length - 1]) > 0);
+		iter = logMgr.iterator();
+		Assert.assertEquals(new IntegerConstant(lsns.length), iter.next().nextVal(INTEGER));
+		Assert.assertEquals(lsns[lsns.length - 1], iter.next().getLSN());
+	}
+
+	@Test
+	public void testFlushAsync() {
+		LogMgr logMgr = new LogMgr("logmgrtest_async.log");
+		LogSeqNum lsn = logMgr.append(newRecord(1));
+		logMgr.flushAsync(lsn);
+
+		// The log writer should write the record without another request
+		Page page = new Page();
+		BlockId blk = logMgr.blockOf(lsn.blkNum());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			page.read(blk);
+			if (new BasicLogRecord(page, lsn).nextVal(INTEGER).equals(new IntegerConstant(1)))
+				break;
+			Assert.assertTrue("the record is not flushed", System.currentTimeMillis() < deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentAppend() {
+		LogMgr logMgr = new LogMgr("logmgrtest_append.log");
+		CyclicBarrier startBarrier = new CyclicBarrier(CLIENT_COUNT);
+		CyclicBarrier endBarrier = new CyclicBarrier(CLIENT_COUNT + 1);
+
+		AppendClient[] clients = new AppendClient[CLIENT_COUNT];
+		for (int i = 0; i < CLIENT_COUNT; i++) {
+			clients[i] = new AppendClient(logMgr, i, false, startBarrier, endBarrier);
+			clients[i].start();
+		}
+
+		// Wait for running
+		try {
+			endBarrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			e.printStackTrace();
+		}
+
+		Map<Integer, LogSeqNum> lsns = new HashMap<Integer, LogSeqNum>();
+		for (AppendClient client : clients) {
+			if (client.getException() != null)
+				Assert.fail("exception: " + client.getException());
+			lsns.putAll(client.lsns);
+		}
+
+		// Each record should be found at the LSN returned by append
+		int count = 0;
+		ReversibleIterator<BasicLogRecord> iter = logMgr.iterator();
+		while (iter.hasNext()) {
+			BasicLogRecord rec = iter.next();
+			int id = (Integer) rec.nextVal(INTEGER).asJavaVal();
+			Assert.assertEquals(lsns.get(id), rec.getLSN());
+			Assert.assertEquals(new VarcharConstant("record" + id), rec.nextVal(VARCHAR));
+			count++;
+		}
+		Assert.assertEquals(CLIENT_COUNT * RECORD_COUNT, count);
+	}
+
+	@Test
+	public void testConcurrentFlush() {
+		// Run the log manager in the group-commit mode
+		LogMgr logMgr = new LogMgr("logmgrtest_flush.log", true);
+		CyclicBarrier startBarrier = new CyclicBarrier(CLIENT_COUNT);
+		CyclicBarrier endBarrier = new CyclicBarrier(CLIENT_COUNT + 1);
+
+		AppendClient[] clients = new AppendClient[CLIENT_COUNT];
+		for (int i = 0; i < CLIENT_COUNT; i++) {
+			clients[i] = new AppendClient(logMgr, i, true, startBarrier, endBarrier);
+			clients[i].start();
+		}
+
+		// Wait for running
+		try {
+			endBarrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			e.printStackTrace();
+		}
+
+		for (AppendClient client : clients)
+			if (client.getException() != null)
+				Assert.fail("exception: " + client.getException());
+
+		// Each flush request should be counted in exactly one batch
+		Assert.assertTrue(logMgr.batchSizes().count() > 0);
+		Assert.assertTrue(logMgr.batchSizes().sum() <= CLIENT_COUNT * RECORD_COUNT);
+
+		// All the records should be found in the log
+		Set<Integer> ids = new HashSet<Integer>();
+		ReversibleIterator<BasicLogRecord> iter = logMgr.iterator();
+		while (iter.hasNext())
+			ids.add((Integer) iter.next().nextVal(INTEGER).asJavaVal());
+		Assert.assertEquals(CLIENT_COUNT * RECORD_COUNT, ids.size());
+	}
+
+	private static Constant[] newRecord(int id) {
+		return new Constant[] { new IntegerConstant(id), new VarcharConstant("record" + id) };
+	}
+
+	class AppendClient extends BarrierStartRunner {
+		private LogMgr logMgr;
+		private int clientId;
+		private boolean flush;
+		private Map<Integer, LogSeqNum> lsns = new HashMap<Integer, LogSeqNum>();
+
+		public AppendClient(LogMgr logMgr, int clientId, boolean flush, CyclicBarrier startBarrier,
+				CyclicBarrier endBarrier) {
+			super(startBarrier, endBarrier);
+			this.logMgr = logMgr;
+			this.clientId = clientId;
+			this.flush = flush;
+		}
+
+		@Override
+		public void runTask() {
+			for (int i = 0; i < RECORD_COUNT; i++) {
+				int id = clientId * RECORD_COUNT + i;
+				LogSeqNum lsn = logMgr.append(newRecord(id));
+				lsns.put(id, lsn);
+				if (flush)
+					logMgr.flush(lsn);
+			}
+		}
+	}
+}
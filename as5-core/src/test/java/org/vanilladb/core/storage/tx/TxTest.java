@@ -36,6 +36,7 @@ import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
 
 public class TxTest {
 	private static Logger logger = Logger.getLogger(TxTest.class.getName());
@@ -197,6 +198,30 @@ public class TxTest {
 		assertTrue("TxTest: bad tx history", thC.isDeadlockAborted());
 	}
 
+	@Test
+	public void testCheckpointKeepsStartingTx() {
+		TransactionMgr txMgr = VanillaDb.txMgr();
+		long txNum = txMgr.getNextTxNum();
+		txMgr.skipTxNums(txNum);
+
+		// A tx that has logged its start record but is not active yet
+		txMgr.txStarting(txNum);
+		LogSeqNum startLsn = new RecoveryMgr(txNum, false).startLsn();
+
+		// Neither checkpoint should recycle its start record
+		for (int i = 0; i < 2; i++) {
+			Transaction chkpnt = txMgr.newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+			chkpnt.bufferMgr().flushAll();
+			LogSeqNum redoLsn = txMgr.createCheckpoint(chkpnt);
+			chkpnt.commit();
+			assertTrue("TxTest: start record not kept", redoLsn.compareTo(startLsn) <= 0);
+		}
+
+		// Let the tx become active and finish
+		Transaction tx = txMgr.newTransaction(Connection.TRANSACTION_SERIALIZABLE, false, txNum);
+		tx.commit();
+	}
+
 	synchronized static void appendToResult(String s) {
 		result += s + "\n";
 	}
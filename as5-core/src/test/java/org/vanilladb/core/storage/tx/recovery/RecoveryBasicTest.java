@@ -15,12 +15,14 @@
  ******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.BrokenBarrierException;
@@ -45,9 +47,12 @@ import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.IndexType;
 import org.vanilladb.core.storage.index.SearchKey;
 import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.index.btree.BTreeDir;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.metadata.CatalogMgr;
+import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.util.BarrierStartRunner;
@@ -57,6 +62,7 @@ public class RecoveryBasicTest {
 	
 	private static String fileName = "recoverybasictest.0";
 	private static String dataTableName = "recoverybasictest";
+	private static String statTableName = "recoverystattest";
 	private static CatalogMgr md;
 
 	private static BlockId blk;
@@ -79,6 +85,10 @@ public class RecoveryBasicTest {
 		idxFlds.add("cid");
 		md.createIndex("index_cid", dataTableName, idxFlds, IndexType.BTREE, tx);
 
+		schema = new Schema();
+		schema.addField("sid", INTEGER);
+		md.createTable(statTableName, schema, tx);
+
 		tx.commit();
 
 		if (logger.isLoggable(Level.INFO))
@@ -414,6 +424,190 @@ public class RecoveryBasicTest {
 
 	}
 
+	@Test
+	public void testFuzzyCheckpoint() {
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		long txNum = tx.getTransactionNumber();
+		Buffer buff = tx.bufferMgr().pin(blk);
+		LogSeqNum lsn = tx.recoveryMgr().logSetVal(buff, 404, new IntegerConstant(2718));
+		buff.setVal(404, new IntegerConstant(2718), txNum, lsn);
+		assertEquals("*****RecoveryTest: bad dirty page table", lsn, tx.bufferMgr().dirtyPageTable().get(blk));
+
+		// Checkpoint while the tx is active and the page is dirty
+		Transaction chkpnt = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		VanillaDb.txMgr().createCheckpoint(chkpnt);
+		chkpnt.commit();
+		assertEquals("*****RecoveryTest: page written by checkpoint", lsn, buff.recoveryLsn());
+
+		// The redo must start before the change
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		LogRecord rec = iter.next();
+		while (rec.op() != LogRecord.OP_CHECKPOINT)
+			rec = iter.next();
+		LogSeqNum redoLsn = ((CheckpointRecord) rec).redoLsn();
+		assertTrue("*****RecoveryTest: bad redo point", redoLsn.compareTo(tx.recoveryMgr().startLsn()) <= 0);
+		assertTrue("*****RecoveryTest: bad redo point", redoLsn.compareTo(lsn) < 0);
+
+		tx.bufferMgr().unpin(buff);
+		tx.commit();
+	}
+
+	@Test
+	public void testParallelRedo() {
+		// Update the same slot of many blocks twice
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		long txNum = tx.getTransactionNumber();
+		for (int i = 0; i < 32; i++) {
+			Buffer buff = tx.bufferMgr().pin(new BlockId(fileName, 30 + i));
+			for (int j = 1; j <= 2; j++) {
+				LogSeqNum lsn = tx.recoveryMgr().logSetVal(buff, 4, new IntegerConstant(i * 10 + j));
+				buff.setVal(4, new IntegerConstant(i * 10 + j), txNum, lsn);
+			}
+			tx.bufferMgr().unpin(buff);
+		}
+		tx.commit();
+
+		// Lose the changes without logging
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		for (int i = 0; i < 32; i++) {
+			Buffer buff = tx.bufferMgr().pin(new BlockId(fileName, 30 + i));
+			buff.setVal(4, new IntegerConstant(-1), tx.getTransactionNumber(), null);
+			tx.bufferMgr().unpin(buff);
+		}
+		tx.commit();
+
+		// The last change of each block should be redone
+		Transaction recoveryTx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		recoveryTx.recoveryMgr().recoverSystem(recoveryTx);
+		for (int i = 0; i < 32; i++) {
+			Buffer buff = recoveryTx.bufferMgr().pin(new BlockId(fileName, 30 + i));
+			assertEquals("*****RecoveryTest: bad parallel redo", new IntegerConstant(i * 10 + 2),
+					buff.getVal(4, INTEGER));
+			recoveryTx.bufferMgr().unpin(buff);
+		}
+		recoveryTx.commit();
+	}
+
+	@Test
+	public void testBackgroundUndo() {
+		// An unfinished tx left by a crash
+		Transaction loser = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Buffer buff = loser.bufferMgr().pin(blk);
+		LogSeqNum lsn = loser.recoveryMgr().logSetVal(buff, 504, new IntegerConstant(3333));
+		buff.setVal(504, new IntegerConstant(3333), loser.getTransactionNumber(), lsn);
+		loser.bufferMgr().unpin(buff);
+
+		BackgroundUndo undo = new BackgroundUndo(Collections.singleton(loser.getTransactionNumber()));
+		undo.start();
+
+		// A new tx waits for the undo of the block
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		tx.concurrencyMgr().readBlock(blk);
+		buff = tx.bufferMgr().pin(blk);
+		assertEquals("*****RecoveryTest: bad background undo", new IntegerConstant(0), buff.getVal(504, INTEGER));
+		tx.bufferMgr().unpin(buff);
+		tx.commit();
+
+		undo.await();
+		assertTrue("*****RecoveryTest: background undo not finished", undo.pendingTxNums().isEmpty());
+	}
+
+	@Test
+	public void testBackgroundUndoRefreshesStatistics() {
+		// An unfinished tx that inserted a record, whose locks and buffers are
+		// gone with the crash
+		Transaction loser = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		TableInfo ti = md.getTableInfo(statTableName, loser);
+		RecordFile rf = ti.open(loser, true);
+		rf.insert();
+		rf.setVal("sid", new IntegerConstant(1));
+		rf.close();
+		loser.concurrencyMgr().onTxRollback(loser);
+		loser.bufferMgr().onTxRollback(loser);
+
+		// The redo of the restart installs the changes of the loser
+		List<LogRecord> recs = new LinkedList<LogRecord>();
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (rec.txNumber() != loser.getTransactionNumber())
+				continue;
+			if (rec.op() == LogRecord.OP_START)
+				break;
+			recs.add(0, rec);
+		}
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		for (LogRecord rec : recs)
+			rec.redo(tx);
+		tx.commit();
+
+		// The statistics are built before the undo
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+		VanillaDb.statMgr().refreshStatistics(statTableName, tx);
+		double recsBeforeUndo = VanillaDb.statMgr().getTableStatInfo(ti, tx).histogram().recordsOutput();
+		tx.commit();
+		assertEquals(1.0, recsBeforeUndo, 0.0);
+
+		BackgroundUndo undo = new BackgroundUndo(Collections.singleton(loser.getTransactionNumber()));
+		undo.start();
+		undo.await();
+
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+		assertEquals("*****RecoveryTest: statistics not refreshed after background undo", 0.0,
+				VanillaDb.statMgr().getTableStatInfo(ti, tx).histogram().recordsOutput(), 0.0);
+		tx.commit();
+	}
+
+	@Test
+	public void testBackgroundUndoOfIndexDelete() {
+		SearchKey key = new SearchKey(new IntegerConstant(4444));
+		RecordId rid = new RecordId(new BlockId(dataTableName + ".tbl", 0), 44);
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		IndexInfo ii = md.getIndexInfo(dataTableName, "cid", tx).get(0);
+		Index idx = ii.open(tx);
+		idx.insert(key, rid, true);
+		idx.close();
+		tx.commit();
+
+		// An unfinished tx that deleted the index entry, whose locks are gone
+		// with the crash. The deletion is undone logically.
+		Transaction loser = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = ii.open(loser);
+		idx.delete(key, rid, true);
+		idx.close();
+		loser.concurrencyMgr().onTxRollback(loser);
+
+		// A tx holds the root of the index, which the logical undo locks
+		// without locking it in advance
+		Transaction holder = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		holder.concurrencyMgr().crabDownDirBlockForModification(new BlockId(BTreeDir.getFileName(ii.indexName()), 0));
+
+		BackgroundUndo undo = new BackgroundUndo(Collections.singleton(loser.getTransactionNumber()));
+		undo.start();
+
+		// Let the undo time out on the lock (10 seconds by default) before
+		// releasing it
+		try {
+			Thread.sleep(11000);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		assertTrue("*****RecoveryTest: background undo finished too early",
+				undo.pendingTxNums().contains(loser.getTransactionNumber()));
+		holder.rollback();
+		undo.await();
+		assertTrue("*****RecoveryTest: background undo not finished", undo.pendingTxNums().isEmpty());
+
+		// The entry should be back, once
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+		idx = ii.open(tx);
+		idx.beforeFirst(new SearchRange(key));
+		assertTrue("*****RecoveryTest: bad background undo of index deletion",
+				idx.next() && idx.getDataRecordId().equals(rid) && !idx.next());
+		idx.close();
+		tx.commit();
+	}
+
 	class SetValTx extends BarrierStartRunner {
 		BlockId blk;
 		int offset;